@@ -86,7 +86,7 @@ open class GenericPortController(
 
     override fun error(errorMessage: String, error: Throwable) {
         exceptionListeners.forEach { it ->
-            context.executors.defaultExecutor.submit {
+            context.executors.ioExecutor.submit {
                 try {
                     it.action(errorMessage, error)
                 } catch (ex: Exception) {
@@ -104,9 +104,9 @@ open class GenericPortController(
     @JvmOverloads
     fun next(condition: (String) -> Boolean = { true }): CompletableFuture<String> {
         //No need for synchronization since ReferenceRegistry is synchronized
-        waiters.removeIf { it.isDone }
         val res = FuturePhrase(condition)
         waiters.add(res)
+        res.whenComplete { _, _ -> waiters.remove(res) }
         return res
     }
 
@@ -294,7 +294,7 @@ open class GenericPortController(
 
         internal fun acceptPhrase(phrase: String) {
             if (condition(phrase)) {
-                context.executors.defaultExecutor.submit {
+                context.executors.ioExecutor.submit {
                     try {
                         action(phrase)
                     } catch (ex: Exception) {
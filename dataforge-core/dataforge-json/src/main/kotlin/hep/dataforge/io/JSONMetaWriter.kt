@@ -59,7 +59,7 @@ object JSONMetaWriter : MetaStreamWriter {
 
     private fun Meta.toJson(): JsonObject {
         val builder = JsonObject()
-        nodeNames.forEach {
+        getNodeNames(true).forEach {
             val nodes = getMetaList(it)
             if (nodes.size == 1) {
                 builder[it] = nodes[0].toJson()
@@ -70,7 +70,7 @@ object JSONMetaWriter : MetaStreamWriter {
             }
         }
 
-        valueNames.forEach {
+        getValueNames(true).forEach {
             builder[it] = getValue(it).toJson()
         }
 
@@ -0,0 +1,57 @@
+package hep.dataforge.data
+
+import hep.dataforge.meta.MetaBuilder
+import org.openjdk.jmh.annotations.*
+import org.openjdk.jmh.infra.Blackhole
+import java.util.*
+
+@Fork(1)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+open class DataTreeBenchmark {
+
+    /**
+     * The tree of 100 nodes with 10 subnodes each and 100 data items in each subnode
+     */
+    private lateinit var tree: DataTree<Int>
+    private lateinit var names: List<String>
+    private val random = Random(42)
+
+    @Setup
+    fun setup() {
+        names = ArrayList()
+        tree = DataTree.edit(Int::class.javaObjectType).apply {
+            meta = MetaBuilder("root").setValue("level", 0)
+            (0 until 100).forEach { i ->
+                (0 until 10).forEach { j ->
+                    (0 until 100).forEach { k ->
+                        val name = "node$i.sub$j.data$k"
+                        putStatic(name, k)
+                        (names as MutableList).add(name)
+                    }
+                }
+            }
+        }.build()
+    }
+
+    /**
+     * Random access by full name, the pattern of workspace data dependencies
+     */
+    @Benchmark
+    fun lookup(blackhole: Blackhole) {
+        (0 until 100).forEach {
+            blackhole.consume(tree.getData(names[random.nextInt(names.size)]))
+        }
+    }
+
+    @Benchmark
+    fun selectNode(): Long {
+        return tree.select("node42.sub*").count()
+    }
+
+    @Benchmark
+    fun selectAll(): Long {
+        return tree.select("*.data7").count()
+    }
+}
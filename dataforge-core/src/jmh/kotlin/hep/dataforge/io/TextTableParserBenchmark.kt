@@ -0,0 +1,60 @@
+package hep.dataforge.io
+
+import hep.dataforge.tables.MetaTableFormat
+import hep.dataforge.values.ValueMap
+import org.openjdk.jmh.annotations.*
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.*
+
+
+@Fork(1)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+open class TextTableParserBenchmark {
+
+    private val names = arrayOf("time", "channel", "count", "amplitude")
+    private lateinit var file: Path
+
+    @Setup
+    fun setup() {
+        val format = MetaTableFormat.forNames(*names)
+        val random = Random(0)
+        file = Files.createTempFile("table", ".dat")
+        Files.newBufferedWriter(file).use { writer ->
+            writer.write(IOUtils.formatCaption(format))
+            writer.newLine()
+            for (i in 0 until 1_000_000) {
+                val point = ValueMap.of(names, i * 1e-3, random.nextInt(1024), random.nextInt(100), random.nextGaussian())
+                writer.write(IOUtils.formatDataPoint(format, point))
+                writer.newLine()
+            }
+        }
+    }
+
+    @TearDown
+    fun tearDown() {
+        Files.deleteIfExists(file)
+    }
+
+    @Benchmark
+    fun lineReader(): Double {
+        var sum = 0.0
+        Files.newInputStream(file).use { stream ->
+            ColumnedDataReader(stream, *names).forEach { sum += it.getDouble("amplitude") }
+        }
+        return sum
+    }
+
+    @Benchmark
+    fun byteParser(): Double {
+        return TextTableParser(*names).parse(file).getColumn("amplitude").doubleStream().sum()
+    }
+
+    @Benchmark
+    fun parallelByteParser(): Double {
+        return TextTableParser(*names).parse(file, Runtime.getRuntime().availableProcessors())
+                .getColumn("amplitude").doubleStream().sum()
+    }
+}
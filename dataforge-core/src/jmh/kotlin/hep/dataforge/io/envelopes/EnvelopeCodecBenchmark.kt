@@ -0,0 +1,85 @@
+package hep.dataforge.io.envelopes
+
+import hep.dataforge.data.binary.MappedBinary
+import hep.dataforge.meta.MetaBuilder
+import org.openjdk.jmh.annotations.*
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption.*
+
+
+@Fork(1)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+open class EnvelopeCodecBenchmark {
+
+    /**
+     * Data size: 1KB and 1GB
+     */
+    @Param("1024", "1073741824")
+    var size: Long = 0
+
+    private lateinit var dataFile: Path
+    private lateinit var envelopeFile: Path
+    private lateinit var target: Path
+    private lateinit var envelope: Envelope
+
+    private val codec = StreamingEnvelopeCodec()
+
+    @Setup
+    fun setup() {
+        dataFile = Files.createTempFile("data", ".bin")
+        RandomAccessFile(dataFile.toFile(), "rw").use { it.setLength(size) }
+        envelope = EnvelopeBuilder()
+                .setMeta(MetaBuilder().setValue("size", size).setValue("name", "benchmark"))
+                .setData(MappedBinary(dataFile))
+                .build()
+        envelopeFile = Files.createTempFile("envelope", ".df")
+        FileChannel.open(envelopeFile, WRITE).use { codec.write(it, envelope) }
+        target = Files.createTempFile("target", ".df")
+    }
+
+    @TearDown
+    fun tearDown() {
+        Files.deleteIfExists(dataFile)
+        Files.deleteIfExists(envelopeFile)
+        Files.deleteIfExists(target)
+    }
+
+    @Benchmark
+    fun defaultWrite() {
+        Files.newOutputStream(target, WRITE, TRUNCATE_EXISTING).use {
+            DefaultEnvelopeType.INSTANCE.writer.write(it, envelope)
+        }
+    }
+
+    @Benchmark
+    fun streamingWrite() {
+        FileChannel.open(target, WRITE, TRUNCATE_EXISTING).use { codec.write(it, envelope) }
+    }
+
+    @Benchmark
+    fun defaultRead(): Long {
+        return Files.newInputStream(envelopeFile).use {
+            DefaultEnvelopeReader.INSTANCE.readWithData(it).data.size
+        }
+    }
+
+    @Benchmark
+    fun streamingRead(): Long {
+        val buffer = ByteBuffer.allocate(64 * 1024)
+        var count = 0L
+        FileChannel.open(envelopeFile, READ).use {
+            val channel = codec.open(it).data.channel
+            while (channel.read(buffer) >= 0) {
+                count += buffer.position()
+                buffer.clear()
+            }
+        }
+        return count
+    }
+}
@@ -0,0 +1,101 @@
+package hep.dataforge.io.envelopes
+
+import hep.dataforge.meta.Meta
+import hep.dataforge.meta.MetaBuilder
+import org.openjdk.jmh.annotations.*
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.nio.ByteBuffer
+
+
+@Fork(1)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+open class MetaTypeBenchmark {
+
+    @Param("XML", "binary", "compact")
+    var type: String = ""
+
+    /**
+     * Device configuration or fit result
+     */
+    @Param("device", "fit")
+    var content: String = ""
+
+    private lateinit var metaType: MetaType
+    private lateinit var meta: Meta
+    private lateinit var bytes: ByteArray
+
+    private fun deviceMeta(): Meta {
+        val builder = MetaBuilder("device")
+                .setValue("type", "numass.vac")
+                .setValue("port", "tcp::192.168.111.33:4001")
+                .setValue("timeout", 500)
+                .setValue("debug", false)
+        (1..16).forEach { i ->
+            builder.putNode(MetaBuilder("sensor")
+                    .setValue("name", "P$i")
+                    .setValue("type", if (i % 2 == 0) "MKS" else "CM32")
+                    .setValue("address", i)
+                    .setValue("channel", i % 4)
+                    .setValue("delay", 1.5 * i)
+                    .putNode(MetaBuilder("calibration").setValue("a", 0.01 * i).setValue("b", 1e-4)))
+        }
+        return builder
+    }
+
+    private fun fitMeta(): Meta {
+        val builder = MetaBuilder("fit")
+                .setValue("model", "gauss")
+                .setValue("engine", "MINUIT")
+                .setValue("chi2", 112.4)
+                .setValue("dof", 97)
+                .setValue("valid", true)
+        val names = listOf("N", "mu", "sigma", "bkg", "trap", "E0")
+        names.forEach { name ->
+            builder.putNode(MetaBuilder("par")
+                    .setValue("name", name)
+                    .setValue("value", 1.2345678)
+                    .setValue("err", 0.00123)
+                    .setValue("lower", -1000.0)
+                    .setValue("upper", 1000.0))
+        }
+        builder.putNode(MetaBuilder("covariance")
+                .setValue("names", names)
+                .setValue("values", (1..names.size * names.size).map { it * 1e-3 }))
+        return builder
+    }
+
+    @Setup
+    fun setup() {
+        metaType = MetaType.resolve(type) ?: error("Meta type $type not found")
+        meta = if (content == "device") deviceMeta() else fitMeta()
+        bytes = ByteArrayOutputStream().also { metaType.writer.write(it, meta) }.toByteArray()
+    }
+
+    @Benchmark
+    fun write(): Int {
+        val output = ByteArrayOutputStream()
+        metaType.writer.write(output, meta)
+        return output.size()
+    }
+
+    @Benchmark
+    fun readStream(): Meta {
+        return metaType.reader.read(ByteArrayInputStream(bytes), bytes.size.toLong())
+    }
+
+    @Benchmark
+    fun readBuffer(): Meta {
+        return metaType.reader.readBuffer(ByteBuffer.wrap(bytes))
+    }
+
+    /**
+     * Read a single top level value, the typical header check
+     */
+    @Benchmark
+    fun peekValue(): String {
+        return metaType.reader.readLazy(ByteBuffer.wrap(bytes)).getString(if (content == "device") "type" else "model")
+    }
+}
@@ -0,0 +1,65 @@
+package hep.dataforge.meta
+
+import org.openjdk.jmh.annotations.*
+import org.openjdk.jmh.infra.Blackhole
+
+@Fork(1)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+open class LaminateBenchmark {
+
+    /**
+     * The number of configuration layers in the stack
+     */
+    @Param("2", "8")
+    var depth: Int = 0
+
+    private lateinit var laminate: Laminate
+
+    private fun layer(i: Int): Meta {
+        val builder = MetaBuilder("layer")
+                .setValue("level", i)
+                .setValue("value$i", i * 1.5)
+                .setValue("name", "layer $i")
+        (1..8).forEach { j ->
+            builder.putNode(MetaBuilder("node$j").setValue("a", i + j).setValue("b$i", "b"))
+        }
+        return builder.build()
+    }
+
+    @Setup
+    fun setup() {
+        laminate = Laminate((1..depth).map { layer(it) })
+    }
+
+    /**
+     * Repeated reads from the same configuration stack, the pattern of action input meta
+     */
+    @Benchmark
+    fun readValues(blackhole: Blackhole) {
+        blackhole.consume(laminate.getInt("level"))
+        blackhole.consume(laminate.getString("name"))
+        blackhole.consume(laminate.getDouble("value1", 0.0))
+        blackhole.consume(laminate.getInt("node3.a"))
+        blackhole.consume(laminate.getString("node5.b1", ""))
+    }
+
+    @Benchmark
+    fun readChild(blackhole: Blackhole) {
+        (1..8).forEach { blackhole.consume(laminate.getMeta("node$it").getInt("a")) }
+    }
+
+    @Benchmark
+    fun listNames(): Long {
+        return laminate.valueNames.count() + laminate.nodeNames.count()
+    }
+
+    /**
+     * Build a new laminate and read it once, the worst case for the index
+     */
+    @Benchmark
+    fun createAndRead(): Int {
+        return Laminate(laminate.layers()).getInt("node3.a")
+    }
+}
@@ -0,0 +1,72 @@
+package hep.dataforge.names
+
+import hep.dataforge.meta.Meta
+import hep.dataforge.meta.MetaBuilder
+import org.openjdk.jmh.annotations.*
+import org.openjdk.jmh.infra.Blackhole
+
+@Fork(1)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+open class NameBenchmark {
+
+    /**
+     * Typical paths used in configuration, storage and data lookups
+     */
+    private val paths = listOf(
+            "device",
+            "sensor.calibration.a",
+            "storage.numass.run_1.point_12",
+            "fit.par[name = mu].value",
+            "plot.frame.axis.x\\.label",
+            "data.set_3.channel_2.spectrum"
+    )
+
+    private lateinit var meta: Meta
+    private lateinit var parsed: List<Name>
+
+    @Setup
+    fun setup() {
+        meta = MetaBuilder("root")
+                .putNode(MetaBuilder("sensor").putNode(MetaBuilder("calibration").setValue("a", 1.0)))
+                .setValue("device", "vac")
+        parsed = paths.map { Name.of(it) }
+    }
+
+    @Benchmark
+    fun parseCached(blackhole: Blackhole) {
+        paths.forEach { blackhole.consume(Name.of(it)) }
+    }
+
+    @Benchmark
+    fun parseUncached(blackhole: Blackhole) {
+        paths.forEach { blackhole.consume(NameCache.parse(it)) }
+    }
+
+    /**
+     * The regex split used before hand written parser, for reference
+     */
+    @Benchmark
+    fun splitRegex(blackhole: Blackhole) {
+        paths.forEach { blackhole.consume(it.split("(?<!\\\\)\\.".toRegex())) }
+    }
+
+    @Benchmark
+    fun hashAndString(blackhole: Blackhole) {
+        parsed.forEach {
+            blackhole.consume(it.hashCode())
+            blackhole.consume(it.toString())
+        }
+    }
+
+    @Benchmark
+    fun metaValueByString(): Any? {
+        return meta.optValue("sensor.calibration.a")
+    }
+
+    @Benchmark
+    fun metaValueByName(): Any? {
+        return meta.optValue(parsed[1])
+    }
+}
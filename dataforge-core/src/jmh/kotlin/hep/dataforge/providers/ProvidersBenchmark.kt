@@ -0,0 +1,64 @@
+package hep.dataforge.providers
+
+import org.openjdk.jmh.annotations.*
+import java.util.*
+
+@Fork(1)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+open class ProvidersBenchmark {
+
+    class Node(val depth: Int) : Provider {
+        private val children = (1..10).associate { "child$it" to lazy { Node(depth - 1) } }
+
+        @Provides("node")
+        fun optNode(name: String): Node? = if (depth > 0) children[name]?.value else null
+
+        @ProvidesNames("node")
+        fun listNodes(): Collection<String> = children.keys
+
+        @Provides("value")
+        fun optValue(name: String): String? = name
+
+        @Provides("meta")
+        fun optMeta(name: String): Any? = null
+
+        @Provides("state")
+        fun optState(name: String): Any? = null
+
+        override fun getDefaultTarget(): String = "node"
+
+        override fun getDefaultChainTarget(): String = "node"
+    }
+
+    private val root = Node(8)
+    private val chainPath = Path.of("child1/child2/child3/child4/child5/child6/child7/value::end")
+    private val directPath = Path.of("value::name")
+
+    @Benchmark
+    fun direct(): Optional<*> {
+        return root.provide(directPath)
+    }
+
+    @Benchmark
+    fun chain(): Optional<*> {
+        return root.provide(chainPath)
+    }
+
+    @Benchmark
+    fun listContent(): Long {
+        return root.listContent("node").count()
+    }
+
+    /**
+     * The reflective lookup used before the dispatch cache, for reference
+     */
+    @Benchmark
+    fun reflectiveDirect(): Any? {
+        val method = root.javaClass.methods
+                .filter { it.isAnnotationPresent(Provides::class.java) }
+                .associateBy { it.getAnnotation(Provides::class.java).value }["value"]!!
+        return method.invoke(root, "name")
+    }
+}
@@ -0,0 +1,64 @@
+package hep.dataforge.utils
+
+import org.openjdk.jmh.annotations.*
+import org.openjdk.jmh.infra.Blackhole
+
+
+@Fork(1)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+open class ReferenceRegistryBenchmark {
+
+    /**
+     * The number of permanently registered listeners
+     */
+    @Param("10", "1000")
+    var size: Int = 0
+
+    private val registry = ReferenceRegistry<Any>()
+    private val listeners = ArrayList<Any>()
+
+    @Setup
+    fun setup() {
+        repeat(size) {
+            val listener = Any()
+            listeners.add(listener)
+            registry.add(listener, it % 2 == 0)
+        }
+    }
+
+    /**
+     * A per-thread listener which is added and removed, like a waiter for the next phrase
+     */
+    @State(Scope.Thread)
+    open class Waiter {
+        val waiter = Any()
+    }
+
+    @Benchmark
+    fun addRemove(state: Waiter): Boolean {
+        registry.add(state.waiter)
+        return registry.remove(state.waiter)
+    }
+
+    @Benchmark
+    fun iterate(blackhole: Blackhole) {
+        registry.forEach { blackhole.consume(it) }
+    }
+
+    @Benchmark
+    @Group("contention")
+    @GroupThreads(2)
+    fun contentionAddRemove(state: Waiter): Boolean {
+        registry.add(state.waiter)
+        return registry.remove(state.waiter)
+    }
+
+    @Benchmark
+    @Group("contention")
+    @GroupThreads(2)
+    fun contentionIterate(blackhole: Blackhole) {
+        registry.forEach { blackhole.consume(it) }
+    }
+}
@@ -21,6 +21,7 @@ import hep.dataforge.data.DataNodeEditor;
 import hep.dataforge.data.DataSet;
 import hep.dataforge.data.NamedData;
 import hep.dataforge.description.ActionDescriptor;
+import hep.dataforge.description.Blocking;
 import hep.dataforge.description.TypedActionDef;
 import hep.dataforge.io.output.Output;
 import hep.dataforge.io.output.SelfRendered;
@@ -103,13 +104,29 @@ public abstract class GenericAction<T, R> implements Action<T, R>, Cloneable, Se
     }
 
     /**
-     * Get common singleThreadExecutor for this action
+     * Check if action blocks on I/O. Defined by {@link Blocking} annotation
+     * and could be overridden by {@code @blocking} meta value.
+     *
+     * @param meta
+     * @return
+     */
+    protected boolean isBlocking(Meta meta) {
+        return meta.getBoolean("@blocking", getClass().isAnnotationPresent(Blocking.class));
+    }
+
+    /**
+     * Get common singleThreadExecutor for this action. Blocking actions use
+     * io executor of the context.
      *
      * @return
      */
     protected ExecutorService getExecutorService(Context context, Meta meta) {
         if (isParallelExecutionAllowed(meta)) {
-            return context.getExecutors().getDefaultExecutor();
+            if (isBlocking(meta)) {
+                return context.getExecutors().getIoExecutor();
+            } else {
+                return context.getExecutors().getDefaultExecutor();
+            }
         } else {
             return context.getDispatcher();
         }
@@ -0,0 +1,88 @@
+/*
+ * Copyright  2018 Alexander Nozik.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package hep.dataforge.actions;
+
+import hep.dataforge.context.Context;
+import hep.dataforge.data.ChunkStream;
+import hep.dataforge.meta.Laminate;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Many to one action reducing a group of {@link ChunkStream} data chunk by
+ * chunk, so only the accumulated result is held in memory.
+ * <p>
+ * Input type in {@link hep.dataforge.description.TypedActionDef} is a chunk
+ * type.
+ *
+ * @param <T>
+ * @param <R>
+ * @author Alexander Nozik
+ */
+public abstract class StreamingManyToOneAction<T, R> extends ManyToOneAction<ChunkStream<T>, R> {
+
+    public StreamingManyToOneAction(String name) {
+        super(name);
+    }
+
+    public StreamingManyToOneAction() {
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Class<ChunkStream<T>> getInputType() {
+        return (Class<ChunkStream<T>>) (Class) ChunkStream.class;
+    }
+
+    @SuppressWarnings("unchecked")
+    public Class<T> getInputChunkType() {
+        return (Class<T>) (Class) super.getInputType();
+    }
+
+    @Override
+    protected R execute(Context context, String nodeName, Map<String, ChunkStream<T>> input, Laminate meta) {
+        R result = initial(context, nodeName, meta);
+        for (Map.Entry<String, ChunkStream<T>> entry : input.entrySet()) {
+            Iterator<T> iterator = entry.getValue().iterator();
+            try {
+                while (iterator.hasNext()) {
+                    result = accumulate(context, entry.getKey(), result, iterator.next(), meta);
+                }
+            } finally {
+                // stop buffered producers if accumulation fails
+                ChunkStream.close(iterator);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The initial value of accumulated result for a group
+     */
+    protected abstract R initial(Context context, String nodeName, Laminate meta);
+
+    /**
+     * Add a single chunk to accumulated result
+     *
+     * @param dataName name of the data the chunk belongs to
+     * @param result   accumulated result
+     * @param chunk    next chunk
+     * @param meta     combined meta for this evaluation
+     * @return updated result
+     */
+    protected abstract R accumulate(Context context, String dataName, R result, T chunk, Laminate meta);
+}
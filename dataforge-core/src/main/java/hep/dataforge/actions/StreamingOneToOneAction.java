@@ -0,0 +1,83 @@
+/*
+ * Copyright  2018 Alexander Nozik.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package hep.dataforge.actions;
+
+import hep.dataforge.context.Context;
+import hep.dataforge.data.ChunkStream;
+import hep.dataforge.meta.Laminate;
+
+/**
+ * One to one action transforming {@link ChunkStream} data chunk by chunk. The
+ * result is lazy: chunks are transformed only when the resulting stream is
+ * consumed. If {@code streaming.buffer} is positive, the transformation runs
+ * ahead of the consumer on the io executor of the context with given number of
+ * buffered chunks.
+ * <p>
+ * Input and output types in {@link hep.dataforge.description.TypedActionDef}
+ * are chunk types.
+ *
+ * @param <T>
+ * @param <R>
+ * @author Alexander Nozik
+ */
+public abstract class StreamingOneToOneAction<T, R> extends OneToOneAction<ChunkStream<T>, ChunkStream<R>> {
+
+    public StreamingOneToOneAction(String name) {
+        super(name);
+    }
+
+    public StreamingOneToOneAction() {
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Class<ChunkStream<T>> getInputType() {
+        return (Class<ChunkStream<T>>) (Class) ChunkStream.class;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Class<ChunkStream<R>> getOutputType() {
+        return (Class<ChunkStream<R>>) (Class) ChunkStream.class;
+    }
+
+    @SuppressWarnings("unchecked")
+    public Class<T> getInputChunkType() {
+        return (Class<T>) (Class) super.getInputType();
+    }
+
+    @SuppressWarnings("unchecked")
+    public Class<R> getOutputChunkType() {
+        return (Class<R>) (Class) super.getOutputType();
+    }
+
+    @Override
+    protected ChunkStream<R> execute(Context context, String name, ChunkStream<T> input, Laminate meta) {
+        ChunkStream<R> result = input.map(getOutputChunkType(), chunk -> executeChunk(context, name, chunk, meta));
+        int buffer = meta.getInt("streaming.buffer", 0);
+        return buffer > 0 ? result.buffered(buffer, context.getExecutors().getIoExecutor()) : result;
+    }
+
+    /**
+     * Transform a single chunk
+     *
+     * @param name  name of the input item
+     * @param chunk input chunk
+     * @param meta  combined meta for this evaluation
+     * @return transformed chunk or null if chunk should be dropped
+     */
+    protected abstract R executeChunk(Context context, String name, T chunk, Laminate meta);
+}
@@ -78,6 +78,16 @@ public interface Goal<T> extends RunnableFuture<T> {
 
     boolean isRunning();
 
+    /**
+     * Content digest of the goal result if it is known without computation. Goals with equal digests are expected to
+     * produce equal results.
+     *
+     * @return the digest or null if it is not known
+     */
+    default String getDigest() {
+        return null;
+    }
+
     @Override
     default T get(long timeout, @NotNull TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
         return asCompletableFuture().get(timeout, unit);
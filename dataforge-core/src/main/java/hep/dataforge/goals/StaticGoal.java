@@ -5,6 +5,18 @@
  */
 package hep.dataforge.goals;
 
+import hep.dataforge.meta.Meta;
+import hep.dataforge.meta.MetaBuilder;
+import hep.dataforge.meta.MetaMorph;
+import hep.dataforge.values.Value;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
 import java.util.stream.Stream;
 
 
@@ -16,11 +28,62 @@ import java.util.stream.Stream;
  */
 public class StaticGoal<T> extends AbstractGoal<T> {
     private final T result;
+    private String digest;
+    private boolean digestComputed = false;
 
     public StaticGoal(T result) {
         this.result = result;
     }
 
+    /**
+     * The digest is derived from the result if it is a value, a meta or a meta morph. Other serializable results are
+     * identified by the SHA-256 of their serialized form. The digest of non-serializable result is unknown.
+     *
+     * @return the digest or null if it could not be derived from the result
+     */
+    @Override
+    public synchronized String getDigest() {
+        if (!digestComputed) {
+            digestComputed = true;
+            if (result == null) {
+                digest = new MetaBuilder("static").getDigest();
+            } else if (result instanceof Meta) {
+                digest = ((Meta) result).getDigest();
+            } else if (result instanceof MetaMorph) {
+                digest = ((MetaMorph) result).toMeta().getDigest();
+            } else if (result instanceof Value || result instanceof Number || result instanceof String
+                    || result instanceof Boolean || result instanceof Instant) {
+                digest = new MetaBuilder("static")
+                        .setValue("type", result.getClass().getName())
+                        .setValue("value", result)
+                        .getDigest();
+            } else if (result instanceof Serializable) {
+                digest = serializedDigest((Serializable) result);
+            } else {
+                digest = null;
+            }
+        }
+        return digest;
+    }
+
+    private static String serializedDigest(Serializable object) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(object);
+            }
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(bytes.toByteArray());
+            StringBuilder res = new StringBuilder(object.getClass().getName()).append(':');
+            for (byte b : hash) {
+                res.append(String.format("%02x", b));
+            }
+            return res.toString();
+        } catch (IOException | NoSuchAlgorithmException ex) {
+            // the object graph contains non-serializable parts
+            return null;
+        }
+    }
+
     @Override
     public Stream<Goal<?>> dependencies() {
         return Stream.empty();
@@ -40,6 +40,12 @@ public class ColumnedDataReader implements Iterable<Values> {
 
     private ValuesReader reader;
 
+    /**
+     * The source file and its format if table could be read from file directly
+     */
+    private Path path;
+    private String[] format;
+
     public ColumnedDataReader(InputStream stream, ValuesParser parser) {
 
         this.reader = new ValuesReader(stream, parser);
@@ -52,7 +58,12 @@ public class ColumnedDataReader implements Iterable<Values> {
     public ColumnedDataReader(Path path) throws IOException {
         String headline = Files.lines(path)
                 .filter(line -> line.startsWith("#f") || (!line.isEmpty() && !line.startsWith("#")))
-                .findFirst().get().substring(2);
+                .findFirst().get();
+        if (headline.startsWith("#f")) {
+            this.path = path;
+            this.format = headline.substring(2).trim().split("\\s+");
+        }
+        headline = headline.substring(2);
 
         InputStream stream = Files.newInputStream(path);
         Iterator<String> iterator = new LineIterator(stream);
@@ -71,7 +82,20 @@ public class ColumnedDataReader implements Iterable<Values> {
         return reader;
     }
 
+    /**
+     * Read the whole table. If reader is created from a file and no lines were read yet, the file is parsed directly
+     * to a {@link hep.dataforge.tables.PrimitiveColumnTable} using all available processors.
+     *
+     * @return
+     */
     public Table toTable() {
+        if (path != null && reader.getPos() == 0) {
+            try {
+                return new TextTableParser(format).parse(path, Runtime.getRuntime().availableProcessors());
+            } catch (IOException ex) {
+                throw new RuntimeException("Failed to read table from " + path, ex);
+            }
+        }
         List<Values> points = new ArrayList<>();
         for (Values p : this) {
             if (p != null) {
@@ -5,6 +5,8 @@
  */
 package hep.dataforge.io;
 
+import hep.dataforge.data.binary.ByteBufferInputStream;
+import hep.dataforge.meta.Meta;
 import hep.dataforge.meta.MetaBuilder;
 import kotlin.text.Charsets;
 import org.jetbrains.annotations.NotNull;
@@ -81,7 +83,30 @@ public interface MetaStreamReader {
         return read(bais, bytes.length);
     }
 
+    /**
+     * Read meta from the buffer content between zero and its limit. Works for both heap and direct buffers.
+     *
+     * @param buffer
+     * @return
+     * @throws IOException
+     * @throws ParseException
+     */
     default MetaBuilder readBuffer(ByteBuffer buffer) throws IOException, ParseException {
-        return read(new ByteArrayInputStream(buffer.array()), buffer.limit());
+        ByteBuffer content = buffer.duplicate();
+        content.position(0);
+        return read(new ByteBufferInputStream(content), buffer.limit());
+    }
+
+    /**
+     * Read meta from the buffer content between zero and its limit without decoding it eagerly if the format allows
+     * it. The buffer is owned by resulting meta and must not be changed afterwards. By default meta is fully decoded.
+     *
+     * @param buffer
+     * @return
+     * @throws IOException
+     * @throws ParseException
+     */
+    default Meta readLazy(ByteBuffer buffer) throws IOException, ParseException {
+        return readBuffer(buffer);
     }
 }
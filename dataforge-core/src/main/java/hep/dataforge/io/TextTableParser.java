@@ -0,0 +1,642 @@
+/*
+ * Copyright  2018 Alexander Nozik.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package hep.dataforge.io;
+
+import hep.dataforge.tables.*;
+import hep.dataforge.values.Value;
+import hep.dataforge.values.ValueFactory;
+import hep.dataforge.values.ValueType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * A fast parser for whitespace separated text tables. The text is read byte by byte directly from a {@link ByteBuffer}
+ * (usually a memory mapped file) and numbers are parsed in place into primitive columns of {@link PrimitiveColumnTable}
+ * without creating intermediate strings or {@link hep.dataforge.values.Values}. Like in {@link LineIterator}, empty
+ * lines and lines starting with {@code #} are ignored.
+ * <p>
+ * Column types are taken from the format. Numeric columns without declared type are stored as longs while all values
+ * are integral and as doubles otherwise. Columns containing non-numeric tokens fall back to generic values.
+ * </p>
+ * <p>
+ * In parallel mode the input is split into chunks on line boundaries, chunks are parsed independently in the common
+ * fork-join pool and then concatenated.
+ * </p>
+ *
+ * @author Alexander Nozik
+ */
+public class TextTableParser {
+
+    /**
+     * Maximum size of a single memory mapped window
+     */
+    private static final int MAX_WINDOW = 1 << 30;
+
+    /**
+     * Minimum chunk size for parallel parsing
+     */
+    private static final int MIN_CHUNK = 1 << 20;
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private static final byte[] NULL_TOKEN = Value.NULL_STRING.getBytes(StandardCharsets.US_ASCII);
+
+    private final ColumnFormat[] columns;
+
+    public TextTableParser(TableFormat format) {
+        this.columns = format.getColumns().toArray(ColumnFormat[]::new);
+    }
+
+    public TextTableParser(String... names) {
+        this(MetaTableFormat.Companion.forNames(names));
+    }
+
+    /**
+     * Parse the remaining content of the buffer in the current thread
+     *
+     * @param buffer
+     * @return
+     */
+    public PrimitiveColumnTable parse(ByteBuffer buffer) {
+        return parse(buffer, 1);
+    }
+
+    /**
+     * Parse the remaining content of the buffer using up to given number of threads
+     *
+     * @param buffer
+     * @param parallelism
+     * @return
+     */
+    public PrimitiveColumnTable parse(ByteBuffer buffer, int parallelism) {
+        return merge(parseChunks(split(buffer, parallelism), parallelism > 1));
+    }
+
+    /**
+     * Map the file into memory and parse it in the current thread
+     *
+     * @param path
+     * @return
+     * @throws IOException
+     */
+    public PrimitiveColumnTable parse(Path path) throws IOException {
+        return parse(path, 1);
+    }
+
+    /**
+     * Map the file into memory and parse it using up to given number of threads. Files larger than 2GB are mapped
+     * in several windows split on line boundaries.
+     *
+     * @param path
+     * @param parallelism
+     * @return
+     * @throws IOException
+     */
+    public PrimitiveColumnTable parse(Path path, int parallelism) throws IOException {
+        List<ByteBuffer> chunks = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                long windowSize = Math.min(MAX_WINDOW, size - position);
+                ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+                if (position + windowSize < size) {
+                    int end = lastLineEnd(window);
+                    if (end < 0) {
+                        throw new IOException("Line at " + position + " is longer than " + MAX_WINDOW + " bytes");
+                    }
+                    window.limit(end);
+                }
+                position += window.limit();
+                chunks.addAll(split(window, parallelism));
+            }
+        }
+        return merge(parseChunks(chunks, parallelism > 1));
+    }
+
+    /**
+     * The position after the last line feed in the buffer or -1 if there is no line feed
+     */
+    private static int lastLineEnd(ByteBuffer buffer) {
+        for (int i = buffer.limit() - 1; i >= buffer.position(); i--) {
+            if (buffer.get(i) == '\n') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Split the buffer into at most given number of slices on line boundaries
+     */
+    private static List<ByteBuffer> split(ByteBuffer buffer, int parallelism) {
+        int start = buffer.position();
+        int end = buffer.limit();
+        int number = Math.max(1, Math.min(parallelism, (end - start) / MIN_CHUNK));
+        List<ByteBuffer> res = new ArrayList<>(number);
+        int from = start;
+        for (int i = 1; i <= number && from < end; i++) {
+            int to = i == number ? end : (int) (start + (long) (end - start) * i / number);
+            while (to < end && buffer.get(to - 1) != '\n') {
+                to++;
+            }
+            if (to > from) {
+                ByteBuffer slice = buffer.duplicate();
+                slice.limit(to).position(from);
+                res.add(slice.slice());
+                from = to;
+            }
+        }
+        return res;
+    }
+
+    private List<Chunk> parseChunks(List<ByteBuffer> buffers, boolean parallel) {
+        return (parallel ? buffers.parallelStream() : buffers.stream())
+                .map(Chunk::new)
+                .collect(Collectors.toList());
+    }
+
+    private PrimitiveColumnTable merge(List<Chunk> chunks) {
+        List<Column> res = new ArrayList<>(columns.length);
+        for (int c = 0; c < columns.length; c++) {
+            int column = c;
+            List<ColumnChunk> parts = chunks.stream().map(it -> it.columns[column]).collect(Collectors.toList());
+            res.add(ColumnChunk.merge(columns[c], parts));
+        }
+        return new PrimitiveColumnTable(res);
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\f' || b == 0x0B;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    /**
+     * A part of the table parsed from a single slice of the input
+     */
+    private class Chunk {
+        private final ByteBuffer buffer;
+        private final ColumnChunk[] columns;
+        private byte[] scratch = new byte[64];
+
+        // the result of the last successful number parsing
+        private long longValue;
+        private double doubleValue;
+        private boolean integral;
+
+        Chunk(ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.columns = new ColumnChunk[TextTableParser.this.columns.length];
+            // a rough estimate of the row count to avoid excessive copying on growth
+            int capacity = Math.max(16, buffer.remaining() / (8 * columns.length + 8));
+            for (int i = 0; i < columns.length; i++) {
+                this.columns[i] = new ColumnChunk(TextTableParser.this.columns[i], capacity);
+            }
+            parse();
+        }
+
+        private void parse() {
+            int limit = buffer.limit();
+            int i = buffer.position();
+            while (i < limit) {
+                byte b = buffer.get(i);
+                while (isSpace(b) && ++i < limit) {
+                    b = buffer.get(i);
+                }
+                if (i >= limit) {
+                    break;
+                } else if (b == '\n') {
+                    i++;
+                } else if (b == '#') {
+                    while (i < limit && buffer.get(i) != '\n') {
+                        i++;
+                    }
+                } else {
+                    int column = 0;
+                    while (i < limit && (b = buffer.get(i)) != '\n') {
+                        if (isSpace(b)) {
+                            i++;
+                        } else {
+                            int start = i;
+                            while (i < limit && !isSpace(b = buffer.get(i)) && b != '\n') {
+                                i++;
+                            }
+                            if (column < columns.length) {
+                                add(columns[column], start, i);
+                            }
+                            column++;
+                        }
+                    }
+                    for (; column < columns.length; column++) {
+                        columns[column].addNull();
+                    }
+                }
+            }
+        }
+
+        private void add(ColumnChunk column, int from, int to) {
+            if (isNull(from, to)) {
+                column.addNull();
+                return;
+            }
+            switch (column.mode) {
+                case ColumnChunk.LONG:
+                case ColumnChunk.DOUBLE:
+                    if (parseNumber(from, to)) {
+                        if (integral) {
+                            column.add(longValue);
+                        } else {
+                            column.add(doubleValue);
+                        }
+                    } else {
+                        column.add(ValueFactory.parse(string(from, to), false));
+                    }
+                    break;
+                case ColumnChunk.STRING:
+                    column.add(string(from, to));
+                    break;
+                default:
+                    column.add(ValueFactory.parse(string(from, to), false));
+            }
+        }
+
+        private boolean isNull(int from, int to) {
+            if (to - from != NULL_TOKEN.length) {
+                return false;
+            }
+            for (int i = 0; i < NULL_TOKEN.length; i++) {
+                if (buffer.get(from + i) != NULL_TOKEN[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private String string(int from, int to) {
+            int length = to - from;
+            if (length > scratch.length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            for (int i = 0; i < length; i++) {
+                scratch[i] = buffer.get(from + i);
+            }
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Parse decimal number in place. Numbers with no more than 18 significant digits and small exponents are
+         * parsed exactly without allocation, others are delegated to JDK parsers.
+         *
+         * @return false if token is not a number
+         */
+        private boolean parseNumber(int from, int to) {
+            int i = from;
+            byte b = buffer.get(i);
+            boolean negative = b == '-';
+            if (negative || b == '+') {
+                i++;
+            }
+            long mantissa = 0;
+            int digits = 0;
+            int exponent = 0;
+            boolean exact = true;
+            boolean isIntegral = true;
+
+            int start = i;
+            while (i < to && isDigit(b = buffer.get(i))) {
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                } else {
+                    exponent++;
+                    exact = false;
+                }
+                i++;
+            }
+            boolean hasDigits = i > start;
+
+            if (i < to && buffer.get(i) == '.') {
+                isIntegral = false;
+                i++;
+                start = i;
+                while (i < to && isDigit(b = buffer.get(i))) {
+                    if (digits < 18) {
+                        mantissa = mantissa * 10 + (b - '0');
+                        if (mantissa != 0) {
+                            digits++;
+                        }
+                        exponent--;
+                    } else {
+                        exact = false;
+                    }
+                    i++;
+                }
+                hasDigits |= i > start;
+            }
+
+            if (!hasDigits) {
+                return parseSlow(from, to);
+            }
+
+            if (i < to && ((b = buffer.get(i)) == 'e' || b == 'E')) {
+                isIntegral = false;
+                i++;
+                boolean negativeExponent = false;
+                if (i < to && ((b = buffer.get(i)) == '-' || b == '+')) {
+                    negativeExponent = b == '-';
+                    i++;
+                }
+                start = i;
+                int exp = 0;
+                while (i < to && isDigit(b = buffer.get(i))) {
+                    if (exp < 10000) {
+                        exp = exp * 10 + (b - '0');
+                    }
+                    i++;
+                }
+                if (i == start) {
+                    return false;
+                }
+                exponent += negativeExponent ? -exp : exp;
+            }
+
+            if (i != to || !exact) {
+                return parseSlow(from, to);
+            }
+
+            if (isIntegral) {
+                longValue = negative ? -mantissa : mantissa;
+                integral = true;
+                return true;
+            } else if (mantissa < (1L << 53) && Math.abs(exponent) < POWERS_OF_TEN.length) {
+                double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+                doubleValue = negative ? -value : value;
+                integral = false;
+                return true;
+            } else {
+                return parseSlow(from, to);
+            }
+        }
+
+        private boolean parseSlow(int from, int to) {
+            String str = string(from, to);
+            try {
+                longValue = Long.parseLong(str);
+                integral = true;
+                return true;
+            } catch (NumberFormatException ignored) {
+            }
+            try {
+                doubleValue = Double.parseDouble(str);
+                integral = false;
+                return true;
+            } catch (NumberFormatException ignored) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * A growable storage for a part of one column
+     */
+    private static class ColumnChunk {
+        static final int LONG = 0;
+        static final int DOUBLE = 1;
+        static final int TIME = 2;
+        static final int STRING = 3;
+        static final int GENERIC = 4;
+
+        private final BitSet nulls = new BitSet();
+        private int mode;
+        private int size = 0;
+        private long[] longs;
+        private double[] doubles;
+        private String[] strings;
+        private List<Value> values;
+
+        ColumnChunk(ColumnFormat format, int capacity) {
+            ValueType type = format.hasValue("type") ? format.getPrimaryType() : ValueType.NUMBER;
+            switch (type) {
+                case NUMBER:
+                    mode = LONG;
+                    longs = new long[capacity];
+                    break;
+                case TIME:
+                    mode = TIME;
+                    longs = new long[capacity];
+                    break;
+                case STRING:
+                    mode = STRING;
+                    strings = new String[capacity];
+                    break;
+                default:
+                    mode = GENERIC;
+                    values = new ArrayList<>(capacity);
+            }
+        }
+
+        private static int grow(int current, int required) {
+            return Math.max(required, current + (current >> 1) + 16);
+        }
+
+        void addNull() {
+            nulls.set(size);
+            switch (mode) {
+                case LONG:
+                case TIME:
+                    add(0L);
+                    break;
+                case DOUBLE:
+                    add(Double.NaN);
+                    break;
+                case STRING:
+                    add((String) null);
+                    break;
+                default:
+                    add(ValueFactory.NULL);
+            }
+        }
+
+        void add(long value) {
+            if (mode == DOUBLE) {
+                add((double) value);
+            } else if (mode == GENERIC) {
+                add(Value.Companion.of(value));
+            } else {
+                if (size == longs.length) {
+                    longs = Arrays.copyOf(longs, grow(longs.length, size + 1));
+                }
+                longs[size++] = value;
+            }
+        }
+
+        void add(double value) {
+            if (mode == LONG) {
+                doubles = new double[longs.length];
+                for (int i = 0; i < size; i++) {
+                    doubles[i] = nulls.get(i) ? Double.NaN : longs[i];
+                }
+                longs = null;
+                mode = DOUBLE;
+            }
+            if (mode == GENERIC) {
+                add(Value.Companion.of(value));
+            } else {
+                if (size == doubles.length) {
+                    doubles = Arrays.copyOf(doubles, grow(doubles.length, size + 1));
+                }
+                doubles[size++] = value;
+            }
+        }
+
+        void add(String value) {
+            if (size == strings.length) {
+                strings = Arrays.copyOf(strings, grow(strings.length, size + 1));
+            }
+            strings[size++] = value;
+        }
+
+        void add(Value value) {
+            if (mode == TIME && value.getType() == ValueType.TIME) {
+                add(InstantColumn.toEpochNanos(value.getTime()));
+                return;
+            }
+            if (mode != GENERIC) {
+                List<Value> list = new ArrayList<>(Math.max(16, size * 2));
+                for (int i = 0; i < size; i++) {
+                    list.add(get(i));
+                }
+                values = list;
+                longs = null;
+                doubles = null;
+                strings = null;
+                mode = GENERIC;
+            }
+            values.add(value);
+            size++;
+        }
+
+        Value get(int i) {
+            if (nulls.get(i)) {
+                return ValueFactory.NULL;
+            }
+            switch (mode) {
+                case LONG:
+                    return Value.Companion.of(longs[i]);
+                case DOUBLE:
+                    return Value.Companion.of(doubles[i]);
+                case TIME:
+                    return Value.Companion.of(InstantColumn.ofEpochNanos(longs[i]));
+                case STRING:
+                    return Value.Companion.of(strings[i]);
+                default:
+                    return values.get(i);
+            }
+        }
+
+        static Column merge(ColumnFormat format, List<ColumnChunk> parts) {
+            int size = parts.stream().mapToInt(it -> it.size).sum();
+            int mode = parts.stream().mapToInt(it -> it.mode).max().orElse(LONG);
+            PrimitiveColumn.Builder<?> builder;
+            switch (mode) {
+                case LONG: {
+                    LongColumn.Builder res = new LongColumn.Builder(format, size);
+                    for (ColumnChunk part : parts) {
+                        for (int i = 0; i < part.size; i++) {
+                            if (part.nulls.get(i)) {
+                                res.addNull();
+                            } else {
+                                res.add(part.longs[i]);
+                            }
+                        }
+                    }
+                    builder = res;
+                    break;
+                }
+                case DOUBLE: {
+                    DoubleColumn.Builder res = new DoubleColumn.Builder(format, size);
+                    for (ColumnChunk part : parts) {
+                        for (int i = 0; i < part.size; i++) {
+                            if (part.nulls.get(i)) {
+                                res.addNull();
+                            } else {
+                                res.add(part.mode == LONG ? part.longs[i] : part.doubles[i]);
+                            }
+                        }
+                    }
+                    builder = res;
+                    break;
+                }
+                case TIME: {
+                    InstantColumn.Builder res = new InstantColumn.Builder(format, size);
+                    for (ColumnChunk part : parts) {
+                        for (int i = 0; i < part.size; i++) {
+                            if (part.nulls.get(i)) {
+                                res.addNull();
+                            } else {
+                                res.addEpochNanos(part.longs[i]);
+                            }
+                        }
+                    }
+                    builder = res;
+                    break;
+                }
+                case STRING: {
+                    StringColumn.Builder res = new StringColumn.Builder(format, size);
+                    for (ColumnChunk part : parts) {
+                        for (int i = 0; i < part.size; i++) {
+                            if (part.nulls.get(i)) {
+                                res.addNull();
+                            } else {
+                                res.add(part.strings[i]);
+                            }
+                        }
+                    }
+                    builder = res;
+                    break;
+                }
+                default: {
+                    List<Value> res = new ArrayList<>(size);
+                    for (ColumnChunk part : parts) {
+                        for (int i = 0; i < part.size; i++) {
+                            res.add(part.get(i));
+                        }
+                    }
+                    return new ListColumn(format, res.stream());
+                }
+            }
+            return builder.build();
+        }
+    }
+}
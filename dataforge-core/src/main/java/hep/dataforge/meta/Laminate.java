@@ -27,6 +27,7 @@ import org.jetbrains.annotations.NotNull;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import java.util.stream.Collector;
 import java.util.stream.Collectors;
@@ -35,15 +36,81 @@ import java.util.stream.Stream;
 /**
  * A chain of immutable meta. The value is taken from the first meta in list
  * that contains it. The list itself is immutable.
+ * <p>
+ * Lookups are resolved against a lazily built index: direct values of all layers are flattened into a single map with
+ * descriptor defaults folded in, while path lookups and child laminates are memoized on first access. If some of the
+ * layers are mutable, the index is rebuilt when any of them is modified.
+ * </p>
  *
  * @author darksnake
  */
 public final class Laminate extends Meta implements Described {
 
+    /**
+     * Resolution index of the laminate built from the state of layers at the moment of creation
+     */
+    private final class Index {
+        private final MutableMetaNode[] mutableLayers;
+        private final int[] versions;
+
+        /**
+         * Direct values. The first layer containing the value wins, descriptor defaults are used last
+         */
+        private final Map<String, Value> values = new HashMap<>();
+        private final Set<String> valueNames = new LinkedHashSet<>();
+        private final Set<String> defaultValueNames = new LinkedHashSet<>();
+        private final Set<String> nodeNames = new LinkedHashSet<>();
+        private final Set<String> defaultNodeNames = new LinkedHashSet<>();
+
+        private final Map<String, Optional<Value>> paths = new ConcurrentHashMap<>();
+        private final Map<String, Optional<Meta>> children = new ConcurrentHashMap<>();
+        private final Map<String, List<? extends Meta>> lists = new ConcurrentHashMap<>();
+
+        private Index() {
+            mutableLayers = deepLayerStream()
+                    .filter(it -> it instanceof MutableMetaNode)
+                    .toArray(MutableMetaNode[]::new);
+            versions = new int[mutableLayers.length];
+            for (int i = 0; i < mutableLayers.length; i++) {
+                versions[i] = mutableLayers[i].getVersion();
+            }
+
+            for (Meta layer : layers) {
+                layer.getValueNames(true).forEach(name -> {
+                    if (valueNames.add(name)) {
+                        layer.optValue(name).ifPresent(value -> values.put(name, value));
+                    }
+                });
+                layer.getNodeNames(true).forEach(nodeNames::add);
+            }
+            if (descriptorLayer != null) {
+                descriptorLayer.getValueNames(true).forEach(name -> {
+                    if (!valueNames.contains(name) && defaultValueNames.add(name)) {
+                        descriptorLayer.optValue(name).ifPresent(value -> values.put(name, value));
+                    }
+                });
+                descriptorLayer.getNodeNames(true)
+                        .filter(name -> !nodeNames.contains(name))
+                        .forEach(defaultNodeNames::add);
+            }
+        }
+
+        private boolean isValid() {
+            for (int i = 0; i < mutableLayers.length; i++) {
+                if (mutableLayers[i].getVersion() != versions[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
     private final List<Meta> layers = new ArrayList<>();
     private NodeDescriptor descriptor;
     private Meta descriptorLayer;
 
+    private transient volatile Index index;
+
     public Laminate(List<Meta> layers) {
         layers.forEach(this::addLayer);
     }
@@ -84,6 +151,7 @@ public final class Laminate extends Meta implements Described {
             }
             checkCycles(this, layer);
             this.layers.add(layer);
+            this.index = null;
         }
     }
 
@@ -93,6 +161,7 @@ public final class Laminate extends Meta implements Described {
                 LoggerFactory.getLogger(getClass()).trace("Using mutable meta in the laminate");
             }
             this.layers.add(0, layer);
+            this.index = null;
         }
     }
 
@@ -103,6 +172,7 @@ public final class Laminate extends Meta implements Described {
          * hasMeta and hasValue
          */
         descriptorLayer = Descriptors.buildDefaultNode(descriptor);
+        this.index = null;
     }
 
     @Contract(pure = true)
@@ -165,8 +235,38 @@ public final class Laminate extends Meta implements Described {
         return layersInverse;
     }
 
+    /**
+     * Get valid index building it if needed
+     *
+     * @return
+     */
+    private Index index() {
+        Index res = index;
+        if (res == null || !res.isValid()) {
+            res = new Index();
+            index = res;
+        }
+        return res;
+    }
+
+    /**
+     * Child laminate for given path. Child laminates are cached, so repeated calls return the same instance
+     *
+     * @param path
+     * @return
+     */
     @Override
     public Optional<Meta> optMeta(String path) {
+        Map<String, Optional<Meta>> children = index().children;
+        Optional<Meta> res = children.get(path);
+        if (res == null) {
+            res = resolveMeta(path);
+            children.put(path, res);
+        }
+        return res;
+    }
+
+    private Optional<Meta> resolveMeta(String path) {
         List<Meta> childLayers = new ArrayList<>();
         layers.stream().filter(layer -> layer.hasMeta(path)).forEach((m) -> {
             //FIXME child elements are not chained!
@@ -197,6 +297,16 @@ public final class Laminate extends Meta implements Described {
      */
     @Override
     public List<? extends Meta> getMetaList(String path) {
+        Map<String, List<? extends Meta>> lists = index().lists;
+        List<? extends Meta> res = lists.get(path);
+        if (res == null) {
+            res = resolveMetaList(path);
+            lists.put(path, res);
+        }
+        return res;
+    }
+
+    private List<? extends Meta> resolveMetaList(String path) {
         Stream<Meta> stream;
         if (descriptorLayer == null) {
             stream = layers.stream();
@@ -227,12 +337,12 @@ public final class Laminate extends Meta implements Described {
 
 
     public Stream<String> getNodeNames(boolean includeHidden, boolean includeDefaults) {
-        Stream<String> names = layers.stream().flatMap(layer -> layer.getNodeNames(includeHidden));
-        if (includeDefaults && descriptorLayer != null) {
-            return Stream.concat(names, descriptorLayer.getNodeNames(includeHidden)).distinct();
-        } else {
-            return names.distinct();
+        Index index = index();
+        Stream<String> names = index.nodeNames.stream();
+        if (includeDefaults) {
+            names = Stream.concat(names, index.defaultNodeNames.stream());
         }
+        return includeHidden ? names : names.filter(it -> !it.startsWith("@"));
     }
 
     /**
@@ -246,17 +356,31 @@ public final class Laminate extends Meta implements Described {
     }
 
     public Stream<String> getValueNames(boolean includeHidden, boolean includeDefaults) {
-        Stream<String> names = layers.stream().flatMap(layer -> layer.getValueNames(includeHidden));
-        if (includeDefaults && descriptorLayer != null) {
-            return Stream.concat(names, descriptorLayer.getValueNames(includeHidden)).distinct();
-        } else {
-            return names.distinct();
+        Index index = index();
+        Stream<String> names = index.valueNames.stream();
+        if (includeDefaults) {
+            names = Stream.concat(names, index.defaultValueNames.stream());
         }
+        return includeHidden ? names : names.filter(it -> !it.startsWith("@"));
     }
 
     @NotNull
     @Override
     public Optional<Value> optValue(@NotNull String path) {
+        Index index = index();
+        Value value = index.values.get(path);
+        if (value != null) {
+            return Optional.of(value);
+        }
+        Optional<Value> res = index.paths.get(path);
+        if (res == null) {
+            res = resolveValue(path);
+            index.paths.put(path, res);
+        }
+        return res;
+    }
+
+    private Optional<Value> resolveValue(String path) {
         //searching layers for value
         for (Meta m : layers) {
             Optional<Value> opt = m.optValue(path);
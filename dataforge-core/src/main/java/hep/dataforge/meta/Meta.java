@@ -19,6 +19,7 @@ import hep.dataforge.Named;
 import hep.dataforge.NamedKt;
 import hep.dataforge.exceptions.AnonymousNotAlowedException;
 import hep.dataforge.io.XMLMetaWriter;
+import hep.dataforge.names.Name;
 import hep.dataforge.providers.Provider;
 import hep.dataforge.providers.Provides;
 import hep.dataforge.providers.ProvidesNames;
@@ -30,7 +31,6 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
@@ -112,6 +112,31 @@ public abstract class Meta implements Provider, Named, ValueProvider, MetaMorph,
         return getMetaList(path).stream().findFirst().map(it -> it);
     }
 
+    /**
+     * Return the meta node list for already parsed path. Implementations could override it to avoid converting the
+     * path back to string.
+     *
+     * @param path
+     * @return
+     */
+    public List<? extends Meta> getMetaList(Name path) {
+        return getMetaList(path.toString());
+    }
+
+    public Optional<Meta> optMeta(Name path) {
+        return getMetaList(path).stream().findFirst().map(it -> it);
+    }
+
+    /**
+     * Return the value for already parsed path
+     *
+     * @param path
+     * @return
+     */
+    public Optional<Value> optValue(Name path) {
+        return optValue(path.toString());
+    }
+
     public abstract boolean isEmpty();
 
     /**
@@ -178,17 +203,25 @@ public abstract class Meta implements Provider, Named, ValueProvider, MetaMorph,
         return valuesEqual && nodesEqual;
     }
 
+    /**
+     * Structural hash which does not depend on the order of elements and value representation
+     *
+     * @return
+     * @see MetaUtils#structuralHash(Meta)
+     */
     @Override
     public int hashCode() {
-        int hash = 7;
-        hash = 59 * hash + Objects.hashCode(getName());
-        for (String valueName : getValueNames(true).collect(Collectors.toList())) {
-            hash = 59 * hash + Objects.hashCode(getValue(valueName));
-        }
-        for (String elementName : getNodeNames(true).collect(Collectors.toList())) {
-            hash = 59 * hash + Objects.hashCode(getMetaList(elementName));
-        }
-        return hash;
+        return MetaUtils.structuralHash(this);
+    }
+
+    /**
+     * Content digest of this meta stable between runs and meta implementations
+     *
+     * @return
+     * @see MetaUtils#digest(Meta)
+     */
+    public String getDigest() {
+        return MetaUtils.digest(this);
     }
 
     @Override
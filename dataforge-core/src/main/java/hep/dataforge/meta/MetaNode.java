@@ -97,8 +97,9 @@ public abstract class MetaNode<T extends MetaNode> extends Meta implements MetaM
      * @param path
      * @return
      */
+    @Override
     @SuppressWarnings("unchecked")
-    protected List<T> getMetaList(Name path) {
+    public List<T> getMetaList(Name path) {
         if (path.getLength() == 0) {
             throw new RuntimeException("Empty path not allowed");
         }
@@ -123,6 +124,7 @@ public abstract class MetaNode<T extends MetaNode> extends Meta implements MetaM
      * @param path
      * @return
      */
+    @Override
     @SuppressWarnings("unchecked")
     public Optional<Value> optValue(Name path) {
         if (path.getLength() == 0) {
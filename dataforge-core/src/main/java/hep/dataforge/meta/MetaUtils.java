@@ -10,13 +10,14 @@ import hep.dataforge.io.IOUtils;
 import hep.dataforge.values.*;
 import kotlin.Pair;
 
-import java.io.IOException;
-import java.io.ObjectInput;
-import java.io.ObjectOutput;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.Optional;
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -349,4 +350,161 @@ public class MetaUtils {
         return Stream.of(paths).map(meta::optValue).filter(Optional::isPresent).findFirst().map(Optional::get);
     }
 
+    /**
+     * Canonical string form of the number independent of its representation, so that 1, 1L, 1.0 and "1.0" give the
+     * same result.
+     */
+    private static String canonicalNumber(Number number) {
+        BigDecimal decimal;
+        if (number instanceof BigDecimal) {
+            decimal = (BigDecimal) number;
+        } else if (number instanceof BigInteger) {
+            decimal = new BigDecimal((BigInteger) number);
+        } else if (number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte) {
+            decimal = BigDecimal.valueOf(number.longValue());
+        } else {
+            double d = number.doubleValue();
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                return Double.toString(d);
+            }
+            decimal = BigDecimal.valueOf(d);
+        }
+        if (decimal.signum() == 0) {
+            return "0";
+        }
+        return decimal.stripTrailingZeros().toPlainString();
+    }
+
+    /**
+     * Canonical representation of a scalar value. Numbers and strings representing numbers are converted to the
+     * canonical number form prefixed by {@code #}, all other values are represented by their string form, which is
+     * consistent with cross-type value equality.
+     */
+    private static String canonicalValue(Value value) {
+        if (value.getType() == ValueType.NUMBER) {
+            return "#" + canonicalNumber(value.getNumber());
+        }
+        String string = value.getString();
+        if (value.getType() == ValueType.STRING && !string.isEmpty()) {
+            char first = string.charAt(0);
+            if (Character.isDigit(first) || first == '-' || first == '+' || first == '.') {
+                try {
+                    return "#" + canonicalNumber(new BigDecimal(string));
+                } catch (NumberFormatException ex) {
+                    // not a number
+                }
+            }
+        }
+        return string;
+    }
+
+    private static final int NUMBER_HASH = "#".hashCode();
+
+    private static int valueHash(Value value) {
+        List<Value> list = value.getList();
+        if (list.size() == 1) {
+            String canonical = canonicalValue(list.get(0));
+            // numbers are equal within relative precision, so only the fact that the value is a number is hashed
+            return canonical.startsWith("#") ? NUMBER_HASH : canonical.hashCode();
+        } else {
+            int hash = 1;
+            for (Value item : list) {
+                hash = 31 * hash + valueHash(item);
+            }
+            return hash;
+        }
+    }
+
+    /**
+     * Structural hash of the meta consistent with {@link Meta#equals(Object)}. It does not depend on the order of
+     * values and nodes and on the representation of values. Numbers are equal within relative precision, which is not
+     * transitive, so numbers and strings representing numbers contribute only a type marker to the hash. Use
+     * {@link #digest(Meta)} to distinguish metas by exact numeric values.
+     *
+     * @param meta
+     * @return
+     */
+    public static int structuralHash(Meta meta) {
+        int valuesHash = 0;
+        for (String valueName : (Iterable<String>) meta.getValueNames(true)::iterator) {
+            valuesHash += valueName.hashCode() ^ valueHash(meta.getValue(valueName));
+        }
+        int nodesHash = 0;
+        for (String nodeName : (Iterable<String>) meta.getNodeNames(true)::iterator) {
+            // child hashes are taken from the nodes themselves to use cached values
+            nodesHash += nodeName.hashCode() ^ meta.getMetaList(nodeName).hashCode();
+        }
+        int hash = 7;
+        hash = 59 * hash + Objects.hashCode(meta.getName());
+        hash = 59 * hash + valuesHash;
+        hash = 59 * hash + nodesHash;
+        return hash;
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeCanonicalValue(DataOutputStream out, Value value) throws IOException {
+        List<Value> list = value.getList();
+        if (list.size() == 1) {
+            out.writeByte('V');
+            writeString(out, canonicalValue(list.get(0)));
+        } else {
+            out.writeByte('L');
+            out.writeInt(list.size());
+            for (Value item : list) {
+                writeCanonicalValue(out, item);
+            }
+        }
+    }
+
+    /**
+     * A SHA-256 digest of the canonical encoding of the meta in hex form. Values and nodes are encoded in the order of
+     * their names. Numbers and strings representing numbers are converted to the canonical number form without rounding.
+     * Child nodes are encoded by their digests. The digest does not depend on the meta implementation and is stable
+     * between runs, so it could be used as a persistent key.
+     *
+     * @param meta
+     * @return
+     */
+    public static String digest(Meta meta) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            DataOutputStream out = new DataOutputStream(new DigestOutputStream(new OutputStream() {
+                @Override
+                public void write(int b) {
+                    //discard
+                }
+            }, md));
+            writeString(out, meta.getName());
+            List<String> valueNames = meta.getValueNames(true).sorted().collect(Collectors.toList());
+            out.writeInt(valueNames.size());
+            for (String valueName : valueNames) {
+                writeString(out, valueName);
+                writeCanonicalValue(out, meta.getValue(valueName));
+            }
+            List<String> nodeNames = meta.getNodeNames(true).sorted().collect(Collectors.toList());
+            out.writeInt(nodeNames.size());
+            for (String nodeName : nodeNames) {
+                writeString(out, nodeName);
+                List<? extends Meta> list = meta.getMetaList(nodeName);
+                out.writeInt(list.size());
+                for (Meta child : list) {
+                    writeString(out, child.getDigest());
+                }
+            }
+            out.flush();
+            StringBuilder res = new StringBuilder();
+            for (byte b : md.digest()) {
+                res.append(String.format("%02x", b));
+            }
+            return res.toString();
+        } catch (NoSuchAlgorithmException | IOException ex) {
+            throw new RuntimeException("Failed to compute meta digest", ex);
+        }
+    }
+
 }
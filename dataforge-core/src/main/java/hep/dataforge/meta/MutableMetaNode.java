@@ -37,6 +37,11 @@ public abstract class MutableMetaNode<T extends MutableMetaNode> extends MetaNod
 
     protected T parent;
 
+    /**
+     * Modification counter of this node and its descendants
+     */
+    private transient volatile int version;
+
     protected MutableMetaNode() {
         super();
     }
@@ -83,6 +88,26 @@ public abstract class MutableMetaNode<T extends MutableMetaNode> extends MetaNod
         }
     }
 
+    /**
+     * The counter which is changed on each modification of this node or any of its descendants. Could be used to
+     * check if the cached state derived from this node is still valid.
+     *
+     * @return
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Mark this node and its ancestors as modified
+     */
+    protected void modified() {
+        version++;
+        if (parent != null) {
+            parent.modified();
+        }
+    }
+
     /**
      * Notify all observers that element is changed
      *
@@ -149,6 +174,7 @@ public abstract class MutableMetaNode<T extends MutableMetaNode> extends MetaNod
         } else {
             //Adding items to existing list. No need to update parents and listeners
             list.add(newNode);
+            modified();
         }
         if (notify) {
             notifyNodeChanged(Name.of(node.getName()), oldList, new ArrayList<>(list));
@@ -404,6 +430,7 @@ public abstract class MutableMetaNode<T extends MutableMetaNode> extends MetaNod
                     getHead(namePath).removeNode(namePath.cutFirst().toString());
                 }
             }
+            modified();
 
             notifyNodeChanged(Name.of(path), oldNode, Collections.emptyList());
         }
@@ -426,6 +453,7 @@ public abstract class MutableMetaNode<T extends MutableMetaNode> extends MetaNod
             } else {
                 nodes.get(nodeName).set(index, transformNode(child.getName(), node));
             }
+            modified();
             notifyNodeChanged(Name.ofSingle(nodeName), oldNode, getMetaList(nodeName));
         }
     }
@@ -443,6 +471,7 @@ public abstract class MutableMetaNode<T extends MutableMetaNode> extends MetaNod
             } else {
                 this.values.remove(path.toUnescaped());
             }
+            modified();
             notifyValueChanged(path, oldValue.get(), null);
         }
     }
@@ -479,6 +508,7 @@ public abstract class MutableMetaNode<T extends MutableMetaNode> extends MetaNod
             // else reset contents of the node
             this.nodes.put(path, transformNodeItem(path, elements));
         }
+        modified();
     }
 
     protected void setValueItem(Name namePath, Value value) {
@@ -496,6 +526,7 @@ public abstract class MutableMetaNode<T extends MutableMetaNode> extends MetaNod
             //single token path
             this.values.put(namePath.toUnescaped(), value);
         }
+        modified();
     }
 
     protected void setValueItem(String path, Value value) {
@@ -553,6 +584,7 @@ public abstract class MutableMetaNode<T extends MutableMetaNode> extends MetaNod
         });
         List<T> oldList = this.nodes.get(name);
         this.nodes.put(name, nodes);
+        modified();
         notifyNodeChanged(Name.ofSingle(name), oldList, nodes);
     }
 
@@ -577,6 +609,7 @@ public abstract class MutableMetaNode<T extends MutableMetaNode> extends MetaNod
         }
         List<T> oldList = new ArrayList<>(list);
         list.add(node);
+        modified();
         notifyNodeChanged(Name.ofSingle(nodeName), oldList, list);
     }
 }
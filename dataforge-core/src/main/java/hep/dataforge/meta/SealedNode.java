@@ -9,6 +9,12 @@ import java.util.stream.Collectors;
  */
 public final class SealedNode extends MetaNode<SealedNode> {
 
+    /**
+     * Cached structural hash and digest. The node is immutable, so they are computed once
+     */
+    private transient int hash;
+    private transient volatile String digest;
+
     public SealedNode(Meta meta) {
         super(meta.getName());
         meta.getValueNames(true).forEach((valueName) -> {
@@ -28,6 +34,35 @@ public final class SealedNode extends MetaNode<SealedNode> {
         return this;
     }
 
+    @Override
+    public int hashCode() {
+        // racy single check like in String, zero means not computed
+        int res = hash;
+        if (res == 0) {
+            res = super.hashCode();
+            hash = res;
+        }
+        return res;
+    }
+
+    @Override
+    public String getDigest() {
+        String res = digest;
+        if (res == null) {
+            res = super.getDigest();
+            digest = res;
+        }
+        return res;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof SealedNode && ((SealedNode) obj).digest != null && digest != null && digest.equals(((SealedNode) obj).digest)) {
+            return true;
+        }
+        return super.equals(obj);
+    }
+
     @Override
     protected SealedNode cloneNode(Meta node) {
         return new SealedNode(node);
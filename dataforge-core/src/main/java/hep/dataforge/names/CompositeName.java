@@ -18,8 +18,8 @@ package hep.dataforge.names;
 import hep.dataforge.exceptions.NamingException;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
 import java.util.stream.Collectors;
@@ -30,31 +30,35 @@ import java.util.stream.Collectors;
  * @author Alexander Nozik
  */
 class CompositeName implements Name {
-    private final LinkedList<NameToken> names;
+    /**
+     * Immutable list of tokens. Names produced by cutting tokens share it with the parent name
+     */
+    private final List<NameToken> names;
+    private final int hash;
+    private String string;
 
     @NotNull
     public static CompositeName of(List<Name> tokens){
-        LinkedList<NameToken> list = tokens.stream()
+        List<NameToken> list = tokens.stream()
                 .flatMap(it -> it.getTokens().stream())
-                .map(NameToken.class::cast).collect(Collectors.toCollection(LinkedList::new));
+                .map(NameToken.class::cast).collect(Collectors.toList());
         return new CompositeName(list);
     }
 
-    public CompositeName(LinkedList<NameToken> names) {
+    public CompositeName(List<NameToken> names) {
         this.names = names;
+        this.hash = 19 * 3 + names.hashCode();
     }
 
     @Override
     public Name cutFirst() {
         switch (getLength()) {
             case 2:
-                return names.getLast();
+                return getLast();
             case 1:
                 throw new NamingException("Can not cut name token");
             default:
-                LinkedList<NameToken> tokens = new LinkedList<>(names);
-                tokens.removeFirst();
-                return new CompositeName(tokens);
+                return new CompositeName(names.subList(1, names.size()));
         }
     }
 
@@ -62,43 +66,40 @@ class CompositeName implements Name {
     public Name cutLast() {
         switch (getLength()) {
             case 2:
-                return names.getFirst();
+                return getFirst();
             case 1:
                 throw new NamingException("Can not cut name token");
             default:
-                LinkedList<NameToken> tokens = new LinkedList<>(names);
-                tokens.removeLast();
-                return new CompositeName(tokens);
+                return new CompositeName(names.subList(0, names.size() - 1));
         }
     }
 
     @Override
     public Name getFirst() {
-        return names.getFirst();
+        return names.get(0);
     }
 
     @Override
-    public Name getLast() {
-        return names.getLast();
+    public NameToken getLast() {
+        return names.get(names.size() - 1);
     }
 
     @Override
     public String getQuery() {
-        return names.getLast().getQuery();
+        return getLast().getQuery();
     }
 
     @Override
     public boolean hasQuery() {
-        return names.getLast().hasQuery();
+        return getLast().hasQuery();
     }
 
     @Override
     public Name ignoreQuery() {
         //Replace last element if needed
         if (hasQuery()) {
-            LinkedList<NameToken> tokens = new LinkedList<>(names);
-            tokens.removeLast();
-            tokens.addLast(names.getLast().ignoreQuery());
+            List<NameToken> tokens = new ArrayList<>(names);
+            tokens.set(tokens.size() - 1, getLast().ignoreQuery());
             return new CompositeName(tokens);
         } else {
             return this;
@@ -113,8 +114,12 @@ class CompositeName implements Name {
 
     @Override
     public String toString() {
-        Iterable<String> it = names.stream().map(NameToken::toString)::iterator;
-        return String.join(NAME_TOKEN_SEPARATOR, it);
+        // racy single check is safe since the string is immutable
+        if (string == null) {
+            Iterable<String> it = names.stream().map(NameToken::toString)::iterator;
+            string = String.join(NAME_TOKEN_SEPARATOR, it);
+        }
+        return string;
     }
 
     @Override
@@ -136,8 +141,6 @@ class CompositeName implements Name {
 
     @Override
     public int hashCode() {
-        int hash = 3;
-        hash = 19 * hash + Objects.hashCode(this.names);
         return hash;
     }
 
@@ -150,7 +153,7 @@ class CompositeName implements Name {
             return false;
         }
         final CompositeName other = (CompositeName) obj;
-        return Objects.equals(this.names, other.names);
+        return hash == other.hash && Objects.equals(this.names, other.names);
     }
 
     @Override
@@ -61,16 +61,18 @@ public interface Name extends Comparable<Name> {
         return Name.of(name).getLength();
     }
 
+    /**
+     * Parse a name from string splitting it by separators which are not escaped. Parsed names are shared via a
+     * bounded cache, so repeated lookups by the same string do not parse it again.
+     *
+     * @param name
+     * @return
+     */
     static Name of(String name) {
         if (name == null || name.isEmpty()) {
             return EMPTY;
         }
-        String[] tokens = name.split("(?<!\\\\)\\.");
-        if (tokens.length == 1) {
-            return new NameToken(name);
-        } else {
-            return of(Stream.of(tokens).map(NameToken::new).collect(Collectors.toList()));
-        }
+        return NameCache.get(name);
     }
 
     /**
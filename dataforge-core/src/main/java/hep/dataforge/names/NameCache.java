@@ -0,0 +1,99 @@
+/* 
+ * Copyright  2018 Alexander Nozik.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hep.dataforge.names;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Parser and bounded intern cache for string names. Names are immutable, so the same parsed instance could be shared
+ * between all lookups with the same string. The cache is cleared when it reaches its capacity.
+ *
+ * @author Alexander Nozik
+ */
+final class NameCache {
+    /**
+     * Maximum number of cached names
+     */
+    static final int CAPACITY = 4096;
+
+    /**
+     * Longer strings are parsed without caching
+     */
+    private static final int MAX_LENGTH = 256;
+
+    private static final ConcurrentHashMap<String, Name> cache = new ConcurrentHashMap<>();
+
+    private NameCache() {
+    }
+
+    static Name get(String name) {
+        if (name.length() > MAX_LENGTH) {
+            return parse(name);
+        }
+        Name res = cache.get(name);
+        if (res == null) {
+            res = parse(name);
+            if (cache.size() >= CAPACITY) {
+                cache.clear();
+            }
+            cache.put(name, res);
+        }
+        return res;
+    }
+
+    static int size() {
+        return cache.size();
+    }
+
+    /**
+     * Split the string by separators not escaped by backslash. Trailing empty tokens are ignored.
+     */
+    static Name parse(String name) {
+        List<String> tokens = null;
+        int start = 0;
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) == '.' && (i == 0 || name.charAt(i - 1) != '\\')) {
+                if (tokens == null) {
+                    tokens = new ArrayList<>();
+                }
+                tokens.add(name.substring(start, i));
+                start = i + 1;
+            }
+        }
+        if (tokens == null) {
+            return new NameToken(name);
+        }
+        tokens.add(name.substring(start));
+        int size = tokens.size();
+        while (size > 0 && tokens.get(size - 1).isEmpty()) {
+            size--;
+        }
+        switch (size) {
+            case 0:
+                return Name.EMPTY;
+            case 1:
+                return new NameToken(name);
+            default:
+                List<NameToken> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(new NameToken(tokens.get(i)));
+                }
+                return new CompositeName(list);
+        }
+    }
+}
@@ -17,7 +17,6 @@ package hep.dataforge.names;
 
 import java.util.Collections;
 import java.util.List;
-import java.util.Objects;
 
 /**
  * Единичное имя с возможным запросом. На данный момент проверки правильности
@@ -32,17 +31,30 @@ class NameToken implements Name {
 
     private final String theQuery;
 
+    /**
+     * Full string representations and hash are computed once since names are used as lookup keys
+     */
+    private final String unescaped;
+    private final String escaped;
+    private final int hash;
+
     public NameToken(String singlet) {
         //unescape string
-        singlet = singlet.replace("\\.",".");
-        if (singlet.matches(".*\\[.*\\]")) {
-            int bracketIndex = singlet.indexOf("[");
+        if (singlet.indexOf('\\') >= 0) {
+            singlet = singlet.replace("\\.", ".");
+        }
+        int bracketIndex = singlet.endsWith("]") ? singlet.indexOf('[') : -1;
+        if (bracketIndex >= 0) {
             this.theName = singlet.substring(0, bracketIndex);
-            this.theQuery = singlet.substring(bracketIndex + 1, singlet.lastIndexOf("]"));
+            this.theQuery = singlet.substring(bracketIndex + 1, singlet.length() - 1);
+            this.unescaped = theName + "[" + theQuery + "]";
         } else {
             this.theName = singlet;
             this.theQuery = null;
+            this.unescaped = singlet;
         }
+        this.escaped = unescaped.indexOf('.') >= 0 ? unescaped.replace(".", "\\.") : unescaped;
+        this.hash = 79 * 7 + unescaped.hashCode();
     }
 
     @Override
@@ -95,7 +107,7 @@ class NameToken implements Name {
 
     @Override
     public String toString() {
-        return toUnescaped().replace(".", "\\.");
+        return escaped;
     }
 
     @Override
@@ -113,8 +125,6 @@ class NameToken implements Name {
 
     @Override
     public int hashCode() {
-        int hash = 7;
-        hash = 79 * hash + Objects.hashCode(this.toUnescaped());
         return hash;
     }
 
@@ -127,18 +137,14 @@ class NameToken implements Name {
             return false;
         }
         final NameToken other = (NameToken) obj;
-        return Objects.equals(toUnescaped(), other.toUnescaped());
+        return hash == other.hash && unescaped.equals(other.unescaped);
     }
 
     /**
      * The full name including query but without escaping
      */
     public String toUnescaped() {
-        if (theQuery != null) {
-            return String.format("%s[%s]", theName, theQuery);
-        } else {
-            return theName;
-        }
+        return unescaped;
     }
 
     @Override
@@ -2,14 +2,12 @@ package hep.dataforge.providers;
 
 import hep.dataforge.exceptions.ChainPathNotSupportedException;
 
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
-import java.util.Collection;
-import java.util.Map;
-import java.util.Objects;
-import java.util.Optional;
+import java.util.*;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
@@ -17,6 +15,63 @@ import java.util.stream.Stream;
  * Created by darksnake on 25-Apr-17.
  */
 public class Providers {
+
+    /**
+     * Provider and name list methods of a class resolved to method handles. Built once per class.
+     */
+    private static final class Dispatch {
+        private static final MethodType PROVIDER_TYPE = MethodType.methodType(Object.class, Object.class, String.class);
+        private static final MethodType NAMES_TYPE = MethodType.methodType(Object.class, Object.class);
+
+        private final Map<String, MethodHandle> providers = new HashMap<>();
+        private final Map<String, MethodHandle> names = new HashMap<>();
+
+        private Dispatch(Class<?> type) {
+            for (Method method : type.getMethods()) {
+                if (method.isBridge()) {
+                    continue;
+                }
+                Provides provides = method.getAnnotation(Provides.class);
+                if (provides != null) {
+                    providers.putIfAbsent(provides.value(), handle(method, PROVIDER_TYPE));
+                }
+                ProvidesNames providesNames = method.getAnnotation(ProvidesNames.class);
+                if (providesNames != null) {
+                    names.putIfAbsent(providesNames.value(), handle(method, NAMES_TYPE));
+                }
+            }
+        }
+
+        /**
+         * Resolve a method handle with given type. Invalid methods are resolved to a handle which throws on invocation,
+         * so that they do not break other targets of the same provider.
+         */
+        private static MethodHandle handle(Method method, MethodType type) {
+            try {
+                MethodHandle handle;
+                try {
+                    handle = MethodHandles.publicLookup().unreflect(method);
+                } catch (IllegalAccessException ex) {
+                    // public method of a non-public class
+                    method.setAccessible(true);
+                    handle = MethodHandles.lookup().unreflect(method);
+                }
+                return handle.asType(type);
+            } catch (IllegalAccessException | RuntimeException ex) {
+                RuntimeException error = new RuntimeException("The method " + method.getName() + " is not a provider method", ex);
+                MethodHandle thrower = MethodHandles.throwException(Object.class, RuntimeException.class).bindTo(error);
+                return MethodHandles.dropArguments(thrower, 0, type.parameterList());
+            }
+        }
+    }
+
+    private static final ClassValue<Dispatch> DISPATCH = new ClassValue<Dispatch>() {
+        @Override
+        protected Dispatch computeValue(Class<?> type) {
+            return new Dispatch(type);
+        }
+    };
+
     /**
      * Provide using custom resolver.
      *
@@ -52,29 +107,28 @@ public class Providers {
 
 
     public static Collection<String> listTargets(Object provider) {
-        return findProviders(provider.getClass()).keySet();
+        return Collections.unmodifiableSet(DISPATCH.get(provider.getClass()).providers.keySet());
     }
 
     @SuppressWarnings("unchecked")
     public static Stream<String> listContent(Object provider, String target) {
-        return Stream.of(provider.getClass().getMethods())
-                .filter(method -> method.isAnnotationPresent(ProvidesNames.class))
-                .filter(method -> Objects.equals(method.getAnnotation(ProvidesNames.class).value(), target))
-                .findFirst()
-                .map(method -> {
-                    try {
-                        Object list = method.invoke(provider);
-                        if (list instanceof Stream) {
-                            return (Stream<String>) list;
-                        } else if (list instanceof Collection) {
-                            return ((Collection<String>) list).stream();
-                        } else {
-                            throw new Error("Wrong method annotated with ProvidesNames");
-                        }
-                    } catch (Exception e) {
-                        throw new RuntimeException("Failed to provide names by reflections", e);
-                    }
-                }).orElse(Stream.empty());
+        MethodHandle handle = DISPATCH.get(provider.getClass()).names.get(target);
+        if (handle == null) {
+            return Stream.empty();
+        }
+        Object list;
+        try {
+            list = (Object) handle.invokeExact(provider);
+        } catch (Throwable e) {
+            throw new RuntimeException("Failed to provide names by reflections", e);
+        }
+        if (list instanceof Stream) {
+            return (Stream<String>) list;
+        } else if (list instanceof Collection) {
+            return ((Collection<String>) list).stream();
+        } else {
+            throw new Error("Wrong method annotated with ProvidesNames");
+        }
     }
 
     /**
@@ -86,34 +140,25 @@ public class Providers {
      * @return
      */
     private static Optional<?> provideDirect(Object provider, String target, String name) {
-        Map<String, Method> providers = findProviders(provider.getClass());
-
         // using default target if needed
         if (target.isEmpty() && provider instanceof Provider) {
             target = ((Provider) provider).getDefaultTarget();
         }
 
-        if (!providers.containsKey(target)) {
+        MethodHandle handle = DISPATCH.get(provider.getClass()).providers.get(target);
+        if (handle == null) {
             return Optional.empty();
+        }
+        Object result;
+        try {
+            result = (Object) handle.invokeExact(provider, name);
+        } catch (Throwable e) {
+            throw new RuntimeException("Failed to provide by reflections. The provider for target " + target + " failed", e);
+        }
+        if (result instanceof Optional) {
+            return (Optional<?>) result;
         } else {
-            Method method = providers.get(target);
-            try {
-                Object result = method.invoke(provider, name);
-                if (result instanceof Optional) {
-                    return (Optional<?>) result;
-                } else {
-                    return Optional.ofNullable(result);
-                }
-            } catch (IllegalAccessException | InvocationTargetException | ClassCastException e) {
-                throw new RuntimeException("Failed to provide by reflections. The method " + method.getName() + " is not a provider method", e);
-            }
+            return Optional.ofNullable(result);
         }
     }
-
-    private static Map<String, Method> findProviders(Class cl) {
-        return Stream.of(cl.getMethods())
-                .filter(method -> method.isAnnotationPresent(Provides.class))
-                .collect(Collectors.toMap(method -> method.getAnnotation(Provides.class).value(), method -> method));
-    }
-
 }
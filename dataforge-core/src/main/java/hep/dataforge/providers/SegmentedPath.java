@@ -36,7 +36,7 @@ class SegmentedPath implements Path {
             throw new IllegalArgumentException("Empty argument in the path constructor");
         }
         String[] split = normalize(pathStr).split(PATH_SEGMENT_SEPARATOR);
-        LinkedList<PathSegment> segments = new LinkedList<>();
+        List<PathSegment> segments = new ArrayList<>(split.length);
 
         for (String segmentStr : split) {
             segments.add(new PathSegment(segmentStr));
@@ -46,7 +46,10 @@ class SegmentedPath implements Path {
         return new SegmentedPath(target, segments);
     }
 
-    private final LinkedList<PathSegment> segments;
+    /**
+     * Immutable list of segments. Tails share the list of the parent path, so chain resolution does not copy segments
+     */
+    private final List<PathSegment> segments;
 
     /**
      * for target inheritance
@@ -58,7 +61,12 @@ class SegmentedPath implements Path {
             throw new IllegalArgumentException("Zero length paths are not allowed");
         }
         this.defaultTarget = defaultTarget;
-        this.segments = new LinkedList<>(segments);
+        this.segments = new ArrayList<>(segments);
+    }
+
+    private SegmentedPath(String defaultTarget, List<PathSegment> segments) {
+        this.defaultTarget = defaultTarget;
+        this.segments = segments;
     }
 
     /**
@@ -85,7 +93,7 @@ class SegmentedPath implements Path {
      */
     @Override
     public String getTarget() {
-        String target = segments.getFirst().getTarget();
+        String target = segments.get(0).getTarget();
         if(target.isEmpty()){
             return defaultTarget;
         } else {
@@ -98,12 +106,12 @@ class SegmentedPath implements Path {
      */
     @Override
     public Name getName() {
-        return segments.getFirst().getName();
+        return segments.get(0).getName();
     }
 
 
     public PathSegment head() {
-        return this.segments.peekFirst();
+        return this.segments.get(0);
     }
 
 
@@ -116,8 +124,7 @@ class SegmentedPath implements Path {
         if (segments.size() <= 1) {
             return Optional.empty();
         } else {
-            List<PathSegment> newSegments = segments.subList(1, segments.size());
-            return Optional.of(new SegmentedPath(defaultTarget, newSegments));
+            return Optional.of(new SegmentedPath(defaultTarget, segments.subList(1, segments.size())));
         }
     }
 
@@ -98,6 +98,10 @@ public class Adapters {
         return adapter.getComponent(point, X_VALUE_KEY);
     }
 
+    public static double getXDouble(ValuesAdapter adapter, Values point) {
+        return adapter.getDouble(point, X_VALUE_KEY);
+    }
+
     public static Optional<Double> optXError(ValuesAdapter adapter, Values point) {
         return adapter.optComponent(point, X_ERROR_KEY).map(Value::getDouble);
     }
@@ -106,6 +110,10 @@ public class Adapters {
         return adapter.getComponent(point, Y_VALUE_KEY);
     }
 
+    public static double getYDouble(ValuesAdapter adapter, Values point) {
+        return adapter.getDouble(point, Y_VALUE_KEY);
+    }
+
     public static Optional<Double> optYError(ValuesAdapter adapter, Values point) {
         return adapter.optComponent(point, Y_ERROR_KEY).map(Value::getDouble);
     }
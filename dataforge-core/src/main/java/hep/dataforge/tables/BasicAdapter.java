@@ -41,6 +41,17 @@ public class BasicAdapter extends MetaHolder implements ValuesAdapter {
         return values.optValue(getComponentName(component));
     }
 
+    @Override
+    public double getDouble(Values values, String component) {
+        return values.getDouble(getComponentName(component));
+    }
+
+    @Override
+    public double getDouble(Values values, String component, double def) {
+        String name = getComponentName(component);
+        return values.hasValue(name) ? values.getDouble(name) : def;
+    }
+
     @Override
     public String getComponentName(String component) {
         return mappings.getOrDefault(component, component);
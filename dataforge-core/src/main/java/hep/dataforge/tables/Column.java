@@ -20,6 +20,7 @@ import hep.dataforge.values.Value;
 
 import java.io.Serializable;
 import java.util.List;
+import java.util.stream.DoubleStream;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -46,7 +47,14 @@ public interface Column extends Named, Iterable<Value>, Serializable {
      */
     Value get(int n);
 
-    //TODO add custom value type accessors
+    /**
+     * Get the numeric value with given index. Primitive columns override this to avoid boxing.
+     * @param n
+     * @return
+     */
+    default double getDouble(int n) {
+        return get(n).getDouble();
+    }
 
     /**
      * Get values as list
@@ -67,4 +75,12 @@ public interface Column extends Named, Iterable<Value>, Serializable {
     default Stream<Value> stream() {
         return StreamSupport.stream(spliterator(), false);
     }
+
+    /**
+     * Get the values as a stream of doubles
+     * @return
+     */
+    default DoubleStream doubleStream() {
+        return stream().mapToDouble(Value::getDouble);
+    }
 }
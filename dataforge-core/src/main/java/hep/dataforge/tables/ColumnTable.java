@@ -48,12 +48,12 @@ public class ColumnTable implements Table {
     private final int size;
 
     /**
-     * Build a table from pre-constructed columns
+     * Build a table from pre-constructed columns. Primitive columns are used as is, other columns are copied.
      *
      * @param columns
      */
     public ColumnTable(Collection<Column> columns) {
-        columns.forEach(it -> this.columns.put(it.getName(), ListColumn.copy(it)));
+        columns.forEach(it -> this.columns.put(it.getName(), it instanceof PrimitiveColumn ? it : ListColumn.copy(it)));
         if (this.columns.values().stream().mapToInt(Column::size).distinct().count() != 1) {
             throw new IllegalArgumentException("Column dimension mismatch");
         }
@@ -69,7 +69,9 @@ public class ColumnTable implements Table {
 
     @Override
     public Values getRow(int i) {
-        return new ValueMap(getColumns().stream().map(Column::getName).collect(Collectors.toMap(it -> it, it -> get(it, i))));
+        Map<String, Value> map = new LinkedHashMap<>();
+        columns.forEach((name, column) -> map.put(name, column.get(i)));
+        return new ValueMap(map);
     }
 
     @Override
@@ -92,6 +94,11 @@ public class ColumnTable implements Table {
         return getColumn(columnName).get(rowNumber);
     }
 
+    @Override
+    public double getDouble(String name, int index) {
+        return getColumn(name).getDouble(index);
+    }
+
     @Override
     public TableFormat getFormat() {
         return () -> getColumns().stream().map(Column::getFormat);
@@ -0,0 +1,107 @@
+/*
+ * Copyright  2018 Alexander Nozik.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package hep.dataforge.tables;
+
+import hep.dataforge.values.Value;
+import hep.dataforge.values.ValueFactory;
+import hep.dataforge.values.ValueType;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.stream.DoubleStream;
+
+/**
+ * An immutable numeric column backed by {@code double[]}. Null values are read as {@code NaN}.
+ *
+ * @author Alexander Nozik
+ */
+public final class DoubleColumn extends PrimitiveColumn {
+
+    /**
+     * Create a column from an array. The array is copied.
+     *
+     * @param name
+     * @param values
+     * @return
+     */
+    public static DoubleColumn of(String name, double... values) {
+        return new DoubleColumn(ColumnFormat.build(name, ValueType.NUMBER), Arrays.copyOf(values, values.length), values.length, null);
+    }
+
+    private final double[] values;
+
+    private DoubleColumn(ColumnFormat format, double[] values, int size, BitSet nulls) {
+        super(format, size, nulls);
+        this.values = values;
+    }
+
+    @Override
+    protected Value box(int n) {
+        return ValueFactory.of(values[n]);
+    }
+
+    @Override
+    public double getDouble(int n) {
+        checkIndex(n);
+        return values[n];
+    }
+
+    @Override
+    public DoubleStream doubleStream() {
+        return Arrays.stream(values, 0, size());
+    }
+
+    public static class Builder extends PrimitiveColumn.Builder<DoubleColumn> {
+        private double[] values;
+
+        public Builder(ColumnFormat format, int capacity) {
+            super(format);
+            this.values = new double[capacity];
+        }
+
+        public Builder(String name) {
+            this(ColumnFormat.build(name, ValueType.NUMBER), 16);
+        }
+
+        @Override
+        protected void ensureCapacity(int capacity) {
+            if (capacity > values.length) {
+                values = Arrays.copyOf(values, grow(values.length, capacity));
+            }
+        }
+
+        @Override
+        protected void append(Value value) {
+            values[size] = value.getDouble();
+        }
+
+        @Override
+        protected void appendDefault() {
+            values[size] = Double.NaN;
+        }
+
+        public Builder add(double value) {
+            ensureCapacity(size + 1);
+            values[size++] = value;
+            return this;
+        }
+
+        @Override
+        public DoubleColumn build() {
+            return new DoubleColumn(format, Arrays.copyOf(values, size), size, (BitSet) getNulls().clone());
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright  2018 Alexander Nozik.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package hep.dataforge.tables;
+
+import hep.dataforge.values.Value;
+import hep.dataforge.values.ValueFactory;
+import hep.dataforge.values.ValueType;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+/**
+ * An immutable time column storing instants as epoch nanoseconds in {@code long[]}. Supported range is roughly
+ * years 1677 to 2262.
+ * <p>
+ * For compatibility with time values, {@link #getDouble(int)} returns epoch milliseconds.
+ * </p>
+ *
+ * @author Alexander Nozik
+ */
+public final class InstantColumn extends PrimitiveColumn {
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    /**
+     * Convert instant to epoch nanoseconds
+     *
+     * @param instant
+     * @return
+     * @throws ArithmeticException if instant is out of supported range
+     */
+    public static long toEpochNanos(Instant instant) {
+        return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), NANOS_PER_SECOND), instant.getNano());
+    }
+
+    public static Instant ofEpochNanos(long nanos) {
+        return Instant.ofEpochSecond(0, nanos);
+    }
+
+    private final long[] nanos;
+
+    private InstantColumn(ColumnFormat format, long[] nanos, int size, BitSet nulls) {
+        super(format, size, nulls);
+        this.nanos = nanos;
+    }
+
+    @Override
+    protected Value box(int n) {
+        return ValueFactory.of(ofEpochNanos(nanos[n]));
+    }
+
+    public long getEpochNanos(int n) {
+        checkIndex(n);
+        return nanos[n];
+    }
+
+    public Instant getInstant(int n) {
+        return ofEpochNanos(getEpochNanos(n));
+    }
+
+    @Override
+    public double getDouble(int n) {
+        return isNull(n) ? Double.NaN : Math.floorDiv(getEpochNanos(n), 1_000_000L);
+    }
+
+    public LongStream epochNanosStream() {
+        return Arrays.stream(nanos, 0, size());
+    }
+
+    @Override
+    public DoubleStream doubleStream() {
+        return IntStream.range(0, size()).mapToDouble(this::getDouble);
+    }
+
+    public static class Builder extends PrimitiveColumn.Builder<InstantColumn> {
+        private long[] nanos;
+
+        public Builder(ColumnFormat format, int capacity) {
+            super(format);
+            this.nanos = new long[capacity];
+        }
+
+        public Builder(String name) {
+            this(ColumnFormat.build(name, ValueType.TIME), 16);
+        }
+
+        @Override
+        protected void ensureCapacity(int capacity) {
+            if (capacity > nanos.length) {
+                nanos = Arrays.copyOf(nanos, grow(nanos.length, capacity));
+            }
+        }
+
+        @Override
+        protected void append(Value value) {
+            nanos[size] = toEpochNanos(value.getTime());
+        }
+
+        @Override
+        protected void appendDefault() {
+            nanos[size] = 0;
+        }
+
+        public Builder add(Instant instant) {
+            return addEpochNanos(toEpochNanos(instant));
+        }
+
+        public Builder addEpochNanos(long value) {
+            ensureCapacity(size + 1);
+            nanos[size++] = value;
+            return this;
+        }
+
+        @Override
+        public InstantColumn build() {
+            return new InstantColumn(format, Arrays.copyOf(nanos, size), size, (BitSet) getNulls().clone());
+        }
+    }
+}
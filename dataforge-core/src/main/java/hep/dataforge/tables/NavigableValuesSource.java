@@ -24,4 +24,13 @@ public interface NavigableValuesSource extends ValuesSource {
      * @return
      */
     int size();
+
+    /**
+     * Create a reusable cursor to walk rows without creating a new {@link Values} for each row
+     *
+     * @return
+     */
+    default RowCursor cursor() {
+        return new RowCursor(this);
+    }
 }
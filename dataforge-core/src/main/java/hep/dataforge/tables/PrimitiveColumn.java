@@ -0,0 +1,222 @@
+/*
+ * Copyright  2018 Alexander Nozik.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package hep.dataforge.tables;
+
+import hep.dataforge.values.Value;
+import hep.dataforge.values.ValueFactory;
+import hep.dataforge.values.ValueType;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.AbstractList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * A base for immutable columns backed by primitive arrays. Values are boxed only when accessed via {@link #get(int)}.
+ * Null values are tracked separately by a bit set, so primitive accessors return type-specific defaults for them.
+ *
+ * @author Alexander Nozik
+ */
+public abstract class PrimitiveColumn implements Column {
+
+    /**
+     * Create a column builder appropriate for the primary type of given format. Returns {@code null} if there is no
+     * primitive representation for the type.
+     *
+     * @param format
+     * @param capacity initial capacity of the builder
+     * @return
+     */
+    public static Builder<?> builder(ColumnFormat format, int capacity) {
+        return builder(format, format.getPrimaryType(), capacity);
+    }
+
+    /**
+     * Create a column builder for explicitly given value type. Returns {@code null} if there is no primitive
+     * representation for the type.
+     *
+     * @param format
+     * @param type
+     * @param capacity
+     * @return
+     */
+    public static Builder<?> builder(ColumnFormat format, ValueType type, int capacity) {
+        switch (type) {
+            case NUMBER:
+                return new DoubleColumn.Builder(format, capacity);
+            case TIME:
+                return new InstantColumn.Builder(format, capacity);
+            case STRING:
+                return new StringColumn.Builder(format, capacity);
+            default:
+                return null;
+        }
+    }
+
+    private final ColumnFormat format;
+    private final BitSet nulls;
+    private final int size;
+
+    protected PrimitiveColumn(ColumnFormat format, int size, BitSet nulls) {
+        this.format = format;
+        this.size = size;
+        this.nulls = nulls == null || nulls.isEmpty() ? null : nulls;
+    }
+
+    @Override
+    public ColumnFormat getFormat() {
+        return format;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Check if the value with given index is null
+     *
+     * @param n
+     * @return
+     */
+    public boolean isNull(int n) {
+        return nulls != null && nulls.get(n);
+    }
+
+    protected void checkIndex(int n) {
+        if (n < 0 || n >= size) {
+            throw new IndexOutOfBoundsException("Index " + n + " is out of column bounds " + size);
+        }
+    }
+
+    /**
+     * Box the value with given index. Called only for non-null values.
+     *
+     * @param n
+     * @return
+     */
+    protected abstract Value box(int n);
+
+    @Override
+    public Value get(int n) {
+        checkIndex(n);
+        return isNull(n) ? ValueFactory.NULL : box(n);
+    }
+
+    /**
+     * A lightweight list view of this column. Values are boxed on access.
+     *
+     * @return
+     */
+    @Override
+    public List<Value> asList() {
+        return new AbstractList<Value>() {
+            @Override
+            public Value get(int index) {
+                return PrimitiveColumn.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @NotNull
+    @Override
+    public Iterator<Value> iterator() {
+        return asList().iterator();
+    }
+
+    @Override
+    public Stream<Value> stream() {
+        return IntStream.range(0, size).mapToObj(this::get);
+    }
+
+    /**
+     * A growable buffer for primitive column construction
+     *
+     * @param <C>
+     */
+    public static abstract class Builder<C extends PrimitiveColumn> {
+        protected final ColumnFormat format;
+        private final BitSet nulls = new BitSet();
+        protected int size = 0;
+
+        protected Builder(ColumnFormat format) {
+            this.format = format;
+        }
+
+        /**
+         * Ensure that underlying storage could hold at least given number of elements
+         *
+         * @param capacity
+         */
+        protected abstract void ensureCapacity(int capacity);
+
+        /**
+         * Append non-null value
+         *
+         * @param value
+         */
+        protected abstract void append(Value value);
+
+        /**
+         * Append a default value in place of null
+         */
+        protected abstract void appendDefault();
+
+        protected int grow(int current, int required) {
+            return Math.max(required, current + (current >> 1) + 16);
+        }
+
+        /**
+         * Append a boxed value
+         *
+         * @param value
+         * @return
+         */
+        public Builder<C> add(Value value) {
+            ensureCapacity(size + 1);
+            if (value.isNull()) {
+                nulls.set(size);
+                appendDefault();
+            } else {
+                append(value);
+            }
+            size++;
+            return this;
+        }
+
+        public Builder<C> addNull() {
+            return add(ValueFactory.NULL);
+        }
+
+        public int size() {
+            return size;
+        }
+
+        protected BitSet getNulls() {
+            return nulls;
+        }
+
+        public abstract C build();
+    }
+}
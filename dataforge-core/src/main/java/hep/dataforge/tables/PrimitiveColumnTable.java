@@ -0,0 +1,296 @@
+/*
+ * Copyright  2018 Alexander Nozik.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package hep.dataforge.tables;
+
+import hep.dataforge.exceptions.NameNotFoundException;
+import hep.dataforge.exceptions.NamingException;
+import hep.dataforge.meta.MetaMorph;
+import hep.dataforge.meta.MorphTarget;
+import hep.dataforge.values.*;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * An immutable column based table which stores numbers, times and strings in primitive arrays (see
+ * {@link PrimitiveColumn}). Values are boxed only on generic access, so numeric loops over {@link Column#getDouble(int)}
+ * or {@link #getDouble(String, int)} do not allocate. Columns without primitive representation are stored as is.
+ *
+ * @author Alexander Nozik
+ */
+@MorphTarget(target = ListTable.class)
+public class PrimitiveColumnTable implements Table {
+
+    /**
+     * Convert any table to primitive column table. Columns with mixed value types are kept as is.
+     *
+     * @param table
+     * @return
+     */
+    public static PrimitiveColumnTable copy(@NotNull Table table) {
+        if (table instanceof PrimitiveColumnTable) {
+            return (PrimitiveColumnTable) table;
+        } else {
+            return new PrimitiveColumnTable(table.getColumns().stream()
+                    .map(PrimitiveColumnTable::toPrimitive)
+                    .collect(Collectors.toList()));
+        }
+    }
+
+    private static boolean isIntegral(Number number) {
+        return number instanceof Integer || number instanceof Long || number instanceof Short || number instanceof Byte;
+    }
+
+    /**
+     * Convert a column to the primitive one if all its non-null values have the same type
+     *
+     * @param column
+     * @return
+     */
+    private static Column toPrimitive(Column column) {
+        if (column instanceof PrimitiveColumn) {
+            return column;
+        }
+        ColumnFormat format = column.getFormat();
+        List<ValueType> types = column.stream()
+                .filter(it -> !it.isNull())
+                .map(Value::getType)
+                .distinct()
+                .limit(2)
+                .collect(Collectors.toList());
+
+        ValueType type;
+        if (types.size() == 1) {
+            type = types.get(0);
+        } else if (types.isEmpty() && format.hasValue("type")) {
+            type = format.getPrimaryType();
+        } else {
+            return column;
+        }
+
+        PrimitiveColumn.Builder<?> builder;
+        if (type == ValueType.NUMBER && column.stream().allMatch(it -> it.isNull() || isIntegral(it.getNumber()))) {
+            builder = new LongColumn.Builder(format, column.size());
+        } else {
+            builder = PrimitiveColumn.builder(format, type, column.size());
+        }
+        if (builder == null) {
+            return column;
+        }
+        column.forEach(builder::add);
+        return builder.build();
+    }
+
+    private final Map<String, Column> columns = new LinkedHashMap<>();
+    private final int size;
+    private final ValuesSchema schema;
+
+    /**
+     * Build a table from pre-constructed columns. Columns are not copied.
+     *
+     * @param columns
+     */
+    public PrimitiveColumnTable(Collection<? extends Column> columns) {
+        columns.forEach(it -> this.columns.put(it.getName(), it));
+        if (this.columns.values().stream().mapToInt(Column::size).distinct().count() > 1) {
+            throw new IllegalArgumentException("Column dimension mismatch");
+        }
+        size = this.columns.values().stream().findFirst().map(Column::size).orElse(0);
+        schema = ValuesSchema.of(this.columns.keySet());
+    }
+
+    @Override
+    public Values getRow(int i) {
+        Value[] values = new Value[schema.getSize()];
+        int j = 0;
+        for (Column column : columns.values()) {
+            values[j++] = column.get(i);
+        }
+        return new ValueMap(schema, values);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Column getColumn(String name) {
+        Column column = columns.get(name);
+        if (column == null) {
+            throw new NameNotFoundException(name);
+        }
+        return column;
+    }
+
+    @Override
+    public Collection<Column> getColumns() {
+        return Collections.unmodifiableCollection(columns.values());
+    }
+
+    @Override
+    public Value get(String columnName, int rowNumber) {
+        return getColumn(columnName).get(rowNumber);
+    }
+
+    @Override
+    public double getDouble(String name, int index) {
+        return getColumn(name).getDouble(index);
+    }
+
+    @Override
+    public TableFormat getFormat() {
+        return () -> columns.values().stream().map(Column::getFormat);
+    }
+
+    @NotNull
+    @Override
+    public Iterator<Values> iterator() {
+        return getRows().iterator();
+    }
+
+    @Override
+    public Stream<Values> getRows() {
+        return IntStream.range(0, size).mapToObj(this::getRow);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj != null && getClass() == obj.getClass() && ((MetaMorph) obj).toMeta().equals(this.toMeta());
+    }
+
+    @Override
+    public int hashCode() {
+        return toMeta().hashCode();
+    }
+
+    /**
+     * A row-by-row builder for primitive column table. Column types are taken from the format. If column format
+     * does not declare a type, it is inferred from the first non-null value.
+     */
+    public static class Builder {
+
+        private final TableFormat format;
+        private final Map<String, ColumnBuffer> buffers = new LinkedHashMap<>();
+
+        public Builder(TableFormat format) {
+            this.format = format;
+            format.getColumns().forEach(it -> buffers.put(it.getName(), new ColumnBuffer(it)));
+        }
+
+        public Builder(String... names) {
+            this(MetaTableFormat.Companion.forNames(names));
+        }
+
+        public TableFormat getFormat() {
+            return format;
+        }
+
+        /**
+         * Append a row. Row must contain all the columns declared in the format.
+         *
+         * @param values
+         * @return
+         */
+        public Builder row(Values values) {
+            buffers.forEach((name, buffer) -> buffer.add(values.getValue(name)));
+            return this;
+        }
+
+        /**
+         * Append a row constructed from a list of objects using current table format
+         *
+         * @param values
+         * @return
+         */
+        public Builder row(Object... values) {
+            if (values.length != buffers.size()) {
+                throw new NamingException("Row size " + values.length + " does not match table format size " + buffers.size());
+            }
+            int i = 0;
+            for (ColumnBuffer buffer : buffers.values()) {
+                buffer.add(Value.Companion.of(values[i++]));
+            }
+            return this;
+        }
+
+        public Builder rows(Iterable<? extends Values> rows) {
+            rows.forEach(this::row);
+            return this;
+        }
+
+        public PrimitiveColumnTable build() {
+            return new PrimitiveColumnTable(buffers.values().stream().map(ColumnBuffer::build).collect(Collectors.toList()));
+        }
+    }
+
+    /**
+     * Column under construction. Falls back to a list of values if there is no primitive representation for the type.
+     */
+    private static class ColumnBuffer {
+        private final ColumnFormat format;
+        private PrimitiveColumn.Builder<?> builder;
+        private List<Value> fallback;
+        private int leadingNulls = 0;
+
+        ColumnBuffer(ColumnFormat format) {
+            this.format = format;
+            if (format.hasValue("type")) {
+                init(format.getPrimaryType());
+            }
+        }
+
+        private void init(ValueType type) {
+            builder = PrimitiveColumn.builder(format, type, 16);
+            if (builder == null) {
+                fallback = new ArrayList<>();
+            }
+            for (int i = 0; i < leadingNulls; i++) {
+                add(ValueFactory.NULL);
+            }
+            leadingNulls = 0;
+        }
+
+        void add(Value value) {
+            if (builder == null && fallback == null) {
+                if (value.isNull()) {
+                    leadingNulls++;
+                    return;
+                } else {
+                    init(value.getType());
+                }
+            }
+            if (builder != null) {
+                builder.add(value);
+            } else {
+                fallback.add(value);
+            }
+        }
+
+        Column build() {
+            if (builder != null) {
+                return builder.build();
+            } else if (fallback != null) {
+                return new ListColumn(format, fallback.stream());
+            } else {
+                return new ListColumn(format, Collections.nCopies(leadingNulls, ValueFactory.NULL).stream());
+            }
+        }
+    }
+}
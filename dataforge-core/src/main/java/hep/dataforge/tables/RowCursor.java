@@ -0,0 +1,239 @@
+/*
+ * Copyright  2018 Alexander Nozik.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package hep.dataforge.tables;
+
+import hep.dataforge.exceptions.NameNotFoundException;
+import hep.dataforge.names.Names;
+import hep.dataforge.values.Value;
+import hep.dataforge.values.ValueMap;
+import hep.dataforge.values.Values;
+import hep.dataforge.values.ValuesSchema;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A reusable mutable view of a single row in {@link NavigableValuesSource}. The cursor itself is {@link Values}, so it
+ * could be passed to models and adapters directly, but it changes its content on each {@link #advance()}.
+ * Do not store the cursor itself, use {@link #snapshot()} instead.
+ * <p>
+ * If the source is a {@link Table}, values are read directly from its columns, and column-index accessors are
+ * available. Reading numbers via {@link #getDouble(String)} or {@link #getDouble(int)} from a
+ * {@link PrimitiveColumnTable} does not allocate.
+ * </p>
+ *
+ * @author Alexander Nozik
+ */
+public class RowCursor implements Values {
+
+    private final NavigableValuesSource source;
+    private final Column[] columns;
+    private final Map<String, Integer> indices;
+    private final Names names;
+    private final ValuesSchema schema;
+    private int row = -1;
+
+    public RowCursor(NavigableValuesSource source) {
+        this.source = source;
+        if (source instanceof Table) {
+            Table table = (Table) source;
+            this.columns = table.getColumns().toArray(new Column[0]);
+            this.indices = new HashMap<>();
+            for (int i = 0; i < columns.length; i++) {
+                indices.put(columns[i].getName(), i);
+            }
+            this.schema = ValuesSchema.of(Arrays.stream(columns).map(Column::getName).toArray(String[]::new));
+            this.names = schema.getNames();
+        } else {
+            this.columns = null;
+            this.indices = null;
+            this.names = null;
+            this.schema = null;
+        }
+    }
+
+    /**
+     * Move to the next row
+     *
+     * @return false if there are no more rows
+     */
+    public boolean advance() {
+        if (row + 1 < source.size()) {
+            row++;
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Move cursor to a specific row
+     *
+     * @param row
+     * @return
+     */
+    public RowCursor moveTo(int row) {
+        if (row < 0 || row >= source.size()) {
+            throw new IndexOutOfBoundsException("Row " + row + " is out of bounds " + source.size());
+        }
+        this.row = row;
+        return this;
+    }
+
+    /**
+     * Move cursor before the first row
+     */
+    public void reset() {
+        this.row = -1;
+    }
+
+    /**
+     * Current row number
+     *
+     * @return
+     */
+    public int getRow() {
+        return row;
+    }
+
+    private void checkPosition() {
+        if (row < 0) {
+            throw new IllegalStateException("Cursor is not positioned on a row");
+        }
+    }
+
+    /**
+     * Index of the column with given name or -1 if it is not present. Always -1 if source is not a {@link Table}.
+     *
+     * @param name
+     * @return
+     */
+    public int columnIndex(String name) {
+        if (indices != null) {
+            Integer index = indices.get(name);
+            return index == null ? -1 : index;
+        } else {
+            return -1;
+        }
+    }
+
+    private Column column(int index) {
+        if (columns == null) {
+            throw new UnsupportedOperationException("Column access is supported only for tables");
+        }
+        return columns[index];
+    }
+
+    /**
+     * Get value by column index
+     *
+     * @param index
+     * @return
+     */
+    @NotNull
+    @Override
+    public Value get(int index) {
+        checkPosition();
+        return column(index).get(row);
+    }
+
+    /**
+     * Get numeric value by column index
+     *
+     * @param index
+     * @return
+     */
+    public double getDouble(int index) {
+        checkPosition();
+        return column(index).getDouble(row);
+    }
+
+    @Override
+    public Names getNames() {
+        checkPosition();
+        return names == null ? source.getRow(row).getNames() : names;
+    }
+
+    @Override
+    public boolean hasValue(@NotNull String path) {
+        return indices != null ? indices.containsKey(path) : getNames().contains(path);
+    }
+
+    @NotNull
+    @Override
+    public Optional<Value> optValue(@NotNull String path) {
+        return hasValue(path) ? Optional.of(getValue(path)) : Optional.empty();
+    }
+
+    @NotNull
+    @Override
+    public Value getValue(@NotNull String path) {
+        checkPosition();
+        if (columns != null) {
+            int index = columnIndex(path);
+            if (index < 0) {
+                throw new NameNotFoundException(path);
+            }
+            return columns[index].get(row);
+        } else {
+            return source.get(path, row);
+        }
+    }
+
+    @Override
+    public double getDouble(@NotNull String name) {
+        checkPosition();
+        if (columns != null) {
+            int index = columnIndex(name);
+            if (index < 0) {
+                throw new NameNotFoundException(name);
+            }
+            return columns[index].getDouble(row);
+        } else {
+            return source.getDouble(name, row);
+        }
+    }
+
+    /**
+     * Create an immutable copy of the current row
+     *
+     * @return
+     */
+    public Values snapshot() {
+        checkPosition();
+        if (schema != null) {
+            Value[] values = new Value[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                values[i] = columns[i].get(row);
+            }
+            return new ValueMap(schema, values);
+        }
+        Map<String, Value> map = new LinkedHashMap<>();
+        for (String name : getNames()) {
+            map.put(name, getValue(name));
+        }
+        return new ValueMap(map);
+    }
+
+    @Override
+    public String toString() {
+        return row < 0 ? "[]" : snapshot().toString();
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright  2018 Alexander Nozik.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package hep.dataforge.tables;
+
+import hep.dataforge.values.Value;
+import hep.dataforge.values.ValueType;
+
+import java.util.*;
+
+/**
+ * An immutable dictionary-encoded string column. Each distinct string is stored once and rows hold
+ * {@code int} codes into the dictionary. Suitable for tags, device names and other low-cardinality columns.
+ *
+ * @author Alexander Nozik
+ */
+public final class StringColumn extends PrimitiveColumn {
+
+    private final Value[] dictionary;
+    private final int[] codes;
+
+    private StringColumn(ColumnFormat format, Value[] dictionary, int[] codes, int size, BitSet nulls) {
+        super(format, size, nulls);
+        this.dictionary = dictionary;
+        this.codes = codes;
+    }
+
+    @Override
+    protected Value box(int n) {
+        return dictionary[codes[n]];
+    }
+
+    public String getString(int n) {
+        return get(n).getString();
+    }
+
+    /**
+     * Dictionary code for given row. Equal strings have equal codes. Returns -1 for null.
+     *
+     * @param n
+     * @return
+     */
+    public int getCode(int n) {
+        checkIndex(n);
+        return isNull(n) ? -1 : codes[n];
+    }
+
+    /**
+     * The number of distinct non-null strings in the column
+     *
+     * @return
+     */
+    public int getCardinality() {
+        return dictionary.length;
+    }
+
+    /**
+     * Get dictionary entry by its code
+     *
+     * @param code
+     * @return
+     */
+    public String decode(int code) {
+        return dictionary[code].getString();
+    }
+
+    public static class Builder extends PrimitiveColumn.Builder<StringColumn> {
+        private final Map<String, Integer> index = new HashMap<>();
+        private final List<Value> dictionary = new ArrayList<>();
+        private int[] codes;
+
+        public Builder(ColumnFormat format, int capacity) {
+            super(format);
+            this.codes = new int[capacity];
+        }
+
+        public Builder(String name) {
+            this(ColumnFormat.build(name, ValueType.STRING), 16);
+        }
+
+        @Override
+        protected void ensureCapacity(int capacity) {
+            if (capacity > codes.length) {
+                codes = Arrays.copyOf(codes, grow(codes.length, capacity));
+            }
+        }
+
+        private int encode(String string) {
+            return index.computeIfAbsent(string, str -> {
+                dictionary.add(Value.Companion.of(str));
+                return dictionary.size() - 1;
+            });
+        }
+
+        @Override
+        protected void append(Value value) {
+            codes[size] = encode(value.getString());
+        }
+
+        @Override
+        protected void appendDefault() {
+            codes[size] = 0;
+        }
+
+        public Builder add(String value) {
+            ensureCapacity(size + 1);
+            codes[size++] = encode(value);
+            return this;
+        }
+
+        @Override
+        public StringColumn build() {
+            return new StringColumn(format, dictionary.toArray(new Value[0]), Arrays.copyOf(codes, size), size, (BitSet) getNulls().clone());
+        }
+    }
+}
@@ -65,6 +65,29 @@ public interface ValuesAdapter extends Metoid, MetaMorph {
         return optComponent(values, component).map(Value::getDouble);
     }
 
+    /**
+     * Get a numeric component. Adapters could override this to avoid intermediate boxing.
+     *
+     * @param values
+     * @param component
+     * @return
+     */
+    default double getDouble(Values values, String component) {
+        return getComponent(values, component).getDouble();
+    }
+
+    /**
+     * Get a numeric component or default if it is not present
+     *
+     * @param values
+     * @param component
+     * @param def
+     * @return
+     */
+    default double getDouble(Values values, String component, double def) {
+        return optComponent(values, component).map(Value::getDouble).orElse(def);
+    }
+
     /**
      * List all components declared in this adapter.
      *
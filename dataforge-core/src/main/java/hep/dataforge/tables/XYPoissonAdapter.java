@@ -52,6 +52,24 @@ public class XYPoissonAdapter extends BasicAdapter {
         }
     }
 
+    @Override
+    public double getDouble(Values values, String component) {
+        if (Objects.equals(component, Adapters.Y_ERROR_KEY)) {
+            return getComponent(values, component).getDouble();
+        } else {
+            return super.getDouble(values, component);
+        }
+    }
+
+    @Override
+    public double getDouble(Values values, String component, double def) {
+        if (Objects.equals(component, Adapters.Y_ERROR_KEY)) {
+            return optComponent(values, component).map(Value::getDouble).orElse(def);
+        } else {
+            return super.getDouble(values, component, def);
+        }
+    }
+
     @Override
     public Stream<String> listComponents() {
         return Stream.concat(super.listComponents(), Stream.of(Adapters.Y_ERROR_KEY)).distinct();
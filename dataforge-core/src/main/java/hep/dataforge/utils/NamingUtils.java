@@ -17,6 +17,7 @@ package hep.dataforge.utils;
 
 import hep.dataforge.exceptions.NamingException;
 import java.util.function.Predicate;
+import java.util.regex.Pattern;
 
 /**
  * TODO сменить название
@@ -113,6 +114,32 @@ public class NamingUtils {
         return str.matches(mask.replace("?", ".?").replace("*", ".*?"));
     }
 
+    /**
+     * Compile a glob mask for full names. Unlike {@link #wildcardMatch(String, String)}, all characters except
+     * wildcards are matched literally, so dots in the mask match only name separators.
+     *
+     * @param mask a mask with `*` for any sequence of characters and `?` for an optional single character
+     * @return compiled pattern
+     */
+    public static Pattern wildcardPattern(String mask) {
+        StringBuilder pattern = new StringBuilder();
+        int start = 0;
+        for (int i = 0; i < mask.length(); i++) {
+            char c = mask.charAt(i);
+            if (c == '*' || c == '?') {
+                if (i > start) {
+                    pattern.append(Pattern.quote(mask.substring(start, i)));
+                }
+                pattern.append(c == '*' ? ".*?" : ".?");
+                start = i + 1;
+            }
+        }
+        if (start < mask.length()) {
+            pattern.append(Pattern.quote(mask.substring(start)));
+        }
+        return Pattern.compile(pattern.toString());
+    }
+
     public static Predicate<String> wildcardMatchCondition(String mask) {
         String pattern = mask.replace("?", ".?").replace("*", ".*?");
         return str -> str.matches(pattern);
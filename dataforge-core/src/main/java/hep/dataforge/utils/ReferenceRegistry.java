@@ -7,37 +7,98 @@ package hep.dataforge.utils;
 
 import org.jetbrains.annotations.NotNull;
 
-import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.util.*;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
-import java.util.stream.Collectors;
 
 /**
  * A registry of listener references. References could be weak to allow GC to
  * finalize referenced objects.
+ * <p>
+ * Entries are kept in a linked list in the order of addition with a hash index on the referenced objects, so add and
+ * remove take constant time. Modifications are serialized on a short critical section, while iteration never locks
+ * and does not copy the registry. Iteration is weakly consistent: it does not fail on concurrent modification and
+ * could miss entries added after it started. Entries for collected objects are removed using a reference queue on
+ * the next modification. An object is registered only once, repeated additions only could make the reference strong.
+ * </p>
  *
  * @author Alexander Nozik
  */
 public class ReferenceRegistry<T> extends AbstractCollection<T> {
 
-    private final Set<Reference<T>> weakRegistry = new CopyOnWriteArraySet<>();
+    private static final class Node<T> extends WeakReference<T> {
+        private final int hash;
+        /**
+         * Strong reference to keep the object alive if needed
+         */
+        private T strong;
+        private volatile Node<T> next;
+        private Node<T> prev;
+        private volatile boolean removed;
+
+        private Node(T referent, ReferenceQueue<? super T> queue) {
+            super(referent, queue);
+            this.hash = referent == null ? 0 : referent.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        /**
+         * Nodes are equal if they reference equal objects. Nodes of collected objects are equal only to themselves.
+         */
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Node)) {
+                return false;
+            }
+            T value = get();
+            Object other = ((Node<?>) obj).get();
+            return value != null && other != null && (value == other || value.equals(other));
+        }
+    }
+
+    private final ReferenceQueue<T> queue = new ReferenceQueue<>();
+
     /**
-     * Used only to store strongreferences
+     * The list sentinel, never removed
      */
-    private final Set<T> strongRegistry = new CopyOnWriteArraySet<>();
+    private final Node<T> head = new Node<>(null, null);
+
+    //guarded by this
+    private Node<T> tail = head;
+    private final Map<Node<T>, Node<T>> index = new HashMap<>();
 
     /**
      * Listeners could be added either as strong references or weak references. Thread safe
      *
      * @param obj
      */
-    public boolean add(T obj, boolean isStrong) {
+    public synchronized boolean add(T obj, boolean isStrong) {
+        expunge();
+        Node<T> existing = index.get(new Node<>(obj, null));
+        if (existing != null) {
+            if (isStrong) {
+                existing.strong = obj;
+            }
+            return false;
+        }
+        Node<T> node = new Node<>(obj, queue);
         if (isStrong) {
-            strongRegistry.add(obj);
+            node.strong = obj;
         }
-        return weakRegistry.add(new WeakReference<>(obj));
+        node.prev = tail;
+        tail.next = node;
+        tail = node;
+        index.put(node, node);
+        return true;
     }
 
     /**
@@ -51,54 +112,162 @@ public class ReferenceRegistry<T> extends AbstractCollection<T> {
     }
 
     @Override
-    public boolean remove(Object obj) {
-        strongRegistry.remove(obj);
-        Reference<T> reference = weakRegistry.stream().filter(it -> obj.equals(it.get())).findFirst().orElse(null);
-        return reference != null && weakRegistry.remove(reference);
+    @SuppressWarnings("unchecked")
+    public synchronized boolean remove(Object obj) {
+        expunge();
+        Node<T> node = index.remove(new Node<>((T) obj, null));
+        if (node == null) {
+            return false;
+        }
+        unlink(node);
+        return true;
+    }
+
+    /**
+     * Remove node from the list. The link to the next node is kept, so iterators standing on this node could continue.
+     */
+    private void unlink(Node<T> node) {
+        node.removed = true;
+        node.strong = null;
+        node.prev.next = node.next;
+        if (node.next == null) {
+            tail = node.prev;
+        } else {
+            node.next.prev = node.prev;
+        }
+    }
+
+    /**
+     * Remove entries for objects collected by GC
+     */
+    @SuppressWarnings("unchecked")
+    private void expunge() {
+        Node<T> node;
+        while ((node = (Node<T>) queue.poll()) != null) {
+            if (!node.removed) {
+                index.remove(node);
+                unlink(node);
+            }
+        }
     }
 
     @Override
-    public boolean removeIf(Predicate<? super T> filter) {
-        return strongRegistry.removeIf(filter) && weakRegistry.removeIf(it -> filter.test(it.get()));
+    public synchronized boolean removeIf(Predicate<? super T> filter) {
+        expunge();
+        boolean res = false;
+        for (Node<T> node = head.next; node != null; node = node.next) {
+            T value = node.get();
+            if (value != null && filter.test(value)) {
+                index.remove(node);
+                unlink(node);
+                res = true;
+            }
+        }
+        return res;
     }
 
     @Override
-    public void clear() {
-        strongRegistry.clear();
-        weakRegistry.clear();
+    public synchronized void clear() {
+        for (Node<T> node = head.next; node != null; node = node.next) {
+            node.removed = true;
+            node.strong = null;
+        }
+        head.next = null;
+        tail = head;
+        index.clear();
     }
 
     /**
-     * Clean up all null entries from weak registry
+     * Next live node after given one
      */
-    private void cleanUp() {
-        weakRegistry.removeIf(ref -> ref.get() == null);
+    private static <T> Node<T> nextNode(Node<T> node) {
+        Node<T> next = node.next;
+        while (next != null && (next.removed || next.get() == null)) {
+            next = next.next;
+        }
+        return next;
     }
 
     @NotNull
     @Override
     public Iterator<T> iterator() {
-//        cleanUp();
-        return weakRegistry.stream().map(Reference::get).filter(Objects::nonNull).iterator();
+        return new Iterator<T>() {
+            private Node<T> current = head;
+            private T nextValue = advance();
+
+            private T advance() {
+                while (true) {
+                    current = nextNode(current);
+                    if (current == null) {
+                        return null;
+                    }
+                    T value = current.get();
+                    if (value != null) {
+                        return value;
+                    }
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return nextValue != null;
+            }
+
+            @Override
+            public T next() {
+                if (nextValue == null) {
+                    throw new NoSuchElementException();
+                }
+                T res = nextValue;
+                nextValue = advance();
+                return res;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("Use ReferenceRegistry.remove instead");
+            }
+        };
     }
 
+    /**
+     * Iterate over registered objects without creating an iterator
+     *
+     * @param action
+     */
+    @Override
+    public void forEach(Consumer<? super T> action) {
+        for (Node<T> node = nextNode(head); node != null; node = nextNode(node)) {
+            T value = node.get();
+            if (value != null) {
+                action.accept(value);
+            }
+        }
+    }
 
     @Override
-    public int size() {
-        return weakRegistry.size();
+    public synchronized int size() {
+        expunge();
+        return index.size();
     }
 
     public Optional<T> findFirst(Predicate<T> predicate) {
-        return this.weakRegistry.stream()
-                .map(Reference::get)
-                .filter((t) -> t != null && predicate.test(t))
-                .findFirst();
+        for (Node<T> node = nextNode(head); node != null; node = nextNode(node)) {
+            T value = node.get();
+            if (value != null && predicate.test(value)) {
+                return Optional.of(value);
+            }
+        }
+        return Optional.empty();
     }
 
     public List<T> findAll(Predicate<T> predicate) {
-        return this.weakRegistry.stream()
-                .map(Reference::get)
-                .filter((t) -> t != null && predicate.test(t))
-                .collect(Collectors.toList());
+        List<T> res = new ArrayList<>();
+        forEach(value -> {
+            if (predicate.test(value)) {
+                res.add(value);
+            }
+        });
+        return res;
     }
 }
@@ -28,6 +28,7 @@ import hep.dataforge.context.PluginFactory
 import hep.dataforge.data.Data
 import hep.dataforge.data.DataNode
 import hep.dataforge.data.DataTree
+import hep.dataforge.data.NamedData
 import hep.dataforge.goals.Goal
 import hep.dataforge.goals.GoalListener
 import hep.dataforge.meta.Meta
@@ -75,9 +76,17 @@ class CachePlugin(meta: Meta) : BasicPlugin(meta) {
             return data
         } else {
             val cache = getCache(cacheName, data.type)
+            val digest = id.digest
             val cachedGoal = object : Goal<V> {
                 private val result = CompletableFuture<V>()
 
+                /**
+                 * The result is identified by the cache key
+                 */
+                override fun getDigest(): String {
+                    return digest
+                }
+
                 override fun dependencies(): Stream<Goal<*>> {
                     return if (cache.containsKey(id)) {
                         Stream.empty()
@@ -88,25 +97,24 @@ class CachePlugin(meta: Meta) : BasicPlugin(meta) {
 
                 override fun run() {
                     //TODO add executor
-                    synchronized(cache) {
-                        when {
-                            data.goal.isDone -> data.future.thenAccept { result.complete(it) }
-                            cache.containsKey(id) -> {
-                                logger.info("Cached result found. Restoring data from cache for id {}", id.hashCode())
-                                CompletableFuture.supplyAsync { cache.get(id) }.whenComplete { res, err ->
-                                    if (res != null) {
-                                        result.complete(res)
-                                    } else {
-                                        evalData()
-                                    }
-
-                                    if (err != null) {
-                                        logger.error("Failed to load data from cache", err)
-                                    }
+                    when {
+                        data.goal.isDone -> data.future.thenAccept { result.complete(it) }
+                        cache.containsKey(id) -> {
+                            logger.info("Cached result found. Restoring data from cache for id {}", id.hashCode())
+                            // the cache is thread safe, loading does not block other goals
+                            CompletableFuture.supplyAsync { cache.get(id) }.whenComplete { res, err ->
+                                if (res != null) {
+                                    result.complete(res)
+                                } else {
+                                    evalData()
+                                }
+
+                                if (err != null) {
+                                    logger.error("Failed to load data from cache", err)
                                 }
                             }
-                            else -> evalData()
                         }
+                        else -> evalData()
                     }
                 }
 
@@ -160,6 +168,25 @@ class CachePlugin(meta: Meta) : BasicPlugin(meta) {
         return builder.build()
     }
 
+    /**
+     * Cache all data in the node using individual key for each data. The node structure is flattened, node meta is
+     * preserved in data meta.
+     *
+     * @param cacheName
+     * @param node
+     * @param idFactory the key for the data with full name. Data with null key is not cached.
+     */
+    fun <V : Any> cacheNode(cacheName: String, node: DataNode<V>, idFactory: (NamedData<out V>) -> Meta?): DataNode<V> {
+        return DataTree.edit(node.type).also {
+            it.name = node.name
+            it.meta = node.meta
+            node.dataStream(true).forEach { datum ->
+                val id = idFactory(datum)
+                it.putData(datum.name, if (id == null) datum.anonymize() else cache(cacheName, id, datum.anonymize()))
+            }
+        }.build()
+    }
+
     private fun <V> getCache(name: String, type: Class<V>): Cache<Meta, V> {
         return manager.getCache(name, Meta::class.java, type)
                 ?: manager.createCache(name, MetaCacheConfiguration(meta, type))
@@ -175,6 +202,12 @@ class CachePlugin(meta: Meta) : BasicPlugin(meta) {
     //        super.applyConfig(config);
     //    }
 
+    /**
+     * Cache hit, miss and eviction statistics. Empty if the cache manager is not the default one.
+     */
+    val statistics: Meta
+        get() = (manager as? DefaultCacheManager)?.getStatistics() ?: Meta.empty()
+
     fun invalidate(cacheName: String) {
         manager.destroyCache(cacheName)
     }
@@ -20,17 +20,24 @@ import hep.dataforge.Named
 import hep.dataforge.context.Context
 import hep.dataforge.context.ContextAware
 import hep.dataforge.io.envelopes.*
-import hep.dataforge.kodex.nullable
+import hep.dataforge.kodex.buildMeta
+import hep.dataforge.kodex.toList
 import hep.dataforge.meta.Meta
+import hep.dataforge.meta.MetaBuilder
 import hep.dataforge.meta.MetaHolder
 import hep.dataforge.meta.MetaMorph
-import hep.dataforge.utils.Misc
-import java.io.*
+import java.io.ByteArrayOutputStream
+import java.io.IOException
+import java.io.ObjectInputStream
+import java.io.ObjectOutputStream
+import java.io.Serializable
 import java.nio.file.Files
 import java.nio.file.Path
-import java.nio.file.StandardOpenOption.CREATE
+import java.nio.file.StandardCopyOption
 import java.nio.file.StandardOpenOption.WRITE
-import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.locks.ReentrantLock
 import javax.cache.Cache
 import javax.cache.configuration.CacheEntryListenerConfiguration
 import javax.cache.configuration.Configuration
@@ -40,7 +47,21 @@ import javax.cache.processor.EntryProcessorException
 import javax.cache.processor.EntryProcessorResult
 
 /**
- * Default implementation for jCache caching
+ * Default implementation for jCache caching. The cache has two tiers:
+ *
+ * * The memory tier is a concurrent map limited by the number of entries (`softCache.size`) and by the estimated size
+ * of values in bytes (`softCache.bytes`). Least recently used entries are evicted when the limits are exceeded.
+ * * The disk tier stores serializable values in files of the cache directory. Values are written in background after
+ * they are put into memory. The total size of files is limited by `fileCache.bytes` and files are evicted using either
+ * `LRU` or `LFU` policy defined by `fileCache.eviction`. The list of files with keys and access statistics is kept in
+ * a manifest, so the startup does not need to open cached files. The manifest is saved when scheduled writes are
+ * done, but at least every 10 seconds under continuous writing, and on [flush] or [close].
+ *
+ * Entries are identified by the digest of the key meta rather than by the meta itself, since meta equality is only
+ * approximate for numbers.
+ *
+ * Cache hits, misses and evictions are counted in [statistics].
+ *
  * Created by darksnake on 10-Feb-17.
  */
 class DefaultCache<K, V>(
@@ -49,11 +70,71 @@ class DefaultCache<K, V>(
         private val keyType: Class<K>,
         private val valueType: Class<V>) : MetaHolder(manager.meta), Cache<K, V>, ContextAware {
 
-    private val softCache: MutableMap<K, V> by lazy {
-        Misc.getLRUCache<K, V>(meta.getInt("softCache.size", 500))
+    private class MemoryEntry<K, V>(val key: K, val value: V, @Volatile var size: Long) {
+        @Volatile
+        var lastAccess: Long = System.nanoTime()
+    }
+
+    private class DiskEntry(val file: Path, val size: Long, @Volatile var lastAccess: Long, hits: Long) {
+        val hits = AtomicLong(hits)
+    }
+
+    /**
+     * Cache hit, miss and eviction counters
+     */
+    class Statistics {
+        val hits = AtomicLong()
+        val diskHits = AtomicLong()
+        val misses = AtomicLong()
+        val puts = AtomicLong()
+        val evictions = AtomicLong()
+        val diskWrites = AtomicLong()
+        val diskEvictions = AtomicLong()
+
+        fun toMeta(): Meta {
+            return buildMeta("statistics") {
+                "hits" to hits.get()
+                "diskHits" to diskHits.get()
+                "misses" to misses.get()
+                "puts" to puts.get()
+                "evictions" to evictions.get()
+                "diskWrites" to diskWrites.get()
+                "diskEvictions" to diskEvictions.get()
+            }
+        }
     }
 
-    private val hardCache = HashMap<Meta, Path>()
+    val statistics = Statistics()
+
+    override val context: Context = manager.context
+
+    private val softCache = ConcurrentHashMap<String, MemoryEntry<K, V>>()
+    private val softCacheSize = AtomicLong()
+    private val softCacheLimit = meta.getInt("softCache.size", 500)
+    private val softCacheBytes = meta.getDouble("softCache.bytes", 64.0 * 1024 * 1024).toLong()
+    private val evictionLock = ReentrantLock()
+
+    private val hardCache = ConcurrentHashMap<String, DiskEntry>()
+    private val hardCacheSize = AtomicLong()
+    private val hardCacheBytes = meta.getDouble("fileCache.bytes", 1024.0 * 1024 * 1024).toLong()
+    private val useLFU = meta.getString("fileCache.eviction", "LRU").equals("LFU", ignoreCase = true)
+
+    /**
+     * Values scheduled for writing to disk
+     */
+    private val pending = ConcurrentHashMap<String, V>()
+    private val writeExecutor by lazy { context.executors.getExecutor(WRITE_EXECUTOR_META) }
+    private val manifestLock = Any()
+    @Volatile
+    private var manifestDirty = false
+    @Volatile
+    private var manifestSaved = System.currentTimeMillis()
+
+    /**
+     * Incremented on each [clear], so writes scheduled before clearing do not restore cleared entries
+     */
+    private val generation = AtomicLong()
+
     private val cacheDir: Path = manager.rootCacheDir.resolve(name)
         get() {
             Files.createDirectories(field)
@@ -61,74 +142,248 @@ class DefaultCache<K, V>(
         }
 
     init {
-        scanDirectory()
+        if (hardCacheEnabled()) {
+            if (!loadManifest()) {
+                scanDirectory()
+            }
+        }
     }
 
-    //    private Envelope read(Path file) {
-    //        return reader.read(file);
-    //    }
+    private val manifestFile: Path
+        get() = cacheDir.resolve(MANIFEST_FILE)
 
-    @Synchronized
-    private fun scanDirectory() {
-        if (hardCacheEnabled()) {
+    /**
+     * Restore the disk tier from the manifest. Return false if the manifest is missing or corrupted
+     */
+    private fun loadManifest(): Boolean {
+        val file = manifestFile
+        if (!Files.exists(file)) {
+            return false
+        }
+        return try {
+            val manifest = reader.read(file).meta
+            manifest.getMetaList("entry").forEach { entry ->
+                val path = cacheDir.resolve(entry.getString("file"))
+                if (Files.exists(path)) {
+                    val size = entry.getDouble("size").toLong()
+                    hardCache[entry.getString("digest")] = DiskEntry(path, size, entry.getDouble("lastAccess").toLong(), entry.getDouble("hits").toLong())
+                    hardCacheSize.addAndGet(size)
+                }
+            }
+            // files written after the last manifest update
+            val known = hardCache.values.map { it.file.fileName.toString() }.toSet()
+            listCacheFiles().filter { !known.contains(it.fileName.toString()) }.forEach { readCacheFile(it) }
+            true
+        } catch (ex: Exception) {
+            logger.warn("Failed to read cache manifest {}. Rescanning cache directory.", file)
             hardCache.clear()
+            hardCacheSize.set(0)
+            false
+        }
+    }
+
+    private fun listCacheFiles(): List<Path> {
+        return Files.list(cacheDir).use { stream ->
+            stream.filter { it.fileName.toString().endsWith(".df") && it.fileName.toString() != MANIFEST_FILE }.toList()
+        }
+    }
+
+    private fun readCacheFile(file: Path) {
+        try {
+            // only meta is read here, data is mapped lazily and meta in compact format is decoded on demand
+            val envelope = reader.read(file)
+            val size = Files.size(file)
+            hardCache[envelope.meta.sealed.digest] = DiskEntry(file, size, Files.getLastModifiedTime(file).toMillis(), 0)
+            hardCacheSize.addAndGet(size)
+            manifestDirty = true
+        } catch (e: Exception) {
+            logger.error("Failed to read cache file {}. Deleting corrupted file.", file.toString())
+            file.toFile().delete()
+        }
+    }
+
+    private fun scanDirectory() {
+        hardCache.clear()
+        hardCacheSize.set(0)
+        try {
+            listCacheFiles().forEach { readCacheFile(it) }
+        } catch (e: IOException) {
+            throw RuntimeException("Can't list contents of" + cacheDir.toString())
+        }
+        saveManifest()
+    }
+
+    /**
+     * Write the manifest if it was changed
+     */
+    private fun saveManifest() {
+        synchronized(manifestLock) {
+            if (!manifestDirty) {
+                return
+            }
+            manifestDirty = false
+            manifestSaved = System.currentTimeMillis()
+            val manifest = MetaBuilder("manifest")
+            hardCache.forEach { digest, entry ->
+                manifest.putNode(MetaBuilder("entry")
+                        .setValue("file", entry.file.fileName.toString())
+                        .setValue("size", entry.size)
+                        .setValue("lastAccess", entry.lastAccess)
+                        .setValue("hits", entry.hits.get())
+                        .setValue("digest", digest))
+            }
             try {
-                Files.list(cacheDir).filter { it -> it.endsWith("df") }.forEach { file ->
-                    try {
-                        val envelope = reader.read(file)
-                        hardCache[envelope.meta] = file
-                    } catch (e: Exception) {
-                        logger.error("Failed to read cache file {}. Deleting corrupted file.", file.toString())
-                        file.toFile().delete()
-                    }
+                val temp = Files.createTempFile(cacheDir, "manifest", ".tmp")
+                Files.newOutputStream(temp, WRITE).use {
+                    writer.write(it, EnvelopeBuilder().setMeta(manifest).build())
                 }
-            } catch (e: IOException) {
-                throw RuntimeException("Can't list contents of" + cacheDir.toString())
+                Files.move(temp, manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+            } catch (ex: IOException) {
+                logger.error("Failed to write cache manifest", ex)
             }
-
         }
     }
 
+    /**
+     * Sealed meta identity of the key. Sealed nodes cache their hash and digest
+     */
     private fun getID(key: K): Meta {
         return when (key) {
-            is Meta -> key
-            is MetaMorph -> key.toMeta()
+            is Meta -> key.sealed
+            is MetaMorph -> key.toMeta().sealed
             else -> throw RuntimeException("Can't convert the cache key to meta")
         }
     }
 
-    override fun get(key: K): V? {
-        val id: Meta = getID(key)
+    /**
+     * Estimate memory footprint of the value before its serialized size is known
+     */
+    private fun estimateSize(value: Any?): Long {
+        return when (value) {
+            null -> 16
+            is ByteArray -> value.size.toLong() + 16
+            is CharSequence -> 2L * value.length + 40
+            is Number, is Boolean -> 16
+            is Collection<*> -> 16L * value.size + 32
+            else -> DEFAULT_VALUE_SIZE
+        }
+    }
 
-        return softCache[key] ?: getFromHardCache(id).map<V> { cacheFile ->
-            try {
-                ObjectInputStream(reader.read(cacheFile).data.stream).use { ois ->
-                    (valueType.cast(ois.readObject())).also {
-                        softCache[key] = it
-                    }
+    private fun putInMemory(digest: String, key: K, value: V, size: Long) {
+        softCache.put(digest, MemoryEntry(key, value, size))?.let { softCacheSize.addAndGet(-it.size) }
+        softCacheSize.addAndGet(size)
+        if (softCache.size > softCacheLimit || softCacheSize.get() > softCacheBytes) {
+            evictMemory()
+        }
+    }
+
+    /**
+     * Evict least recently used entries until both limits are satisfied with some margin
+     */
+    private fun evictMemory() {
+        if (!evictionLock.tryLock()) {
+            return
+        }
+        try {
+            val targetCount = softCacheLimit * 9 / 10
+            val targetBytes = softCacheBytes * 9 / 10
+            if (softCache.size <= targetCount && softCacheSize.get() <= targetBytes) {
+                return
+            }
+            val entries = softCache.entries.sortedBy { it.value.lastAccess }
+            for (entry in entries) {
+                if (softCache.size <= targetCount && softCacheSize.get() <= targetBytes) {
+                    break
+                }
+                if (softCache.remove(entry.key, entry.value)) {
+                    softCacheSize.addAndGet(-entry.value.size)
+                    statistics.evictions.incrementAndGet()
                 }
-            } catch (ex: Exception) {
-                logger.error("Failed to read cached object with id '{}' from file with message: {}. Deleting corrupted file.", id.toString(), ex.message)
-                hardCache.remove(id)
-                cacheFile.toFile().delete()
-                null
             }
-        }.nullable
+        } finally {
+            evictionLock.unlock()
+        }
     }
 
+    private fun evictDisk() {
+        if (hardCacheSize.get() <= hardCacheBytes) {
+            return
+        }
+        synchronized(manifestLock) {
+            val target = hardCacheBytes * 9 / 10
+            val entries = if (useLFU) {
+                hardCache.entries.sortedWith(compareBy({ it.value.hits.get() }, { it.value.lastAccess }))
+            } else {
+                hardCache.entries.sortedBy { it.value.lastAccess }
+            }
+            for (entry in entries) {
+                if (hardCacheSize.get() <= target) {
+                    break
+                }
+                if (hardCache.remove(entry.key, entry.value)) {
+                    hardCacheSize.addAndGet(-entry.value.size)
+                    statistics.diskEvictions.incrementAndGet()
+                    Files.deleteIfExists(entry.value.file)
+                }
+            }
+            manifestDirty = true
+        }
+    }
 
-    override fun getAll(keys: Set<K>): Map<K, V>? {
+    private fun readFromDisk(digest: String, entry: DiskEntry): V? {
+        return try {
+            ObjectInputStream(reader.read(entry.file).data.stream).use { ois ->
+                valueType.cast(ois.readObject())
+            }
+        } catch (ex: Exception) {
+            if (hardCache[digest] !== entry) {
+                // the file was evicted or replaced while it was read
+                return null
+            }
+            logger.error("Failed to read cached object with digest '{}' from file with message: {}. Deleting corrupted file.", digest, ex.message)
+            if (hardCache.remove(digest, entry)) {
+                hardCacheSize.addAndGet(-entry.size)
+                manifestDirty = true
+            }
+            entry.file.toFile().delete()
+            null
+        }
+    }
+
+    override fun get(key: K): V? {
+        val digest = getID(key).digest
+        softCache[digest]?.let {
+            it.lastAccess = System.nanoTime()
+            statistics.hits.incrementAndGet()
+            return it.value
+        }
+        pending[digest]?.let {
+            statistics.hits.incrementAndGet()
+            return it
+        }
+        val entry = hardCache[digest]
+        if (entry != null) {
+            val value = readFromDisk(digest, entry)
+            if (value != null) {
+                entry.lastAccess = System.currentTimeMillis()
+                entry.hits.incrementAndGet()
+                manifestDirty = true
+                statistics.diskHits.incrementAndGet()
+                putInMemory(digest, key, value, entry.size)
+                return value
+            }
+        }
+        statistics.misses.incrementAndGet()
         return null
     }
 
-    override fun containsKey(key: K): Boolean {
-        val id: Meta = getID(key)
-        return softCache.containsKey(key) || getFromHardCache(id).isPresent
+    override fun getAll(keys: Set<K>): Map<K, V>? {
+        return null
     }
 
-    private fun getFromHardCache(id: Meta): Optional<Path> {
-        //work around for meta numeric hashcode inequality
-        return hardCache.entries.stream().filter { entry -> entry.key == id }.findFirst().map { it.value }
+    override fun containsKey(key: K): Boolean {
+        val digest = getID(key).digest
+        return softCache.containsKey(digest) || pending.containsKey(digest) || hardCache.containsKey(digest)
     }
 
     override fun loadAll(keys: Set<K>, replaceExistingValues: Boolean, completionListener: CompletionListener) {
@@ -139,33 +394,83 @@ class DefaultCache<K, V>(
         return meta.getBoolean("fileCache.enabled", true)
     }
 
-    @Synchronized
+    /**
+     * Put the value in memory and schedule writing it to disk. The value is available from memory (or from the
+     * pending queue if it was evicted) until the file is written.
+     */
     override fun put(key: K, data: V) {
         val id: Meta = getID(key)
-        softCache[key] = data
+        val digest = id.digest
+        statistics.puts.incrementAndGet()
+        putInMemory(digest, key, data, estimateSize(data))
         if (hardCacheEnabled() && data is Serializable) {
-            var fileName = data.javaClass.simpleName
+            pending[digest] = data
+            val gen = generation.get()
+            writeExecutor.execute { write(id, digest, data, gen) }
+        }
+    }
+
+    private fun write(id: Meta, digest: String, data: V, gen: Long) {
+        try {
+            if (pending[digest] !== data) {
+                // the value was replaced or the cache was cleared
+                return
+            }
+            var fileName = (data as Any).javaClass.simpleName
             if (data is Named) {
                 fileName += "[" + (data as Named).name + "]"
             }
-            fileName += Integer.toUnsignedLong(id.hashCode()).toString() + ".df"
+            fileName += digest + ".df"
 
             val file = cacheDir.resolve(fileName)
 
-            try {
-                Files.newOutputStream(file, WRITE, CREATE).use { fos ->
-                    val baos = ByteArrayOutputStream()
-                    val oos = ObjectOutputStream(baos)
-                    oos.writeObject(data)
-                    val builder = EnvelopeBuilder().setMeta(id).setData(baos.toByteArray())
-                    baos.close()
-                    writer.write(fos, builder.build())
-                    hardCache.put(id, file)
+            val baos = ByteArrayOutputStream()
+            ObjectOutputStream(baos).use { it.writeObject(data) }
+            val temp = Files.createTempFile(cacheDir, "cache", ".tmp")
+            Files.newOutputStream(temp, WRITE).use { fos ->
+                writer.write(fos, EnvelopeBuilder().setMeta(id).setData(baos.toByteArray()).build())
+            }
+            synchronized(manifestLock) {
+                if (generation.get() != gen || pending[digest] !== data) {
+                    // the cache was cleared or the value replaced while the file was written
+                    Files.deleteIfExists(temp)
+                    return
+                }
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+                val size = Files.size(file)
+                hardCache.put(digest, DiskEntry(file, size, System.currentTimeMillis(), 0))?.let { hardCacheSize.addAndGet(-it.size) }
+                hardCacheSize.addAndGet(size)
+            }
+            statistics.diskWrites.incrementAndGet()
+
+            // update the weight of the memory entry with the serialized size
+            softCache[digest]?.let {
+                if (it.value === data) {
+                    softCacheSize.addAndGet(baos.size() - it.size)
+                    it.size = baos.size().toLong()
                 }
-            } catch (ex: IOException) {
-                logger.error("Failed to write data with id hashcode '{}' to file with message: {}", id.hashCode(), ex.message)
             }
+            manifestDirty = true
+            evictDisk()
+        } catch (ex: Exception) {
+            logger.error("Failed to write data with digest '{}' to file with message: {}", digest, ex.message)
+        } finally {
+            pending.remove(digest, data)
+        }
+        // the manifest is rewritten as a whole, so it is saved when the write queue is drained or periodically
+        if (pending.isEmpty() || System.currentTimeMillis() - manifestSaved > MANIFEST_SAVE_INTERVAL) {
+            saveManifest()
+        }
+    }
 
+    /**
+     * Wait for scheduled disk writes to complete
+     */
+    fun flush() {
+        if (hardCacheEnabled()) {
+            do {
+                writeExecutor.submit { saveManifest() }.get()
+            } while (pending.isNotEmpty())
         }
     }
 
@@ -216,7 +521,15 @@ class DefaultCache<K, V>(
 
     override fun clear() {
         //TODO add uninitialized check
-        softCache.clear()
+        synchronized(manifestLock) {
+            generation.incrementAndGet()
+            softCache.clear()
+            softCacheSize.set(0)
+            pending.clear()
+            hardCache.clear()
+            hardCacheSize.set(0)
+            manifestDirty = false
+        }
         try {
             if (hardCacheEnabled() && Files.exists(cacheDir)) {
                 cacheDir.toFile().deleteRecursively()
@@ -245,7 +558,7 @@ class DefaultCache<K, V>(
     }
 
     override fun close() {
-
+        flush()
     }
 
     override fun isClosed(): Boolean {
@@ -266,7 +579,7 @@ class DefaultCache<K, V>(
 
     override fun iterator(): MutableIterator<Cache.Entry<K, V>> {
         return softCache.entries.stream()
-                .map { entry -> DefaultEntry(entry.key) { entry.value } }
+                .map { entry -> DefaultEntry(entry.value.key) { entry.value.value } }
                 .iterator()
     }
 
@@ -275,8 +588,6 @@ class DefaultCache<K, V>(
         return clazz.cast(MetaCacheConfiguration(meta, valueType))
     }
 
-    override val context: Context = cacheManager.context
-
     private inner class DefaultEntry(private val key: K, private val supplier: () -> V) : Cache.Entry<K, V> {
 
         override fun getKey(): K {
@@ -293,8 +604,24 @@ class DefaultCache<K, V>(
     }
 
     companion object {
+        private const val MANIFEST_FILE = "manifest.df"
+
+        /**
+         * Maximum time in milliseconds between manifest updates under continuous writing
+         */
+        private const val MANIFEST_SAVE_INTERVAL = 10_000L
+
+        /**
+         * Default memory weight of values with unknown size
+         */
+        private const val DEFAULT_VALUE_SIZE = 1024L
+
+        /**
+         * Disk writes are done sequentially in a separate worker
+         */
+        private val WRITE_EXECUTOR_META = buildMeta { "workerName" to "cache"; "threads" to 1 }
 
         private val reader = DefaultEnvelopeReader()
-        private val writer = DefaultEnvelopeWriter(DefaultEnvelopeType.INSTANCE, xmlMetaType)
+        private val writer = DefaultEnvelopeWriter(DefaultEnvelopeType.INSTANCE, compactMetaType)
     }
 }
@@ -20,6 +20,7 @@ import hep.dataforge.context.Context
 import hep.dataforge.context.ContextAware
 import hep.dataforge.context.Global
 import hep.dataforge.meta.Meta
+import hep.dataforge.meta.MetaBuilder
 import hep.dataforge.meta.MetaHolder
 import java.net.URI
 import java.nio.file.Path
@@ -97,6 +98,15 @@ class DefaultCacheManager(override val context: Context, cfg: Meta) : MetaHolder
         map.clear()
     }
 
+    /**
+     * Hit, miss and eviction statistics of all caches
+     */
+    fun getStatistics(): Meta {
+        val builder = MetaBuilder("statistics")
+        map.forEach { name, cache -> builder.putNode(cache.statistics.toMeta().builder.setValue("name", name)) }
+        return builder
+    }
+
     override fun isClosed(): Boolean {
         return map.isEmpty()
     }
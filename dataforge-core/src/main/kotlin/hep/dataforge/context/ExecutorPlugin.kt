@@ -16,10 +16,14 @@
 
 package hep.dataforge.context
 
+import hep.dataforge.description.ValueDef
+import hep.dataforge.description.ValueDefs
 import hep.dataforge.meta.Meta
+import hep.dataforge.meta.MetaBuilder
+import hep.dataforge.values.ValueType
 import kotlinx.coroutines.experimental.asCoroutineDispatcher
-import java.util.concurrent.ExecutorService
-import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.*
+import java.util.concurrent.atomic.AtomicInteger
 import kotlin.coroutines.experimental.CoroutineContext
 
 /**
@@ -36,6 +40,12 @@ interface ExecutorPlugin : Plugin {
      */
     fun getExecutor(meta: Meta): ExecutorService
 
+    /**
+     * Executor for goals blocking on I/O. By default the same as [defaultExecutor]
+     */
+    val ioExecutor: ExecutorService
+        get() = defaultExecutor
+
     /**
      * A dispatcher for default coroutine thread pool
      */
@@ -43,8 +53,27 @@ interface ExecutorPlugin : Plugin {
         get() {
             return defaultExecutor.asCoroutineDispatcher()
         }
+
+    /**
+     * A dispatcher for blocking coroutines
+     */
+    val kIODispatcher: CoroutineContext
+        get() {
+            return ioExecutor.asCoroutineDispatcher()
+        }
 }
 
+/**
+ * Executor plugin with two kinds of executors: work-stealing `compute` pools sized to the number of processors and
+ * `io` executors for blocking goals. Io executor uses virtual threads if they are supported by the runtime and an
+ * elastic pool of daemon threads otherwise, so blocked goals do not starve compute work.
+ */
+@ValueDefs(
+        ValueDef(key = "type", allowed = arrayOf("compute", "io"), def = "compute", info = "The type of default executor"),
+        ValueDef(key = "threads", type = arrayOf(ValueType.NUMBER), info = "The number of threads. By default equals the number of processors for compute executor and 64 for io executor"),
+        ValueDef(key = "virtual", type = arrayOf(ValueType.BOOLEAN), def = "true", info = "Use virtual threads for io executor if available"),
+        ValueDef(key = "workerName", def = "worker", info = "The prefix for thread names")
+)
 @PluginDef(group = "hep.dataforge", name = "executor", support = true, info = "Executor plugin")
 class DefaultExecutorPlugin(meta: Meta = Meta.empty()) : BasicPlugin(meta), ExecutorPlugin {
     private val executors = HashMap<Meta, ExecutorService>();
@@ -57,23 +86,69 @@ class DefaultExecutorPlugin(meta: Meta = Meta.empty()) : BasicPlugin(meta), Exec
         getExecutor(meta)
     }
 
+    /**
+     * Io executor configured by `io` node of plugin meta
+     */
+    override val ioExecutor: ExecutorService by lazy {
+        logger.info("Initializing io executor in {}", context.name)
+        val ioMeta = MetaBuilder(meta.getMetaOrEmpty("io")).setValue("type", "io").apply {
+            if (!hasValue("workerName")) {
+                setValue("workerName", "io")
+            }
+        }
+        getExecutor(ioMeta)
+    }
+
     override fun getExecutor(meta: Meta): ExecutorService {
         synchronized(context) {
             return executors.getOrPut(meta) {
                 val workerName = meta.getString("workerName", "worker");
-                val threads = meta.getInt("threads", Runtime.getRuntime().availableProcessors())
-                val factory = { pool: ForkJoinPool ->
-                    ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool).apply {
-                        name = "${context.name}_$workerName-$poolIndex"
+                when (meta.getString("type", "compute")) {
+                    "compute" -> {
+                        val threads = meta.getInt("threads", Runtime.getRuntime().availableProcessors())
+                        val factory = { pool: ForkJoinPool ->
+                            ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool).apply {
+                                name = "${context.name}_$workerName-$poolIndex"
+                            }
+                        }
+                        ForkJoinPool(
+                                threads,
+                                factory, null, false)
                     }
+                    "io" -> {
+                        (if (meta.getBoolean("virtual", true)) virtualExecutor() else null) ?: elasticExecutor(workerName, meta.getInt("threads", 64))
+                    }
+                    else -> throw IllegalArgumentException("Unknown executor type: ${meta.getString("type")}")
                 }
-                ForkJoinPool(
-                        threads,
-                        factory, null, false)
             }
         }
     }
 
+    /**
+     * Executor starting a virtual thread per task. Null if virtual threads are not supported by the runtime.
+     */
+    private fun virtualExecutor(): ExecutorService? {
+        return try {
+            Executors::class.java.getMethod("newVirtualThreadPerTaskExecutor").invoke(null) as ExecutorService
+        } catch (ex: Exception) {
+            logger.debug("Virtual threads are not available, using elastic pool for io")
+            null
+        }
+    }
+
+    /**
+     * A pool of daemon threads which are created on demand up to given limit and released after a minute of idling
+     */
+    private fun elasticExecutor(workerName: String, threads: Int): ExecutorService {
+        val counter = AtomicInteger()
+        val factory = ThreadFactory { r ->
+            Thread(r, "${context.name}_$workerName-${counter.getAndIncrement()}").apply { isDaemon = true }
+        }
+        return ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, LinkedBlockingQueue(), factory).apply {
+            allowCoreThreadTimeOut(true)
+        }
+    }
+
     override fun detach() {
         executors.values.forEach { it.shutdown() }
         super.detach()
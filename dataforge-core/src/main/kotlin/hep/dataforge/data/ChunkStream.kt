@@ -0,0 +1,249 @@
+/*
+ * Copyright  2018 Alexander Nozik.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package hep.dataforge.data
+
+import hep.dataforge.context.Global
+import hep.dataforge.goals.StaticGoal
+import hep.dataforge.meta.Meta
+import java.lang.ref.WeakReference
+import java.util.Spliterator
+import java.util.Spliterators
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+import java.util.function.BiFunction
+import java.util.function.Function
+import java.util.function.Predicate
+import java.util.function.Supplier
+import java.util.stream.Stream
+import java.util.stream.StreamSupport
+
+/**
+ * A cold stream of data chunks (like blocks of table rows). Chunks are produced anew on each iteration and
+ * transformations are applied chunk by chunk during iteration, so the whole content is never held in memory.
+ *
+ * Iterators of buffered streams are [AutoCloseable]. An iterator which is not consumed to the end should be closed with
+ * [close] to stop its producer.
+ *
+ * @param type the type of a single chunk
+ * @param source the factory for chunk iterators. Called once per iteration.
+ */
+class ChunkStream<T>(val type: Class<T>, private val source: () -> Iterator<T>) : Iterable<T> {
+
+    override fun iterator(): Iterator<T> = source()
+
+    /**
+     * Lazily transform each chunk. Chunks transformed to null are dropped.
+     */
+    fun <R : Any> map(type: Class<R>, transform: Function<in T, out R?>): ChunkStream<R> {
+        return ChunkStream(type) {
+            val upstream = iterator()
+            DerivedIterator(upstream, upstream.asSequence().mapNotNull { transform.apply(it) }.iterator())
+        }
+    }
+
+    /**
+     * Lazily drop chunks which do not satisfy the predicate
+     */
+    fun filter(predicate: Predicate<in T>): ChunkStream<T> {
+        return ChunkStream(type) {
+            val upstream = iterator()
+            DerivedIterator(upstream, upstream.asSequence().filter { predicate.test(it) }.iterator())
+        }
+    }
+
+    /**
+     * Consume the stream chunk by chunk. The iterator is closed even if the operation fails.
+     */
+    fun <R> fold(initial: R, operation: BiFunction<R, in T, R>): R {
+        val iterator = iterator()
+        try {
+            var acc = initial
+            iterator.forEach { acc = operation.apply(acc, it) }
+            return acc
+        } finally {
+            close(iterator)
+        }
+    }
+
+    /**
+     * Produce chunks on the [executor] ahead of the consumer. The producer is blocked when [capacity] chunks
+     * are waiting to be consumed, so the memory consumption is bounded while upstream and downstream stages
+     * overlap in time. Exceptions in the producer are rethrown on the consumer side. The producer stops when the
+     * iterator is closed or garbage collected.
+     */
+    @JvmOverloads
+    fun buffered(capacity: Int, executor: ExecutorService = Global.executors.ioExecutor): ChunkStream<T> {
+        if (capacity <= 0) {
+            throw IllegalArgumentException("Buffer capacity must be positive")
+        }
+        return ChunkStream(type) { BufferedIterator(this, capacity, executor) }
+    }
+
+    /**
+     * A sequential stream of chunks. The stream should be closed if it is not consumed to the end.
+     */
+    fun stream(): Stream<T> {
+        val iterator = iterator()
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false)
+                .onClose { close(iterator) }
+    }
+
+    /**
+     * Wrap this stream into a data. The data itself is static, the chunks are computed on consumption.
+     */
+    @Suppress("UNCHECKED_CAST")
+    fun toData(meta: Meta = Meta.empty()): Data<ChunkStream<T>> {
+        return Data(ChunkStream::class.java as Class<ChunkStream<T>>, StaticGoal(this), meta)
+    }
+
+    /**
+     * Iterator transforming the upstream iterator. Closing is propagated to the upstream.
+     */
+    private class DerivedIterator<T>(private val upstream: Iterator<*>, iterator: Iterator<T>) : Iterator<T> by iterator, AutoCloseable {
+        override fun close() {
+            ChunkStream.close(upstream)
+        }
+    }
+
+    /**
+     * The queue shared by the producer and the consumer. The producer does not reference the consumer iterator, so
+     * an abandoned iterator could be collected.
+     */
+    private class Buffer(capacity: Int) {
+        val queue = ArrayBlockingQueue<Any>(capacity)
+        @Volatile
+        var cancelled = false
+
+        fun produce(iterator: Iterator<*>, abandoned: () -> Boolean) {
+            try {
+                val last = try {
+                    while (iterator.hasNext()) {
+                        if (!push(iterator.next() as Any, abandoned)) {
+                            return
+                        }
+                    }
+                    END
+                } catch (ex: InterruptedException) {
+                    return
+                } catch (ex: Throwable) {
+                    Failure(ex)
+                }
+                push(last, abandoned)
+            } catch (ex: InterruptedException) {
+                // cancelled by the consumer
+            } finally {
+                close(iterator)
+                if (cancelled) {
+                    queue.clear()
+                }
+            }
+        }
+
+        /**
+         * Wait for a free place in the queue. Return false if the consumer is closed or abandoned.
+         */
+        private fun push(element: Any, abandoned: () -> Boolean): Boolean {
+            while (!cancelled) {
+                if (queue.offer(element, WAIT_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    return true
+                } else if (abandoned()) {
+                    cancelled = true
+                }
+            }
+            return false
+        }
+    }
+
+    private class BufferedIterator<T>(upstream: Iterable<T>, capacity: Int, executor: ExecutorService) : Iterator<T>, AutoCloseable {
+        private val buffer = Buffer(capacity)
+        private val producer: Future<*>
+        private var next: Any? = null
+
+        init {
+            // the task references only the shared buffer
+            val shared = buffer
+            val owner = WeakReference(this)
+            producer = executor.submit { shared.produce(upstream.iterator()) { owner.get() == null } }
+        }
+
+        override fun hasNext(): Boolean {
+            while (next == null) {
+                if (buffer.cancelled) {
+                    return false
+                }
+                next = buffer.queue.poll(WAIT_TIMEOUT, TimeUnit.MILLISECONDS)
+                if (next == null && producer.isDone) {
+                    // the last element could be put just before the check
+                    next = buffer.queue.poll() ?: throw IllegalStateException("Chunk producer is terminated")
+                }
+            }
+            (next as? Failure)?.let { throw RuntimeException("Chunk producer failed", it.error) }
+            return next !== END
+        }
+
+        @Suppress("UNCHECKED_CAST")
+        override fun next(): T {
+            if (!hasNext()) {
+                throw NoSuchElementException()
+            }
+            return (next as T).also { next = null }
+        }
+
+        /**
+         * Stop the producer and release buffered chunks
+         */
+        override fun close() {
+            if (!buffer.cancelled) {
+                buffer.cancelled = true
+                producer.cancel(true)
+                buffer.queue.clear()
+                next = null
+            }
+        }
+    }
+
+    private class Failure(val error: Throwable)
+
+    companion object {
+        private val END = Any()
+
+        /**
+         * Time in milliseconds between checks of the cancellation while waiting for the buffer
+         */
+        private const val WAIT_TIMEOUT = 100L
+
+        /**
+         * Close the chunk iterator if it is closeable
+         */
+        @JvmStatic
+        fun close(iterator: Iterator<*>) {
+            (iterator as? AutoCloseable)?.close()
+        }
+
+        @JvmStatic
+        fun <T> of(type: Class<T>, chunks: Iterable<T>): ChunkStream<T> {
+            return ChunkStream(type) { chunks.iterator() }
+        }
+
+        @JvmStatic
+        fun <T> generate(type: Class<T>, source: Supplier<Iterator<T>>): ChunkStream<T> {
+            return ChunkStream(type) { source.get() }
+        }
+    }
+}
@@ -15,6 +15,7 @@
  */
 package hep.dataforge.data
 
+import hep.dataforge.context.Global
 import hep.dataforge.data.binary.Binary
 import hep.dataforge.goals.AbstractGoal
 import hep.dataforge.goals.GeneratorGoal
@@ -22,6 +23,7 @@ import hep.dataforge.goals.Goal
 import hep.dataforge.goals.StaticGoal
 import hep.dataforge.io.envelopes.Envelope
 import hep.dataforge.meta.Meta
+import hep.dataforge.meta.MetaBuilder
 import hep.dataforge.meta.Metoid
 import java.util.concurrent.CompletableFuture
 import java.util.concurrent.Executor
@@ -53,6 +55,18 @@ open class Data<T>(val type: Class<T>,
     val isValid: Boolean
         get() = !future.isCancelled && !future.isCompletedExceptionally
 
+    /**
+     * Content digest of the data combining the digest of the goal and the meta. Null if the digest of the goal is not
+     * known, since the meta alone does not identify the content.
+     */
+    val digest: String?
+        get() = goal.digest?.let {
+            MetaBuilder("data")
+                    .setValue("goal", it)
+                    .setValue("meta", meta.digest)
+                    .digest
+        }
+
     /**
      * Compute underlying goal and return sync result.
      *
@@ -101,7 +115,8 @@ open class Data<T>(val type: Class<T>,
         }
 
         /**
-         * Build data from envelope using given lazy binary transformation
+         * Build data from envelope using given lazy binary transformation. The transformation is performed on io
+         * executor by default.
          *
          * @param envelope
          * @param type
@@ -109,8 +124,8 @@ open class Data<T>(val type: Class<T>,
          * @param <T>
          * @return
         </T> */
-        fun <T> fromEnvelope(envelope: Envelope, type: Class<T>, transform: (Binary) -> T): Data<T> {
-            val goal = object : AbstractGoal<T>() {
+        fun <T> fromEnvelope(envelope: Envelope, type: Class<T>, executor: Executor = Global.executors.ioExecutor, transform: (Binary) -> T): Data<T> {
+            val goal = object : AbstractGoal<T>(executor) {
                 @Throws(Exception::class)
                 override fun compute(): T {
                     return transform(envelope.data)
@@ -12,8 +12,10 @@ import hep.dataforge.kodex.nullable
 import hep.dataforge.kodex.toList
 import hep.dataforge.meta.Meta
 import hep.dataforge.meta.Metoid
+import hep.dataforge.names.Name
 import hep.dataforge.providers.Provider
 import hep.dataforge.providers.Provides
+import hep.dataforge.utils.NamingUtils
 import java.util.concurrent.Executor
 import java.util.function.BiConsumer
 import java.util.function.Consumer
@@ -55,6 +57,16 @@ interface DataNode<T : Any> : Iterable<NamedData<out T>>, Named, Metoid, Provide
     @Provides(DATA_TARGET)
     fun optData(key: String): Data<out T>?
 
+    /**
+     * Get Data with already parsed name or null if name not present
+     *
+     * @param name
+     * @return
+     */
+    fun optData(name: Name): Data<out T>? {
+        return optData(name.toString())
+    }
+
     fun <R : Any> getCheckedData(dataName: String, type: Class<R>): Data<R> {
         val data = getData(dataName)
         return if (type.isAssignableFrom(data.type)) {
@@ -90,6 +102,10 @@ interface DataNode<T : Any> : Iterable<NamedData<out T>>, Named, Metoid, Provide
     @Provides(NODE_TARGET)
     fun optNode(nodeName: String): DataNode<out T>?
 
+    fun optNode(nodeName: Name): DataNode<out T>? {
+        return optNode(nodeName.toString())
+    }
+
     fun getNode(nodeName: String): DataNode<out T> {
         return optNode(nodeName) ?: throw NameNotFoundException(nodeName)
     }
@@ -124,6 +140,18 @@ interface DataNode<T : Any> : Iterable<NamedData<out T>>, Named, Metoid, Provide
         return dataStream(true)
     }
 
+    /**
+     * Recursively select data with full names matching the glob mask. `*` matches any sequence of characters
+     * including name separators and `?` matches an optional single character. Other characters are matched literally.
+     *
+     * @param mask
+     * @return
+     */
+    fun select(mask: String): Stream<NamedData<out T>> {
+        val pattern = NamingUtils.wildcardPattern(mask)
+        return dataStream(true).filter { pattern.matcher(it.name).matches() }
+    }
+
     /**
      * Iterate other all data pieces with given type with type check
      *
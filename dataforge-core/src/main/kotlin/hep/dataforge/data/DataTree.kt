@@ -5,10 +5,10 @@
  */
 package hep.dataforge.data
 
-import hep.dataforge.kodex.nullable
 import hep.dataforge.meta.Laminate
 import hep.dataforge.meta.Meta
 import hep.dataforge.names.Name
+import hep.dataforge.utils.NamingUtils
 import java.util.*
 import java.util.stream.Stream
 import kotlin.reflect.KClass
@@ -36,10 +36,25 @@ class DataTree<T: Any> constructor(
     private val dataMap: MutableMap<String, Data<T>> = HashMap()
 
 
+    /**
+     * Composed meta together with parent meta it was built from. Parent meta is cached the same way, so the cache is
+     * valid while the parent returns the same instance.
+     */
+    @Volatile
+    private var composedMeta: Pair<Meta?, Meta>? = null
+
     override val meta: Meta
-        get() = parent?.let {
-            Laminate(selfMeta, it.meta)
-        } ?: selfMeta
+        get() {
+            val parentMeta = parent?.meta
+            composedMeta?.let { (cachedParentMeta, res) ->
+                if (cachedParentMeta === parentMeta) {
+                    return res
+                }
+            }
+            return (parentMeta?.let { Laminate(selfMeta, it) } ?: selfMeta).also {
+                composedMeta = Pair(parentMeta, it)
+            }
+        }
 
     override val isEmpty: Boolean
         get() = dataMap.isEmpty() && nodeMap.isEmpty()
@@ -61,10 +76,51 @@ class DataTree<T: Any> constructor(
     }
 
     override fun optData(key: String): Data<out T>? {
-        return dataStream(true)
-                .filter { it -> it.name == key }
-                .findFirst()
-                .nullable
+        return optData(Name.of(key))
+    }
+
+    /**
+     * Find the data walking down the tree by name tokens. The result is the same as found in [dataStream]
+     */
+    override fun optData(name: Name): Data<out T>? {
+        if (name.isEmpty) {
+            return null
+        }
+        return findTree(name.cutLast()) { tree, meta ->
+            tree.dataMap[name.last.toString()]?.let { NamedData.wrap(name, it, meta) }
+        }
+    }
+
+    /**
+     * Walk down the tree by name tokens and apply transformation to the found tree and its meta as seen in
+     * [dataStream]. Return null if the tree is not found.
+     */
+    private inline fun <R> findTree(path: Name, transform: (DataTree<T>, Laminate) -> R?): R? {
+        var tree: DataTree<T> = this
+        var meta = Laminate(selfMeta)
+        path.tokens.forEach { token ->
+            tree = tree.nodeMap[token.toString()] ?: return null
+            meta = meta.withFirstLayer(tree.meta)
+        }
+        return transform(tree, meta)
+    }
+
+    /**
+     * Select data using the tree structure. Only the subtree defined by the part of the mask before the first
+     * wildcard is scanned, masks without wildcards are resolved as a single lookup.
+     */
+    override fun select(mask: String): Stream<NamedData<out T>> {
+        val wildcard = mask.indexOfFirst { it == '*' || it == '?' }
+        if (wildcard < 0) {
+            return optData(Name.of(mask))?.let { Stream.of(it as NamedData<out T>) } ?: Stream.empty()
+        }
+        val prefix = mask.substring(0, wildcard).substringBeforeLast('.', "")
+        val prefixName = if (prefix.isEmpty()) Name.EMPTY else Name.of(prefix)
+        val pattern = NamingUtils.wildcardPattern(mask)
+        return findTree(prefixName) { tree, meta ->
+            tree.dataStream(if (prefixName.isEmpty) null else prefixName, meta, true)
+                    .filter { pattern.matcher(it.name).matches() }
+        } ?: Stream.empty()
     }
 
     override fun nodeStream(recursive: Boolean): Stream<DataNode<out T>> {
@@ -119,6 +175,10 @@ class DataTree<T: Any> constructor(
         return getNode(Name.of(nodeName))
     }
 
+    override fun optNode(nodeName: Name): DataNode<out T>? {
+        return getNode(nodeName)
+    }
+
     private fun getNode(nodeName: Name): DataTree<T>? {
         val child = nodeName.first.toString()
         return if (nodeName.length == 1) {
@@ -150,6 +210,7 @@ class DataTree<T: Any> constructor(
             get() = this@DataTree.selfMeta
             set(value) {
                 this@DataTree.selfMeta = value
+                composedMeta = null
             }
 
 
@@ -5,6 +5,7 @@
  */
 package hep.dataforge.data.binary
 
+import java.io.DataInputStream
 import java.io.IOException
 import java.io.InputStream
 import java.io.Serializable
@@ -73,12 +74,23 @@ interface Binary : Serializable {
      */
     @JvmDefault
     fun read(offset: Int, size: Int): ByteBuffer {
-        return buffer.run {
-            position(offset)
-            val array = ByteArray(size)
-            get(array)
-            ByteBuffer.wrap(array)
-        }
+        return read(offset.toLong(), size)
+    }
+
+    /**
+     * Read a buffer with given dataOffset in respect to data block start and given size. Unlike [read] with integer
+     * offset, could be used to access binaries larger than 2GB. By default reads only requested bytes from the stream.
+     *
+     * @param offset
+     * @param size
+     * @return
+     * @throws IOException
+     */
+    @JvmDefault
+    fun read(offset: Long, size: Int): ByteBuffer {
+        val array = ByteArray(size)
+        DataInputStream(stream(offset)).use { it.readFully(array) }
+        return ByteBuffer.wrap(array)
     }
 
     /**
@@ -5,7 +5,6 @@
  */
 package hep.dataforge.data.binary
 
-import java.io.ByteArrayInputStream
 import java.io.InputStream
 import java.nio.ByteBuffer
 import java.nio.channels.Channels
@@ -15,7 +14,7 @@ import java.nio.channels.ReadableByteChannel
 class BufferedBinary(override val buffer: ByteBuffer) : Binary {
 
     override val stream: InputStream
-        get() = ByteArrayInputStream(buffer.array())
+        get() = ByteBufferInputStream(buffer.duplicate().apply { position(0) })
 
     override val channel: ReadableByteChannel
         get() = Channels.newChannel(stream)
@@ -27,4 +26,22 @@ class BufferedBinary(override val buffer: ByteBuffer) : Binary {
             return buffer.limit().toLong()
         }
 
+    override fun stream(offset: Long): InputStream {
+        return ByteBufferInputStream(buffer.duplicate().apply { position(offset.toInt()) })
+    }
+
+    /**
+     * Read a slice of the buffer without copying
+     */
+    override fun read(offset: Int, size: Int): ByteBuffer {
+        return buffer.duplicate().apply {
+            limit(offset + size)
+            position(offset)
+        }.slice()
+    }
+
+    override fun read(offset: Long, size: Int): ByteBuffer {
+        return read(offset.toInt(), size)
+    }
+
 }
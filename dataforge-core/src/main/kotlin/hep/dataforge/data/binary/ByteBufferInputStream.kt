@@ -0,0 +1,56 @@
+/*
+ * Copyright  2018 Alexander Nozik.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package hep.dataforge.data.binary
+
+import java.io.InputStream
+import java.nio.ByteBuffer
+
+/**
+ * An input stream reading the remaining content of a buffer. Works with both heap and direct buffers. The position of
+ * the buffer is changed on read.
+ */
+class ByteBufferInputStream(private val buffer: ByteBuffer) : InputStream() {
+
+    override fun read(): Int {
+        return if (buffer.hasRemaining()) {
+            buffer.get().toInt() and 0xff
+        } else {
+            -1
+        }
+    }
+
+    override fun read(b: ByteArray, off: Int, len: Int): Int {
+        return when {
+            len == 0 -> 0
+            !buffer.hasRemaining() -> -1
+            else -> {
+                val count = minOf(len, buffer.remaining())
+                buffer.get(b, off, count)
+                count
+            }
+        }
+    }
+
+    override fun skip(n: Long): Long {
+        val count = n.coerceIn(0, buffer.remaining().toLong()).toInt()
+        buffer.position(buffer.position() + count)
+        return count.toLong()
+    }
+
+    override fun available(): Int {
+        return buffer.remaining()
+    }
+}
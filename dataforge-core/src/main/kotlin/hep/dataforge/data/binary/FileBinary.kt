@@ -46,6 +46,10 @@ class FileBinary(
      * @throws IOException
      */
     override fun read(offset: Int, size: Int): ByteBuffer {
+        return read(offset.toLong(), size)
+    }
+
+    override fun read(offset: Long, size: Int): ByteBuffer {
         return FileChannel.open(file, StandardOpenOption.READ).use { it.map(FileChannel.MapMode.READ_ONLY, dataOffset + offset, size.toLong())}
     }
 
@@ -0,0 +1,139 @@
+/*
+ * Copyright  2018 Alexander Nozik.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package hep.dataforge.data.binary
+
+import java.io.*
+import java.nio.ByteBuffer
+import java.nio.channels.Channels
+import java.nio.channels.FileChannel
+import java.nio.channels.ReadableByteChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption.READ
+import java.util.*
+import java.util.concurrent.atomic.AtomicReferenceArray
+
+/**
+ * A [Binary] backed by a memory mapped region of a file. The region is mapped lazily in windows of limited size, so
+ * binaries larger than 2GB are supported and only the accessed parts of the file are paged in. [read] returns slices
+ * of mapped windows without copying.
+ *
+ * @param file the file to map
+ * @param offset the offset of the binary start in the file
+ * @param size the size of the binary. Negative value means that binary spans to the end of file
+ * @param windowSize the maximum size of a single mapped window
+ * @author Alexander Nozik
+ */
+class MappedBinary @JvmOverloads constructor(
+        val file: Path,
+        val offset: Long = 0,
+        size: Long = -1,
+        private val windowSize: Int = DEFAULT_WINDOW_SIZE
+) : Binary {
+
+    override val size: Long = if (size >= 0) size else Files.size(file) - offset
+
+    @Transient
+    private val windows = AtomicReferenceArray<ByteBuffer>(((this.size + windowSize - 1) / windowSize).toInt())
+
+    private fun map(position: Long, length: Long): ByteBuffer {
+        return FileChannel.open(file, READ).use { it.map(FileChannel.MapMode.READ_ONLY, offset + position, length) }
+    }
+
+    /**
+     * Get the mapped window with given number. Mapping is done on first access.
+     */
+    private fun window(index: Int): ByteBuffer {
+        return windows.get(index) ?: run {
+            val start = index.toLong() * windowSize
+            windows.compareAndSet(index, null, map(start, minOf(windowSize.toLong(), size - start)))
+            windows.get(index)
+        }
+    }
+
+    override val stream: InputStream
+        get() = stream(0)
+
+    override fun stream(offset: Long): InputStream {
+        val first = (offset / windowSize).toInt()
+        val iterator = (first until windows.length()).asSequence().map { index ->
+            val window = window(index).duplicate()
+            if (index == first) {
+                window.position((offset - index.toLong() * windowSize).toInt())
+            }
+            ByteBufferInputStream(window)
+        }.iterator()
+
+        return SequenceInputStream(object : Enumeration<InputStream> {
+            override fun hasMoreElements(): Boolean = iterator.hasNext()
+
+            override fun nextElement(): InputStream = iterator.next()
+        })
+    }
+
+    override val channel: ReadableByteChannel
+        get() = Channels.newChannel(stream)
+
+    /**
+     * Get the whole binary as a single mapped buffer. Works only for binaries smaller than 2GB.
+     */
+    override val buffer: ByteBuffer
+        get() {
+            if (size > Int.MAX_VALUE) {
+                throw IOException("Binary of size $size could not be represented by a single buffer")
+            }
+            return read(0L, size.toInt())
+        }
+
+    override fun read(offset: Int, size: Int): ByteBuffer {
+        return read(offset.toLong(), size)
+    }
+
+    /**
+     * Read a region of the binary without copying. If the region lies inside one window, a slice of the window is
+     * returned, otherwise the region is mapped separately.
+     */
+    override fun read(offset: Long, size: Int): ByteBuffer {
+        if (offset < 0 || size < 0 || offset + size > this.size) {
+            throw IndexOutOfBoundsException("Region [$offset, ${offset + size}) is out of binary bounds ${this.size}")
+        }
+        val index = (offset / windowSize).toInt()
+        val start = (offset - index.toLong() * windowSize).toInt()
+        return if (start.toLong() + size <= windowSize && index < windows.length()) {
+            window(index).duplicate().apply {
+                limit(start + size)
+                position(start)
+            }.slice()
+        } else {
+            map(offset, size.toLong())
+        }
+    }
+
+    @Throws(ObjectStreamException::class)
+    private fun writeReplace(): Any {
+        try {
+            val array = ByteArray(size.toInt())
+            buffer.get(array)
+            return BufferedBinary(array)
+        } catch (e: IOException) {
+            throw WriteAbortedException("Failed to get byte buffer", e)
+        }
+    }
+
+    companion object {
+        const val DEFAULT_WINDOW_SIZE = 1 shl 30
+    }
+}
@@ -0,0 +1,26 @@
+/*
+ * Copyright  2018 Alexander Nozik.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package hep.dataforge.goals
+
+/**
+ * A goal with known content digest of the result. All other operations are delegated to the wrapped goal.
+ */
+class DigestGoal<T>(private val goal: Goal<T>, private val digest: String) : Goal<T> by goal {
+    override fun getDigest(): String {
+        return digest
+    }
+}
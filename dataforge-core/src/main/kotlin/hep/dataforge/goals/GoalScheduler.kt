@@ -0,0 +1,386 @@
+/*
+ * Copyright  2018 Alexander Nozik.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package hep.dataforge.goals
+
+import hep.dataforge.context.BasicPlugin
+import hep.dataforge.context.Plugin
+import hep.dataforge.context.PluginDef
+import hep.dataforge.context.PluginFactory
+import hep.dataforge.data.DataNode
+import hep.dataforge.description.ValueDef
+import hep.dataforge.description.ValueDefs
+import hep.dataforge.meta.Meta
+import hep.dataforge.meta.MetaBuilder
+import hep.dataforge.values.ValueType
+import java.util.*
+import java.util.concurrent.CancellationException
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+
+/**
+ * Scheduler for goal graphs. The whole graph of the goal dependencies is collected before execution and each goal is
+ * started only after all its dependencies are completed, so goals do not occupy threads while waiting.
+ *
+ * Each goal requires some tokens of named resources (by default one `cpu` token). The number of tokens available for
+ * all graphs scheduled by the plugin is limited by the `limits` node of plugin meta, which allows to limit the number
+ * of memory-heavy or I/O bound goals running at the same time. Among ready goals, the ones with the longest chain of
+ * dependent goals (the critical path) are started first. Goals are started on the default work-stealing executor of
+ * the context.
+ *
+ * Cancellation of a goal cancels all goals depending on it which are not completed yet.
+ */
+@ValueDefs(
+        ValueDef(key = "limits.cpu", type = arrayOf(ValueType.NUMBER), info = "The number of cpu tokens. By default equals the number of processors"),
+        ValueDef(key = "limits.io", type = arrayOf(ValueType.NUMBER), def = "4", info = "The number of io tokens"),
+        ValueDef(key = "limits.memory", type = arrayOf(ValueType.NUMBER), info = "The number of memory tokens. Unlimited by default")
+)
+@PluginDef(name = "scheduler", group = "hep.dataforge", info = "Goal graph scheduler")
+class GoalScheduler(meta: Meta) : BasicPlugin(meta) {
+
+    private val lock = ReentrantLock()
+
+    /**
+     * Available tokens for each resource. Guarded by lock
+     */
+    private val available = HashMap<String, Int>()
+
+    /**
+     * Ready goals grouped by resource requirements, so goals waiting for one resource do not block others. Guarded
+     * by lock
+     */
+    private val ready = HashMap<Map<String, Int>, PriorityQueue<Node>>()
+
+    private val order = AtomicLong()
+
+    private val scheduled = AtomicLong()
+    private val completed = AtomicLong()
+    private val failed = AtomicLong()
+    private val running = AtomicInteger()
+
+    /**
+     * The total number of tokens for given resource
+     */
+    fun getLimit(resource: String): Int {
+        return when (resource) {
+            CPU -> meta.getInt("limits.$CPU", Runtime.getRuntime().availableProcessors())
+            IO -> meta.getInt("limits.$IO", 4)
+            else -> meta.getInt("limits.$resource", Int.MAX_VALUE)
+        }
+    }
+
+    /**
+     * Scheduler statistics and current resource usage
+     */
+    val statistics: Meta
+        get() {
+            val builder = MetaBuilder("statistics")
+                    .setValue("scheduled", scheduled.get())
+                    .setValue("completed", completed.get())
+                    .setValue("failed", failed.get())
+                    .setValue("running", running.get())
+            lock.withLock {
+                builder.setValue("ready", ready.values.sumBy { it.size })
+                available.forEach { resource, tokens ->
+                    builder.putNode(MetaBuilder("resource")
+                            .setValue("name", resource)
+                            .setValue("limit", getLimit(resource))
+                            .setValue("used", getLimit(resource) - tokens))
+                }
+            }
+            return builder
+        }
+
+    /**
+     * Schedule the goal with all its dependencies
+     *
+     * @param goal the target goal
+     * @param requirements resource tokens required by a goal
+     */
+    @JvmOverloads
+    fun schedule(goal: Goal<*>, requirements: (Goal<*>) -> Map<String, Int> = ::defaultRequirements): Schedule {
+        return Schedule(goal, requirements).also { it.start() }
+    }
+
+    /**
+     * Schedule computation of all data in the node
+     */
+    @JvmOverloads
+    fun schedule(node: DataNode<*>, requirements: (Goal<*>) -> Map<String, Int> = ::defaultRequirements): Schedule {
+        return schedule(node.nodeGoal(), requirements)
+    }
+
+    private fun enqueue(node: Node) {
+        lock.withLock {
+            ready.getOrPut(node.requirements) {
+                PriorityQueue(compareByDescending<Node> { it.priority }.thenBy { it.order })
+            }.add(node)
+        }
+    }
+
+    private fun fits(requirements: Map<String, Int>): Boolean {
+        return requirements.all { (resource, tokens) ->
+            available.getOrPut(resource) { getLimit(resource) } >= tokens
+        }
+    }
+
+    /**
+     * Start ready goals with highest priority while resources are available
+     */
+    private fun dispatch() {
+        val toStart = ArrayList<Node>()
+        lock.withLock {
+            while (true) {
+                val queue = ready.values
+                        .filter { it.isNotEmpty() && fits(it.peek().requirements) }
+                        .maxWith(compareBy<PriorityQueue<Node>> { it.peek().priority }.thenByDescending { it.peek().order })
+                        ?: break
+                val node = queue.poll()
+                if (node.schedule.isCancelled || node.goal.isDone) {
+                    continue
+                }
+                node.requirements.forEach { resource, tokens -> available.compute(resource) { _, value -> value!! - tokens } }
+                node.started = true
+                running.incrementAndGet()
+                toStart.add(node)
+            }
+        }
+        toStart.forEach { node ->
+            context.executors.defaultExecutor.execute {
+                try {
+                    node.goal.run()
+                } catch (ex: Exception) {
+                    logger.error("Failed to start goal", ex)
+                    node.goal.asCompletableFuture().completeExceptionally(ex)
+                }
+            }
+        }
+    }
+
+    private fun release(node: Node) {
+        lock.withLock {
+            if (!node.started) {
+                return
+            }
+            node.started = false
+            node.requirements.forEach { resource, tokens -> available.compute(resource) { _, value -> value!! + tokens } }
+        }
+        running.decrementAndGet()
+    }
+
+    private inner class Node(val schedule: Schedule, val goal: Goal<*>, requirements: Map<String, Int>) {
+        /**
+         * Requirements are limited by the total number of tokens, so any goal could be started
+         */
+        val requirements: Map<String, Int> = requirements.mapValues { (resource, tokens) -> minOf(tokens, getLimit(resource)) }
+        val order = this@GoalScheduler.order.incrementAndGet()
+        val dependencies = ArrayList<Node>()
+        val dependents = ArrayList<Node>()
+
+        /**
+         * The length of the longest chain of dependent goals
+         */
+        var priority = 0
+
+        /**
+         * The number of dependencies which are not completed
+         */
+        val remaining = AtomicInteger()
+
+        /**
+         * True if the goal should be started by the scheduler
+         */
+        var managed = false
+
+        /**
+         * True if the goal is started and holds resource tokens. Guarded by lock
+         */
+        var started = false
+    }
+
+    /**
+     * Execution of a single goal graph
+     */
+    inner class Schedule internal constructor(val goal: Goal<*>, requirements: (Goal<*>) -> Map<String, Int>) {
+        private val nodes = IdentityHashMap<Goal<*>, Node>()
+        private val done = AtomicInteger()
+        private val errors = AtomicInteger()
+
+        /**
+         * Goals cancelled because one of their dependencies is cancelled
+         */
+        private val propagated: MutableSet<Goal<*>> = Collections.newSetFromMap(ConcurrentHashMap())
+
+        @Volatile
+        var isCancelled = false
+            private set
+
+        /**
+         * Completed when all goals in the graph are completed
+         */
+        val future = CompletableFuture<Void>()
+
+        init {
+            // collect the graph
+            val stack = ArrayDeque<Goal<*>>()
+            stack.push(goal)
+            nodes[goal] = Node(this, goal, requirements(goal))
+            while (stack.isNotEmpty()) {
+                val current = nodes[stack.pop()]!!
+                if (current.goal.isDone) {
+                    continue
+                }
+                current.goal.dependencies().forEach { dep ->
+                    val depNode = nodes[dep] ?: Node(this, dep, requirements(dep)).also {
+                        nodes[dep] = it
+                        stack.push(dep)
+                    }
+                    current.dependencies.add(depNode)
+                    depNode.dependents.add(current)
+                }
+            }
+
+            // critical path priorities, walking from the target to dependencies in topological order
+            val unprocessed = IdentityHashMap<Node, Int>()
+            nodes.values.forEach { unprocessed[it] = it.dependents.size }
+            val queue = ArrayDeque<Node>()
+            nodes.values.filterTo(queue) { it.dependents.isEmpty() }
+            while (queue.isNotEmpty()) {
+                val node = queue.poll()
+                node.dependencies.forEach { dep ->
+                    dep.priority = maxOf(dep.priority, node.priority + 1)
+                    val left = unprocessed[dep]!! - 1
+                    unprocessed[dep] = left
+                    if (left == 0) {
+                        queue.add(dep)
+                    }
+                }
+            }
+        }
+
+        val total: Int
+            get() = nodes.size
+
+        val completed: Int
+            get() = done.get()
+
+        val failed: Int
+            get() = errors.get()
+
+        /**
+         * The fraction of completed goals
+         */
+        val progress: Double
+            get() = if (total == 0) 1.0 else completed.toDouble() / total
+
+        internal fun start() {
+            scheduled.addAndGet(nodes.size.toLong())
+            val readyNodes = ArrayList<Node>()
+            nodes.values.forEach { node ->
+                node.remaining.set(node.dependencies.size)
+                // goals started outside of the scheduler are only observed
+                node.managed = !node.goal.isDone && (node.goal is GoalGroup || !node.goal.isRunning)
+                if (node.managed && node.dependencies.isEmpty()) {
+                    readyNodes.add(node)
+                }
+            }
+            // completed goals trigger dependents immediately
+            nodes.values.forEach { node ->
+                node.goal.asCompletableFuture().whenComplete { _, err -> onComplete(node, err) }
+            }
+            goal.asCompletableFuture().whenComplete { _, err ->
+                // cancellation of the target by user cancels the whole graph
+                if (err is CancellationException && !propagated.contains(goal)) {
+                    cancel()
+                }
+            }
+            readyNodes.forEach { enqueue(it) }
+            dispatch()
+        }
+
+        private fun onComplete(node: Node, err: Throwable?) {
+            release(node)
+            if (err == null) {
+                this@GoalScheduler.completed.incrementAndGet()
+            } else {
+                errors.incrementAndGet()
+                this@GoalScheduler.failed.incrementAndGet()
+                if (err is CancellationException || err is CompletionException && err.cause is CancellationException) {
+                    node.dependents.forEach {
+                        propagated.add(it.goal)
+                        it.goal.cancel(true)
+                    }
+                }
+            }
+            node.dependents.forEach { dependent ->
+                if (dependent.remaining.decrementAndGet() == 0 && dependent.managed && !isCancelled) {
+                    enqueue(dependent)
+                }
+            }
+            if (done.incrementAndGet() == total) {
+                future.complete(null)
+            }
+            dispatch()
+        }
+
+        /**
+         * Cancel all goals in the graph which are not completed
+         */
+        fun cancel() {
+            if (!isCancelled) {
+                isCancelled = true
+                future.cancel(true)
+                nodes.keys.forEach { it.cancel(true) }
+            }
+        }
+
+        fun toMeta(): Meta {
+            return MetaBuilder("schedule")
+                    .setValue("total", total)
+                    .setValue("completed", completed)
+                    .setValue("failed", failed)
+                    .setValue("progress", progress)
+                    .setValue("cancelled", isCancelled)
+        }
+    }
+
+    class Factory : PluginFactory() {
+        override val type: Class<out Plugin>
+            get() = GoalScheduler::class.java
+
+        override fun build(meta: Meta): Plugin {
+            return GoalScheduler(meta)
+        }
+    }
+
+    companion object {
+        const val CPU = "cpu"
+        const val IO = "io"
+        const val MEMORY = "memory"
+
+        /**
+         * Goal groups do not compute anything and do not require resources, other goals require one cpu token
+         */
+        fun defaultRequirements(goal: Goal<*>): Map<String, Int> {
+            return if (goal is GoalGroup) emptyMap() else mapOf(CPU to 1)
+        }
+    }
+}
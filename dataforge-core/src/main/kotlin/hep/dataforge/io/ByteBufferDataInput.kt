@@ -0,0 +1,118 @@
+/*
+ * Copyright  2018 Alexander Nozik.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package hep.dataforge.io
+
+import java.io.DataInput
+import java.io.DataInputStream
+import java.io.EOFException
+import java.nio.ByteBuffer
+
+/**
+ * A [DataInput] reading directly from a buffer without intermediate streams or copying. Allows to reuse existing
+ * [DataInput] based decoders for buffers. The position of the buffer is changed on read.
+ */
+class ByteBufferDataInput(val buffer: ByteBuffer) : DataInput {
+
+    private fun require(size: Int) {
+        if (buffer.remaining() < size) {
+            throw EOFException("Required $size bytes, but only ${buffer.remaining()} remaining")
+        }
+    }
+
+    override fun readFully(b: ByteArray) {
+        readFully(b, 0, b.size)
+    }
+
+    override fun readFully(b: ByteArray, off: Int, len: Int) {
+        require(len)
+        buffer.get(b, off, len)
+    }
+
+    override fun skipBytes(n: Int): Int {
+        val count = minOf(n, buffer.remaining())
+        buffer.position(buffer.position() + count)
+        return count
+    }
+
+    override fun readBoolean(): Boolean = readByte().toInt() != 0
+
+    override fun readByte(): Byte {
+        require(1)
+        return buffer.get()
+    }
+
+    override fun readUnsignedByte(): Int = readByte().toInt() and 0xff
+
+    override fun readShort(): Short {
+        require(2)
+        return buffer.short
+    }
+
+    override fun readUnsignedShort(): Int = readShort().toInt() and 0xffff
+
+    override fun readChar(): Char {
+        require(2)
+        return buffer.char
+    }
+
+    override fun readInt(): Int {
+        require(4)
+        return buffer.int
+    }
+
+    override fun readLong(): Long {
+        require(8)
+        return buffer.long
+    }
+
+    override fun readFloat(): Float {
+        require(4)
+        return buffer.float
+    }
+
+    override fun readDouble(): Double {
+        require(8)
+        return buffer.double
+    }
+
+    /**
+     * Read a line with the same semantics as [DataInputStream.readLine]: each byte is converted to a character, the
+     * line is terminated by `\n`, `\r` or `\r\n`. Returns null if the end of data is reached before any byte is read.
+     */
+    override fun readLine(): String? {
+        if (!buffer.hasRemaining()) {
+            return null
+        }
+        val builder = StringBuilder()
+        while (buffer.hasRemaining()) {
+            val char = (buffer.get().toInt() and 0xff).toChar()
+            when (char) {
+                '\n' -> return builder.toString()
+                '\r' -> {
+                    if (buffer.hasRemaining() && buffer.get(buffer.position()) == '\n'.toByte()) {
+                        buffer.get()
+                    }
+                    return builder.toString()
+                }
+                else -> builder.append(char)
+            }
+        }
+        return builder.toString()
+    }
+
+    override fun readUTF(): String = DataInputStream.readUTF(this)
+}
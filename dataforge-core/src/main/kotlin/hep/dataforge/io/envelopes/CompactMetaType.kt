@@ -0,0 +1,189 @@
+/*
+ * Copyright  2018 Alexander Nozik.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package hep.dataforge.io.envelopes
+
+import hep.dataforge.io.ByteBufferDataInput
+import hep.dataforge.io.MetaStreamReader
+import hep.dataforge.io.MetaStreamWriter
+import hep.dataforge.meta.Meta
+import hep.dataforge.meta.MetaBuilder
+import hep.dataforge.names.Name
+import hep.dataforge.values.readValue
+import hep.dataforge.values.writeValue
+import java.io.*
+import java.nio.ByteBuffer
+import kotlin.streams.toList
+
+val compactMetaType = CompactMetaType()
+
+/**
+ * Compact binary meta format without java serialization overhead. Counts and lengths are written as varints, each
+ * name is written only once and then referenced by its index and values use [writeValue] encoding.
+ *
+ * Node layout is `[name] valueCount (name value)* nodeCount (name listSize node*)*`. Only the root node has a name,
+ * names of child nodes are taken from the list they belong to. A name is either a varint index of previously written
+ * name plus one, or zero followed by varint length and UTF-8 bytes of a new name.
+ */
+class CompactMetaType : MetaType {
+
+    override val codes: List<Short> = listOf(0x434d, 11)//CM
+
+    override val name: String = COMPACT_META_TYPE
+
+    override val fileNameFilter: (String) -> Boolean = { str -> str.toLowerCase().endsWith(".cmeta") }
+
+    override val reader: MetaStreamReader = object : MetaStreamReader {
+        override fun read(stream: InputStream, length: Long): MetaBuilder {
+            return if (length > 0) {
+                val bytes = ByteArray(length.toInt())
+                DataInputStream(stream).readFully(bytes)
+                Decoder(ByteBufferDataInput(ByteBuffer.wrap(bytes))).readNode(null)
+            } else {
+                // the format is self-delimiting, so the stream is read exactly to the end of meta
+                Decoder(DataInputStream(stream)).readNode(null)
+            }
+        }
+
+        /**
+         * Decode directly from the buffer without copying
+         */
+        override fun readBuffer(buffer: ByteBuffer): MetaBuilder {
+            val content = buffer.duplicate()
+            content.position(0)
+            return Decoder(ByteBufferDataInput(content)).readNode(null)
+        }
+
+        override fun readLazy(buffer: ByteBuffer): Meta {
+            return LazyMeta(buffer)
+        }
+    }
+
+    override val writer: MetaStreamWriter = object : MetaStreamWriter {
+        override fun write(stream: OutputStream, meta: Meta) {
+            val output = DataOutputStream(BufferedOutputStream(stream))
+            Encoder(output).writeNode(meta, true)
+            output.flush()
+        }
+    }
+
+    private class Encoder(private val output: DataOutput) {
+        private val names = HashMap<String, Int>()
+
+        private fun writeVarInt(value: Int) = output.writeVarInt(value)
+
+        private fun writeName(name: String) {
+            val index = names[name]
+            if (index != null) {
+                writeVarInt(index + 1)
+            } else {
+                names[name] = names.size
+                val bytes = name.toByteArray(Charsets.UTF_8)
+                writeVarInt(0)
+                writeVarInt(bytes.size)
+                output.write(bytes)
+            }
+        }
+
+        fun writeNode(meta: Meta, includeName: Boolean) {
+            if (includeName) {
+                writeName(meta.name)
+            }
+            val valueNames = meta.getValueNames(true).toList()
+            writeVarInt(valueNames.size)
+            valueNames.forEach {
+                writeName(it)
+                output.writeValue(meta.getValue(it))
+            }
+
+            val nodeNames = meta.getNodeNames(true).toList()
+            writeVarInt(nodeNames.size)
+            nodeNames.forEach { nodeName ->
+                val nodes = meta.getMetaList(nodeName)
+                writeName(nodeName)
+                writeVarInt(nodes.size)
+                nodes.forEach { writeNode(it, false) }
+            }
+        }
+    }
+
+    private class Decoder(private val input: DataInput) {
+        private val names = ArrayList<String>()
+
+        private fun readVarInt(): Int = input.readVarInt()
+
+        private fun readName(): String {
+            val ref = readVarInt()
+            return if (ref == 0) {
+                val bytes = ByteArray(readVarInt())
+                input.readFully(bytes)
+                String(bytes, Charsets.UTF_8).also { names.add(it) }
+            } else {
+                names.getOrNull(ref - 1) ?: throw IOException("Reference to unknown name $ref")
+            }
+        }
+
+        fun readNode(name: String?): MetaBuilder {
+            val res = MetaBuilder(name ?: readName())
+            repeat(readVarInt()) {
+                val valueName = readName()
+                res.setValue(Name.ofSingle(valueName), input.readValue(), false)
+            }
+            repeat(readVarInt()) {
+                val nodeName = readName()
+                val size = readVarInt()
+                val nodes = ArrayList<MetaBuilder>(size)
+                repeat(size) {
+                    nodes.add(readNode(nodeName))
+                }
+                res.attachNodeItem(nodeName, nodes)
+            }
+            return res
+        }
+    }
+
+    companion object {
+        const val COMPACT_META_TYPE = "compact"
+    }
+}
+
+/**
+ * Write unsigned integer in LEB128 format
+ */
+internal fun DataOutput.writeVarInt(value: Int) {
+    var rest = value
+    while (rest and 0x7f.inv() != 0) {
+        writeByte(rest and 0x7f or 0x80)
+        rest = rest ushr 7
+    }
+    writeByte(rest)
+}
+
+internal fun DataInput.readVarInt(): Int {
+    var res = 0
+    var shift = 0
+    while (true) {
+        val b = readByte().toInt()
+        res = res or (b and 0x7f shl shift)
+        if (b and 0x80 == 0) {
+            return res
+        }
+        shift += 7
+        if (shift > 28) {
+            throw IOException("Malformed variable length integer")
+        }
+    }
+}
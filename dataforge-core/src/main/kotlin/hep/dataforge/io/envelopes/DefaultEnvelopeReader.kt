@@ -17,13 +17,14 @@ package hep.dataforge.io.envelopes
 
 import hep.dataforge.data.binary.Binary
 import hep.dataforge.data.binary.BufferedBinary
-import hep.dataforge.data.binary.FileBinary
+import hep.dataforge.data.binary.MappedBinary
 import hep.dataforge.exceptions.EnvelopeFormatException
 import hep.dataforge.io.envelopes.DefaultEnvelopeType.Companion.SEPARATOR
 import hep.dataforge.meta.Meta
 import hep.dataforge.meta.MetaNode.DEFAULT_META_NAME
 import org.slf4j.LoggerFactory
 import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
 import java.io.IOException
 import java.io.InputStream
 import java.nio.ByteBuffer
@@ -56,7 +57,13 @@ open class DefaultEnvelopeReader : EnvelopeReader {
             Meta.buildEmpty(DEFAULT_META_NAME)
         } else {
             try {
-                parser.read(stream, metaLength.toLong())
+                if (metaLength > 0) {
+                    val bytes = ByteArray(metaLength)
+                    DataInputStream(stream).readFully(bytes)
+                    parser.readLazy(ByteBuffer.wrap(bytes))
+                } else {
+                    parser.read(stream, metaLength.toLong())
+                }
             } catch (ex: ParseException) {
                 throw EnvelopeFormatException("Error parsing meta", ex)
             }
@@ -75,9 +82,8 @@ open class DefaultEnvelopeReader : EnvelopeReader {
     }
 
     /**
-     * The envelope is lazy meaning it will be calculated on demand. If the
-     * stream will be closed before that, than an error will be thrown. In order
-     * to avoid this problem, it is wise to call `getData` after read.
+     * The envelope data is a [MappedBinary], meaning that it is not loaded into memory until accessed and could be
+     * accessed randomly.
      *
      * @return
      */
@@ -85,11 +91,13 @@ open class DefaultEnvelopeReader : EnvelopeReader {
         val channel = Files.newByteChannel(file, READ)
         val tag = newTag().read(channel)
         val metaLength = tag.metaSize
-        val dataLength = tag.dataSize
-        if (metaLength < 0 || dataLength < 0) {
+        if (metaLength < 0 || tag.dataSize == -1) {
             LoggerFactory.getLogger(javaClass).error("Can't lazy read infinite data or meta. Returning non-lazy envelope")
-            return read(file)
+            channel.close()
+            return Files.newInputStream(file, READ).use { readWithData(it) }
         }
+        // data length is written as unsigned integer
+        val dataLength = Integer.toUnsignedLong(tag.dataSize)
 
         val metaBuffer = ByteBuffer.allocate(metaLength)
         channel.position(tag.length.toLong())
@@ -100,7 +108,7 @@ open class DefaultEnvelopeReader : EnvelopeReader {
             Meta.buildEmpty(DEFAULT_META_NAME)
         } else {
             try {
-                parser.readBuffer(metaBuffer)
+                parser.readLazy(metaBuffer)
             } catch (ex: ParseException) {
                 throw EnvelopeFormatException("Error parsing annotation", ex)
             }
@@ -108,7 +116,7 @@ open class DefaultEnvelopeReader : EnvelopeReader {
         }
         channel.close()
 
-        return SimpleEnvelope(meta, FileBinary(file, (tag.length + metaLength).toLong()))
+        return SimpleEnvelope(meta, MappedBinary(file, (tag.length + metaLength).toLong(), dataLength))
     }
 
     protected fun separator(): ByteArray {
@@ -119,8 +127,13 @@ open class DefaultEnvelopeReader : EnvelopeReader {
     private fun readData(stream: InputStream, length: Int): Binary {
         return if (length == -1) {
             val baos = ByteArrayOutputStream()
+            val bytes = ByteArray(DEFAULT_BUFFER_SIZE)
             while (stream.available() > 0) {
-                baos.write(stream.read())
+                val count = stream.read(bytes)
+                if (count < 0) {
+                    break
+                }
+                baos.write(bytes, 0, count)
             }
             BufferedBinary(baos.toByteArray())
         } else {
@@ -168,6 +168,15 @@ open class EnvelopeTag {
         return this
     }
 
+    /**
+     * Read tag from the buffer. The buffer must start with the tag.
+     */
+    @Throws(IOException::class)
+    fun read(buffer: ByteBuffer): EnvelopeTag {
+        setValues(readHeader(buffer))
+        return this
+    }
+
     @Throws(IOException::class)
     fun read(stream: InputStream): EnvelopeTag {
         val header: Map<String, Value>
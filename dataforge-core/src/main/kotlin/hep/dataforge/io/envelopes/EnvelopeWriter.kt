@@ -17,6 +17,8 @@ package hep.dataforge.io.envelopes
 
 import java.io.IOException
 import java.io.OutputStream
+import java.nio.channels.Channels
+import java.nio.channels.WritableByteChannel
 
 /**
  * The writer interface for the envelope
@@ -34,4 +36,17 @@ interface EnvelopeWriter {
      */
     @Throws(IOException::class)
     fun write(stream: OutputStream, envelope: Envelope)
+
+    /**
+     * Write the envelope to a channel
+     *
+     * @param channel
+     * @param envelope
+     * @throws IOException
+     */
+    @Throws(IOException::class)
+    @JvmDefault
+    fun write(channel: WritableByteChannel, envelope: Envelope) {
+        write(Channels.newOutputStream(channel), envelope)
+    }
 }
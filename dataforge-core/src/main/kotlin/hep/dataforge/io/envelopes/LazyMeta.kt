@@ -0,0 +1,179 @@
+/*
+ * Copyright  2018 Alexander Nozik.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package hep.dataforge.io.envelopes
+
+import hep.dataforge.io.ByteBufferDataInput
+import hep.dataforge.meta.Meta
+import hep.dataforge.meta.MetaUtils
+import hep.dataforge.names.Name
+import hep.dataforge.values.Value
+import hep.dataforge.values.readValue
+import hep.dataforge.values.skipValue
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+import java.util.stream.Stream
+
+/**
+ * A read-only meta over the buffer in [CompactMetaType] format which is decoded on demand. A node builds an index of
+ * its value and child node offsets on first access. Values are decoded when requested and child nodes are indexed only
+ * when accessed themselves, so reading a single header value does not create the whole meta tree.
+ *
+ * The buffer content between zero and its limit is used and must not be changed while the meta is in use. Meta is
+ * replaced by a sealed copy on serialization.
+ *
+ * @author Alexander Nozik
+ */
+class LazyMeta private constructor(private val root: Root, private val offset: Int, private val nodeName: String?) : Meta() {
+
+    constructor(buffer: ByteBuffer) : this(Root(buffer), 0, null)
+
+    /**
+     * The buffer and the table of names shared by all nodes. The table is complete after the root is indexed and
+     * only root could be indexed first.
+     */
+    private class Root(buffer: ByteBuffer) {
+        val buffer: ByteBuffer = buffer.duplicate().also { it.position(0) }
+        val names = ArrayList<String>()
+
+        fun input(position: Int): ByteBufferDataInput {
+            return ByteBufferDataInput(buffer.duplicate().also { it.position(position) })
+        }
+    }
+
+    private class Index(val name: String, val values: Map<String, Int>, val nodes: Map<String, List<LazyMeta>>)
+
+    private val index: Index by lazy { buildIndex() }
+
+    private val valueCache = ConcurrentHashMap<String, Value>()
+
+    private fun buildIndex(): Index {
+        val isRoot = nodeName == null
+        val input = root.input(offset)
+
+        fun readName(): String {
+            val ref = input.readVarInt()
+            return if (ref == 0) {
+                val bytes = ByteArray(input.readVarInt())
+                input.readFully(bytes)
+                String(bytes, Charsets.UTF_8).also {
+                    if (isRoot) {
+                        root.names.add(it)
+                    }
+                }
+            } else {
+                root.names.getOrNull(ref - 1) ?: throw IOException("Reference to unknown name $ref")
+            }
+        }
+
+        fun skipNode() {
+            repeat(input.readVarInt()) {
+                readName()
+                input.skipValue()
+            }
+            repeat(input.readVarInt()) {
+                readName()
+                repeat(input.readVarInt()) { skipNode() }
+            }
+        }
+
+        val name = nodeName ?: readName()
+        val values = LinkedHashMap<String, Int>()
+        repeat(input.readVarInt()) {
+            val valueName = readName()
+            values[valueName] = input.buffer.position()
+            input.skipValue()
+        }
+        val nodes = LinkedHashMap<String, List<LazyMeta>>()
+        repeat(input.readVarInt()) {
+            val childName = readName()
+            nodes[childName] = List(input.readVarInt()) {
+                LazyMeta(root, input.buffer.position(), childName).also { skipNode() }
+            }
+        }
+        return Index(name, values, nodes)
+    }
+
+    override val name: String
+        get() = nodeName ?: index.name
+
+    override fun isEmpty(): Boolean {
+        return index.values.isEmpty() && index.nodes.isEmpty()
+    }
+
+    override fun getValueNames(includeHidden: Boolean): Stream<String> {
+        val res = index.values.keys.stream()
+        return if (includeHidden) res else res.filter { !it.startsWith("@") }
+    }
+
+    override fun getNodeNames(includeHidden: Boolean): Stream<String> {
+        val res = index.nodes.keys.stream()
+        return if (includeHidden) res else res.filter { !it.startsWith("@") }
+    }
+
+    private fun optHead(path: Name): LazyMeta? {
+        val head = path.first
+        return index.nodes[head.entry()]?.let { MetaUtils.query(it, head.query) { node -> node } }?.firstOrNull()
+    }
+
+    private fun findValue(path: Name): Value? {
+        return when {
+            path.length == 0 -> throw RuntimeException("Empty path not allowed")
+            path.length == 1 -> {
+                val valueName = path.toString()
+                valueCache[valueName] ?: index.values[valueName]?.let { position ->
+                    root.input(position).readValue().also { valueCache[valueName] = it }
+                }
+            }
+            else -> optHead(path)?.findValue(path.cutFirst())
+        }
+    }
+
+    private fun findMetaList(path: Name): List<LazyMeta> {
+        val res = when {
+            path.length == 0 -> throw RuntimeException("Empty path not allowed")
+            path.length == 1 -> index.nodes[path.ignoreQuery().toString()] ?: emptyList()
+            else -> optHead(path)?.findMetaList(path.cutFirst()) ?: emptyList()
+        }
+        return if (res.isNotEmpty() && path.hasQuery()) {
+            MetaUtils.query(res, path.query) { it }
+        } else {
+            res
+        }
+    }
+
+    override fun optValue(path: String): Optional<Value> {
+        return Optional.ofNullable(findValue(Name.of(path)))
+    }
+
+    override fun optValue(path: Name): Optional<Value> {
+        return Optional.ofNullable(findValue(path))
+    }
+
+    override fun getMetaList(path: String): List<Meta> {
+        return findMetaList(Name.of(path))
+    }
+
+    override fun getMetaList(path: Name): List<Meta> {
+        return findMetaList(path)
+    }
+
+    private fun writeReplace(): Any {
+        return sealed
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright  2018 Alexander Nozik.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package hep.dataforge.io.envelopes
+
+import hep.dataforge.data.binary.Binary
+import hep.dataforge.data.binary.BufferedBinary
+import hep.dataforge.exceptions.EnvelopeFormatException
+import hep.dataforge.io.envelopes.DefaultEnvelopeType.Companion.SEPARATOR
+import hep.dataforge.io.envelopes.Envelope.Companion.DATA_LENGTH_PROPERTY
+import hep.dataforge.io.envelopes.Envelope.Companion.META_LENGTH_PROPERTY
+import hep.dataforge.meta.Meta
+import hep.dataforge.meta.MetaNode.DEFAULT_META_NAME
+import java.io.ByteArrayOutputStream
+import java.io.EOFException
+import java.io.IOException
+import java.io.InputStream
+import java.io.OutputStream
+import java.nio.ByteBuffer
+import java.nio.channels.*
+import java.text.ParseException
+
+/**
+ * Reader and writer for envelopes in the default format working directly with NIO channels. All transfers go through
+ * a single fixed size buffer, so data of unknown length is piped from source to target without being held in memory
+ * as a whole. Tag, meta and data of known size are written with a single gathering write if the target channel
+ * supports it.
+ *
+ * The codec holds a mutable buffer and should not be shared between threads.
+ *
+ * @param metaType the meta type used for writing
+ * @param bufferSize the size of transfer buffer
+ * @author Alexander Nozik
+ */
+class StreamingEnvelopeCodec @JvmOverloads constructor(
+        private val metaType: MetaType = xmlMetaType,
+        bufferSize: Int = DEFAULT_BUFFER_SIZE
+) : EnvelopeReader, EnvelopeWriter {
+
+    private val buffer: ByteBuffer = ByteBuffer.allocateDirect(bufferSize)
+
+    override fun read(stream: InputStream): Envelope {
+        return read(Channels.newChannel(stream))
+    }
+
+    /**
+     * Read the whole envelope. Data of known size is read directly into a buffer of that size, data of unknown size
+     * is read until the end of channel.
+     */
+    override fun read(channel: ReadableByteChannel): Envelope {
+        val tag = readTag(channel)
+        val meta = readMeta(channel, tag)
+        val data: Binary = if (tag.dataSize == -1) {
+            val output = ByteArrayOutputStream()
+            pipe(channel, Channels.newChannel(output), -1)
+            BufferedBinary(output.toByteArray())
+        } else {
+            val dataSize = Integer.toUnsignedLong(tag.dataSize)
+            if (dataSize > Int.MAX_VALUE) {
+                throw IOException("Can't read data of size $dataSize to memory. Use streaming read instead")
+            }
+            BufferedBinary(ByteBuffer.allocate(dataSize.toInt()).also { readFully(channel, it) })
+        }
+        return SimpleEnvelope(meta, data)
+    }
+
+    /**
+     * Read the tag and meta and return an envelope with data streamed from the channel on demand. Data could be
+     * read only once and must be consumed before the next read from the channel.
+     */
+    fun open(channel: ReadableByteChannel): Envelope {
+        val tag = readTag(channel)
+        val meta = readMeta(channel, tag)
+        val dataSize = if (tag.dataSize == -1) -1 else Integer.toUnsignedLong(tag.dataSize)
+        return SimpleEnvelope(meta, ChannelBinary(BoundedChannel(channel, dataSize), dataSize))
+    }
+
+    override fun write(stream: OutputStream, envelope: Envelope) {
+        write(Channels.newChannel(stream), envelope)
+    }
+
+    /**
+     * Write the envelope to the channel. Data of unknown size or data exceeding tag limits is piped through the
+     * transfer buffer and its size in the tag is marked as undefined.
+     */
+    override fun write(channel: WritableByteChannel, envelope: Envelope) {
+        val meta: ByteArray = if (envelope.meta.isEmpty) {
+            ByteArray(0)
+        } else {
+            ByteArrayOutputStream().also { metaType.writer.write(it, envelope.meta) }.toByteArray()
+        }
+        val data = envelope.data
+        val dataSize = data.size
+        val tag = EnvelopeTag().also {
+            it.envelopeType = DefaultEnvelopeType.INSTANCE
+            it.metaType = metaType
+            it.setValue(META_LENGTH_PROPERTY, if (meta.isEmpty()) 0 else meta.size + SEPARATOR.size)
+            it.setValue(DATA_LENGTH_PROPERTY, if (dataSize in 0 until UNDEFINED_SIZE) dataSize else UNDEFINED_SIZE)
+        }
+
+        val header = ArrayList<ByteBuffer>(4)
+        header.add(tag.toBytes())
+        if (meta.isNotEmpty()) {
+            header.add(ByteBuffer.wrap(meta))
+            header.add(ByteBuffer.wrap(SEPARATOR))
+        }
+
+        if (dataSize in 0..Int.MAX_VALUE) {
+            header.add(data.read(0L, dataSize.toInt()))
+            writeFully(channel, header.toTypedArray())
+        } else {
+            writeFully(channel, header.toTypedArray())
+            data.channel.use { pipe(it, channel, -1) }
+        }
+    }
+
+    /**
+     * Copy the envelope from one channel to another without parsing meta and loading data into memory
+     */
+    fun transfer(from: ReadableByteChannel, to: WritableByteChannel) {
+        val tag = readTag(from)
+        if (tag.metaSize < 0) {
+            throw EnvelopeFormatException("Meta of undefined size is not supported")
+        }
+        writeFully(to, arrayOf(buffer))
+        pipe(from, to, tag.metaSize.toLong())
+        pipe(from, to, if (tag.dataSize == -1) -1 else Integer.toUnsignedLong(tag.dataSize))
+    }
+
+    /**
+     * Read the tag using transfer buffer. After the call buffer contains the tag.
+     */
+    private fun readTag(channel: ReadableByteChannel): EnvelopeTag {
+        val tag = EnvelopeTag()
+        buffer.clear()
+        buffer.limit(tag.length)
+        readFully(channel, buffer)
+        buffer.flip()
+        tag.read(buffer.duplicate())
+        return tag
+    }
+
+    private fun readMeta(channel: ReadableByteChannel, tag: EnvelopeTag): Meta {
+        val metaSize = tag.metaSize
+        return when {
+            metaSize < 0 -> throw EnvelopeFormatException("Meta of undefined size is not supported")
+            metaSize == 0 -> Meta.buildEmpty(DEFAULT_META_NAME)
+            else -> {
+                val metaBuffer = if (metaSize <= buffer.capacity()) {
+                    buffer.clear()
+                    buffer.limit(metaSize)
+                    buffer
+                } else {
+                    ByteBuffer.allocate(metaSize)
+                }
+                readFully(channel, metaBuffer)
+                try {
+                    tag.metaType.reader.readBuffer(metaBuffer)
+                } catch (ex: ParseException) {
+                    throw EnvelopeFormatException("Error parsing meta", ex)
+                }
+            }
+        }
+    }
+
+    /**
+     * Copy given number of bytes or everything until the end of source if size is negative
+     */
+    private fun pipe(from: ReadableByteChannel, to: WritableByteChannel, size: Long) {
+        var remaining = size
+        while (remaining != 0L) {
+            buffer.clear()
+            if (remaining > 0 && remaining < buffer.capacity()) {
+                buffer.limit(remaining.toInt())
+            }
+            val count = from.read(buffer)
+            if (count < 0) {
+                if (remaining > 0) {
+                    throw EOFException("Unexpected end of channel, $remaining bytes expected")
+                }
+                return
+            }
+            buffer.flip()
+            while (buffer.hasRemaining()) {
+                to.write(buffer)
+            }
+            if (remaining > 0) {
+                remaining -= count
+            }
+        }
+    }
+
+    /**
+     * A single use binary reading data directly from the channel
+     */
+    private class ChannelBinary(override val channel: BoundedChannel, override val size: Long) : Binary {
+        override val stream: InputStream
+            get() = Channels.newInputStream(channel)
+    }
+
+    /**
+     * A channel which reads no more than given number of bytes from the source. Does not close the source.
+     */
+    private class BoundedChannel(private val source: ReadableByteChannel, private var remaining: Long) : ReadableByteChannel {
+        private var open = true
+
+        override fun read(dst: ByteBuffer): Int {
+            if (remaining == 0L) {
+                return -1
+            }
+            if (remaining < 0 || remaining >= dst.remaining()) {
+                return source.read(dst).also { if (remaining > 0 && it > 0) remaining -= it }
+            }
+            val limit = dst.limit()
+            dst.limit(dst.position() + remaining.toInt())
+            try {
+                return source.read(dst).also { if (it > 0) remaining -= it }
+            } finally {
+                dst.limit(limit)
+            }
+        }
+
+        override fun isOpen(): Boolean = open
+
+        override fun close() {
+            open = false
+        }
+    }
+
+    companion object {
+        const val DEFAULT_BUFFER_SIZE = 64 * 1024
+
+        /**
+         * The size value for data of unknown size. Corresponds to -1 written as unsigned integer.
+         */
+        private const val UNDEFINED_SIZE = 0xFFFFFFFFL
+
+        private fun readFully(channel: ReadableByteChannel, buffer: ByteBuffer) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw EOFException("Unexpected end of channel, ${buffer.remaining()} bytes expected")
+                }
+            }
+        }
+
+        private fun writeFully(channel: WritableByteChannel, buffers: Array<ByteBuffer>) {
+            if (channel is GatheringByteChannel) {
+                while (buffers.any { it.hasRemaining() }) {
+                    channel.write(buffers)
+                }
+            } else {
+                buffers.forEach { buffer ->
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer)
+                    }
+                }
+            }
+        }
+    }
+}
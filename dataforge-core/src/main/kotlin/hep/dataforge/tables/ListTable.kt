@@ -23,7 +23,6 @@ import hep.dataforge.values.ValueMap
 import hep.dataforge.values.ValueProvider
 import hep.dataforge.values.Values
 import java.util.stream.Stream
-import java.util.stream.StreamSupport
 import kotlin.streams.toList
 
 /**
@@ -70,16 +69,26 @@ class ListTable(override val format: TableFormat, points: List<Values>, unsafe:
             throw NameNotFoundException(columnName)
         }
         return object : Column {
+            override val name: String = columnName
+
             override fun getFormat(): ColumnFormat {
                 return this@ListTable.format.getColumn(columnName)
             }
 
             override fun get(n: Int): Value {
-                return asList()[n]
+                return this@ListTable.get(columnName, n)
+            }
+
+            override fun getDouble(n: Int): Double {
+                return getRow(n).getDouble(columnName)
             }
 
             override fun asList(): List<Value> {
-                return StreamSupport.stream(this.spliterator(), false).toList()
+                return object : AbstractList<Value>() {
+                    override val size: Int = this@ListTable.size()
+
+                    override fun get(index: Int): Value = this@ListTable.get(columnName, index)
+                }
             }
 
             override fun stream(): Stream<Value> {
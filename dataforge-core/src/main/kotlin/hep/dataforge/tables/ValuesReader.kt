@@ -17,7 +17,9 @@ package hep.dataforge.tables
 
 import hep.dataforge.io.LineIterator
 import hep.dataforge.values.LateParseValue
+import hep.dataforge.values.Value
 import hep.dataforge.values.ValueMap
+import hep.dataforge.values.ValuesSchema
 import hep.dataforge.values.Values
 import java.io.InputStream
 
@@ -52,6 +54,8 @@ class SimpleValuesParser : ValuesParser {
 
     private val format: Array<String>
 
+    private val schema: ValuesSchema
+
     /**
      *
      *
@@ -61,6 +65,7 @@ class SimpleValuesParser : ValuesParser {
      */
     constructor(format: Array<String>) {
         this.format = format
+        this.schema = ValuesSchema.of(*format)
     }
 
     /**
@@ -70,10 +75,12 @@ class SimpleValuesParser : ValuesParser {
      */
     constructor(line: String) {
         this.format = line.trim { it <= ' ' }.split("[^\\w']*".toRegex()).dropLastWhile { it.isEmpty() }.toTypedArray()
+        this.schema = ValuesSchema.of(*this.format)
     }
 
     constructor(format: TableFormat) {
         this.format = format.namesAsArray()
+        this.schema = ValuesSchema.of(*this.format)
     }
 
     /**
@@ -82,8 +89,22 @@ class SimpleValuesParser : ValuesParser {
      * @param str
      */
     override fun parse(str: String): Values {
-        val strings = str.split("\\s".toRegex())
-        return ValueMap((0 until format.size).associate { format[it] to LateParseValue(strings[it]) })
+        // hand-written whitespace tokenizer, missing trailing values are treated as nulls
+        val values = Array(format.size) { Value.NULL }
+        var column = 0
+        var i = 0
+        while (i < str.length && column < format.size) {
+            if (str[i].isWhitespace()) {
+                i++
+            } else {
+                val start = i
+                while (i < str.length && !str[i].isWhitespace()) {
+                    i++
+                }
+                values[column++] = LateParseValue(str.substring(start, i))
+            }
+        }
+        return ValueMap(schema, values)
     }
 
 }
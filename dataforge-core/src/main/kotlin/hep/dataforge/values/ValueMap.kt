@@ -22,41 +22,41 @@ import hep.dataforge.meta.MetaMorph
 import hep.dataforge.names.Names
 import hep.dataforge.utils.GenericBuilder
 import java.util.*
+import kotlin.streams.toList
 
 /**
- * A simple [Values] implementation using HashMap.
+ * A simple [Values] implementation using an array of values and a shared [ValuesSchema] for names.
  *
  * @author Alexander Nozik
  */
 
-class ValueMap : Values, MetaMorph {
+class ValueMap(val schema: ValuesSchema, private val values: Array<Value>) : Values, MetaMorph {
 
-
-    private val valueMap = LinkedHashMap<String, Value>()
+    init {
+        if (schema.size != values.size) {
+            throw IllegalArgumentException("The number of values ${values.size} does not match schema $schema")
+        }
+    }
 
     /**
      * Serialization constructor
      */
-    constructor(meta: Meta) {
-        meta.valueNames.forEach { valName -> valueMap[valName] = meta.getValue(valName) }
-    }
+    constructor(meta: Meta) : this(meta.valueNames.toList().associate { it to meta.getValue(it) })
 
-    constructor(map: Map<String, Value>) {
-        this.valueMap.putAll(map)
-    }
+    constructor(map: Map<String, Value>) : this(ValuesSchema.of(map.keys), map.values.toTypedArray())
 
     /**
      * {@inheritDoc}
      */
     override fun hasValue(path: String): Boolean {
-        return this.valueMap.containsKey(path)
+        return schema.contains(path)
     }
 
     /**
      * {@inheritDoc}
      */
     override fun getNames(): Names {
-        return Names.of(this.valueMap.keys)
+        return schema.names
     }
 
     /**
@@ -64,7 +64,28 @@ class ValueMap : Values, MetaMorph {
      */
     @Throws(NameNotFoundException::class)
     override fun optValue(name: String): Optional<Value> {
-        return Optional.ofNullable(valueMap[name])
+        val index = schema.indexOf(name)
+        return if (index < 0) Optional.empty() else Optional.of(values[index])
+    }
+
+    override fun getValue(path: String): Value {
+        val index = schema.indexOf(path)
+        return if (index < 0) throw NameNotFoundException(path) else values[index]
+    }
+
+    /**
+     * Get value by its slot in the schema
+     */
+    override fun get(num: Int): Value {
+        return values[num]
+    }
+
+    override fun asMap(): Map<String, Value> {
+        val res = LinkedHashMap<String, Value>()
+        for (i in 0 until schema.size) {
+            res[schema[i]] = values[i]
+        }
+        return res
     }
 
     /**
@@ -85,7 +106,7 @@ class ValueMap : Values, MetaMorph {
     }
 
     fun builder(): Builder {
-        return Builder(LinkedHashMap(valueMap))
+        return Builder(asMap())
     }
 
     override fun toMeta(): Meta {
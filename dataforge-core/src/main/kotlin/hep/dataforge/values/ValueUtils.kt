@@ -22,6 +22,7 @@ import hep.dataforge.providers.Path
 import hep.dataforge.providers.Provider
 import java.io.DataInput
 import java.io.DataOutput
+import java.io.EOFException
 import java.io.IOException
 import java.io.Serializable
 import java.math.BigDecimal
@@ -80,7 +81,7 @@ object ValueUtils {
         override fun compare(x: Number, y: Number): Int {
             val d1 = x.toDouble()
             val d2 = y.toDouble()
-            return if ((d1 != 0.0 || d2 != 0.0) && Math.abs(d1 - d2) / Math.max(d1, d2) < RELATIVE_NUMERIC_PRECISION) {
+            return if ((d1 != 0.0 || d2 != 0.0) && Math.abs(d1 - d2) / Math.max(Math.abs(d1), Math.abs(d2)) < RELATIVE_NUMERIC_PRECISION) {
                 0
             } else if (isSpecial(x) || isSpecial(y)) {
                 java.lang.Double.compare(d1, d2)
@@ -144,7 +145,7 @@ fun DataOutput.writeValue(value: Value) {
         }
     } else {
         when (value.type) {
-            ValueType.NULL -> writeChar('0'.toInt()) // null
+            ValueType.NULL -> writeByte('0'.toInt()) // null
             ValueType.TIME -> {
                 writeByte('T'.toInt())//Instant
                 writeLong(value.time.epochSecond)
@@ -238,6 +239,29 @@ fun DataInput.readValue(): Value {
     }
 }
 
+/**
+ * Skip the value written by [writeValue] without decoding it
+ */
+fun DataInput.skipValue() {
+    val type = readByte().toChar()
+    val size = when (type) {
+        '*' -> {
+            repeat(readShort().toInt()) { skipValue() }
+            0
+        }
+        '0', '+', '-' -> 0
+        'T' -> 16
+        'S' -> readShort().toInt()
+        'D', 'L' -> 8
+        'I' -> 4
+        'N' -> readShort() + 4
+        'X' -> readInt()
+        else -> throw RuntimeException("Wrong value serialization format. Designation $type is unexpected")
+    }
+    if (skipBytes(size) < size) {
+        throw EOFException("Unexpected end of value")
+    }
+}
 
 fun ByteBuffer.getValue(): Value {
     val type = get().toChar()
@@ -0,0 +1,117 @@
+/*
+ * Copyright  2018 Alexander Nozik.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package hep.dataforge.values
+
+import hep.dataforge.exceptions.NamingException
+import hep.dataforge.names.Names
+import hep.dataforge.tables.TableFormat
+import java.io.Serializable
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * An immutable ordered list of value names with name to slot index resolution. Schemas are interned, so all [ValueMap]
+ * instances with the same names (for example all rows of one table) share a single schema instead of each
+ * holding its own keys.
+ *
+ * @author Alexander Nozik
+ */
+class ValuesSchema private constructor(private val nameArray: Array<String>) : Serializable {
+
+    // Transient fields are not restored on deserialization, the instance is replaced by the interned one instead
+    @Transient
+    private val index: Map<String, Int> = HashMap<String, Int>(nameArray.size * 2).apply {
+        nameArray.forEachIndexed { i, name -> put(name, i) }
+    }
+
+    /**
+     * Shared immutable names
+     */
+    @Transient
+    val names: Names = Names.of(*nameArray)
+
+    val size: Int
+        get() = nameArray.size
+
+    /**
+     * Get the slot index of the name or -1 if name is not present
+     */
+    fun indexOf(name: String): Int {
+        return index[name] ?: -1
+    }
+
+    operator fun get(index: Int): String {
+        return nameArray[index]
+    }
+
+    operator fun contains(name: String): Boolean {
+        return index.containsKey(name)
+    }
+
+    override fun equals(other: Any?): Boolean {
+        return this === other || other is ValuesSchema && nameArray.contentEquals(other.nameArray)
+    }
+
+    override fun hashCode(): Int {
+        return nameArray.contentHashCode()
+    }
+
+    override fun toString(): String {
+        return nameArray.joinToString(prefix = "[", postfix = "]")
+    }
+
+    private fun readResolve(): Any {
+        return intern(nameArray)
+    }
+
+    companion object {
+        /**
+         * Maximum number of interned schemas. Schemas created after the limit is reached are not shared.
+         */
+        private const val MAX_INTERNED = 4096
+
+        private val cache = ConcurrentHashMap<List<String>, ValuesSchema>()
+
+        private fun intern(names: Array<out String>): ValuesSchema {
+            val key = names.asList()
+            return cache[key] ?: run {
+                if (names.toSet().size != names.size) {
+                    throw NamingException("Duplicate names in ${names.joinToString()}")
+                }
+                val schema = ValuesSchema(Array(names.size) { names[it] })
+                if (cache.size < MAX_INTERNED) {
+                    cache.putIfAbsent(schema.nameArray.asList(), schema) ?: schema
+                } else {
+                    schema
+                }
+            }
+        }
+
+        @JvmStatic
+        fun of(vararg names: String): ValuesSchema {
+            return intern(names)
+        }
+
+        @JvmStatic
+        fun of(names: Collection<String>): ValuesSchema {
+            return intern(names.toTypedArray())
+        }
+
+        @JvmStatic
+        fun of(format: TableFormat): ValuesSchema {
+            return intern(format.namesAsArray())
+        }
+    }
+}
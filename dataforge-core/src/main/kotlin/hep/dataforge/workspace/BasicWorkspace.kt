@@ -12,10 +12,15 @@ import hep.dataforge.data.Data
 import hep.dataforge.data.DataNode
 import hep.dataforge.data.DataNodeEditor
 import hep.dataforge.data.DataTree
+import hep.dataforge.data.NamedData
+import hep.dataforge.goals.DigestGoal
+import hep.dataforge.goals.Goal
 import hep.dataforge.kodex.optional
 import hep.dataforge.meta.Meta
+import hep.dataforge.meta.MetaBuilder
 import hep.dataforge.workspace.tasks.Task
 import hep.dataforge.workspace.tasks.TaskModel
+import java.util.*
 
 /**
  * A basic data caching workspace
@@ -41,12 +46,77 @@ class BasicWorkspace private constructor(
     }
 
     override fun runTask(model: TaskModel): DataNode<*> {
+        @Suppress("UNCHECKED_CAST")
+        return identify(model, super.runTask(model) as DataNode<Any>)
+    }
+
+    /**
+     * Assign content identity to each result data. Data is identified by the task and by digests of inputs reachable
+     * through its goal dependencies, so after a configuration change only data with changed inputs is recomputed. The
+     * digest of the whole model is used if no inputs are reachable. Data depending on inputs with unknown digest could
+     * not be identified and is neither cached nor assigned a digest.
+     */
+    private fun <T : Any> identify(model: TaskModel, result: DataNode<T>): DataNode<T> {
+        val inputs = IdentityHashMap<Goal<*>, String?>()
+        model.inputData().forEach { inputs[it.goal] = it.digest }
+
+        val idFactory: (NamedData<out T>) -> Meta? = idFactory@{ data ->
+            val digests = TreeSet<String>()
+            if (!collectInputs(data.goal, inputs, digests, Collections.newSetFromMap(IdentityHashMap()))) {
+                return@idFactory null
+            }
+            if (digests.isEmpty()) {
+                digests.add(model.digest ?: return@idFactory null)
+            }
+            MetaBuilder("data")
+                    .setValue("task", model.taskDigest)
+                    .setValue("name", data.name)
+                    .setValue("meta", data.meta.digest)
+                    .apply {
+                        digests.forEach { putNode(MetaBuilder("input").setValue("digest", it)) }
+                    }
+        }
+
         //Cache result if immutable is available and caching is not blocked
         return if (cacheEnabled() && model.meta.getBoolean("immutable.enabled", true)) {
-            cache.cacheNode(model.name, model.toMeta(), super.runTask(model))
+            cache.cacheNode(model.name, result, idFactory)
         } else {
-            super.runTask(model)
+            DataTree.edit(result.type).also {
+                it.name = result.name
+                it.meta = result.meta
+                result.dataStream(true).forEach { data ->
+                    val id = idFactory(data)
+                    if (id == null) {
+                        it.putData(data.name, data.anonymize())
+                    } else {
+                        @Suppress("UNCHECKED_CAST")
+                        val goal = DigestGoal(data.goal as Goal<T>, id.digest)
+                        it.putData(data.name, Data(result.type, goal, data.meta))
+                    }
+                }
+            }.build()
+        }
+    }
+
+    /**
+     * Walk the goal dependencies until goals with known digests. Return false if an input with unknown digest is reached.
+     */
+    private fun collectInputs(goal: Goal<*>, inputs: Map<Goal<*>, String?>, res: MutableSet<String>, visited: MutableSet<Goal<*>>): Boolean {
+        if (!visited.add(goal)) {
+            return true
+        }
+        val digest = if (inputs.containsKey(goal)) {
+            inputs[goal] ?: return false
+        } else {
+            goal.digest
+        }
+        if (digest != null) {
+            res.add(digest)
+            return true
         }
+        var known = true
+        goal.dependencies().forEach { known = collectInputs(it, inputs, res, visited) && known }
+        return known
     }
 
     override fun clean() {
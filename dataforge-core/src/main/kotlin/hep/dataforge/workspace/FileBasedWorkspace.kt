@@ -9,6 +9,7 @@ import java.nio.file.Path
 import java.nio.file.StandardWatchEventKinds
 import java.nio.file.WatchKey
 import java.security.MessageDigest
+import java.util.*
 
 /**
  * Dynamic workspace that is parsed from file using external algorithm. Workspace is reloaded only if file is changed
@@ -17,6 +18,12 @@ class FileBasedWorkspace(private val path: Path, private val parser: (Path) -> W
 
     private var watchJob: Job? = null
 
+    /**
+     * The checksum of the file the current workspace is built from
+     */
+    @Volatile
+    private var checkSum: ByteArray? = null
+
     private val fileMonitor: WatchKey by lazy {
         val service = path.fileSystem.newWatchService()
         path.parent.register(service, StandardWatchEventKinds.ENTRY_MODIFY)
@@ -27,7 +34,9 @@ class FileBasedWorkspace(private val path: Path, private val parser: (Path) -> W
             watchJob = launch {
                 while (true) {
                     fileMonitor.pollEvents().forEach {
-                        if(it.context() == path) {
+                        // event context is relative to the watched directory
+                        if (it.context() == path.fileName && !Arrays.equals(checkSum, getCheckSum())) {
+                            // cached task results are content addressed, so unchanged tasks are not recomputed
                             logger.info("Workspace configuration changed. Invalidating.")
                             invalidate()
                         }
@@ -36,6 +45,7 @@ class FileBasedWorkspace(private val path: Path, private val parser: (Path) -> W
                 }
             }
         }
+        checkSum = getCheckSum()
         return parser(path)
     }
 
@@ -42,6 +42,13 @@ interface Task<out R: Any> : Named, Described {
     val isTerminal: Boolean
         get() = false
 
+    /**
+     * The version of task implementation. Changing the version invalidates cached results of the task.
+     * @return
+     */
+    val version: String
+        get() = ""
+
     /**
      * Build a model for this task
      *
@@ -18,7 +18,6 @@ import hep.dataforge.meta.MetaID
 import hep.dataforge.meta.MetaNode.DEFAULT_META_NAME
 import hep.dataforge.meta.Metoid
 import hep.dataforge.utils.GenericBuilder
-import hep.dataforge.utils.NamingUtils
 import hep.dataforge.values.Value
 import hep.dataforge.values.ValueProvider
 import hep.dataforge.workspace.Workspace
@@ -79,6 +78,39 @@ class TaskModel private constructor(
         return TaskModel(workspace, name, meta, _dependencies)
     }
 
+    /**
+     * The digest of the task computation without its inputs: task name, version and meta
+     */
+    val taskDigest: String by lazy {
+        MetaBuilder("task")
+                .setValue("name", name)
+                .setValue("version", workspace.optTask(name)?.version ?: "")
+                .setValue("meta", meta.digest)
+                .digest
+    }
+
+    /**
+     * Content digest of the task result. Includes [taskDigest] and digests of all dependencies, so it changes if
+     * the task configuration or any of the input data is changed. Context is not included. Null if the digest of any
+     * dependency is not known.
+     */
+    val digest: String? by lazy {
+        val builder = MetaBuilder("task").setValue("task", taskDigest)
+        // the property, not the constructor parameter, holds dependencies added by the builder
+        for (dependency in this.dependencies) {
+            val digest = dependency.digest(workspace) ?: return@lazy null
+            builder.putNode(MetaBuilder("dependency").setValue("digest", digest))
+        }
+        builder.digest
+    }
+
+    /**
+     * Workspace data used by this model directly (not through other tasks)
+     */
+    internal fun inputData(): Stream<out NamedData<*>> {
+        return dependencies.stream().flatMap { it.data(workspace) }
+    }
+
     override fun toMeta(): Meta {
         val id = MetaBuilder("task")
                 .setNode(context.toMeta())
@@ -126,6 +158,25 @@ class TaskModel private constructor(
          * @param workspace
          */
         fun apply(tree: DataNodeEditor<Any>, workspace: Workspace)
+
+        /**
+         * Workspace data used by this dependency
+         */
+        fun data(workspace: Workspace): Stream<out NamedData<*>> {
+            return Stream.empty()
+        }
+
+        /**
+         * Content digest of the dependency or null if the digest of some of its data is not known
+         */
+        fun digest(workspace: Workspace): String? {
+            val builder = MetaBuilder("dependency").putNode("id", toMeta())
+            for (data in data(workspace).sorted(Comparator.comparing<NamedData<*>, String> { it.name }).iterator()) {
+                val digest = data.digest ?: return null
+                builder.putNode(MetaBuilder("data").setValue("name", data.name).setValue("digest", digest))
+            }
+            return builder.digest
+        }
     }
 
     /**
@@ -151,12 +202,7 @@ class TaskModel private constructor(
         //        }
 
         constructor(mask: String, rule: (String) -> String) {
-            this.gatherer = { workspace ->
-                workspace.data.dataStream()
-                        .filter { data ->
-                            NamingUtils.wildcardMatch(mask, data.name)
-                        }
-            }
+            this.gatherer = { workspace -> workspace.data.select(mask) }
             this.pathTransformationRule = rule
             id = MetaBuilder("data").putValue("mask", mask)
         }
@@ -170,9 +216,7 @@ class TaskModel private constructor(
          */
         constructor(type: Class<*>, mask: String, rule: (String) -> String) {
             this.gatherer = { workspace ->
-                workspace.data.dataStream().filter { data ->
-                    NamingUtils.wildcardMatch(mask, data.name) && type.isAssignableFrom(data.type)
-                }
+                workspace.data.select(mask).filter { data -> type.isAssignableFrom(data.type) }
             }
             this.pathTransformationRule = rule
             id = MetaBuilder("data").putValue("mask", mask).putValue("type", type.name)
@@ -184,6 +228,10 @@ class TaskModel private constructor(
          * @param tree
          * @param workspace
          */
+        override fun data(workspace: Workspace): Stream<out NamedData<*>> {
+            return gatherer(workspace)
+        }
+
         override fun apply(tree: DataNodeEditor<Any>, workspace: Workspace) {
             gatherer(workspace).forEach { data ->
                 tree.putData(pathTransformationRule(data.name), data.anonymize())
@@ -201,6 +249,10 @@ class TaskModel private constructor(
             tree.putNode(targetNodeName, workspace.data.getCheckedNode<T>(sourceNodeName, type))
         }
 
+        override fun data(workspace: Workspace): Stream<out NamedData<*>> {
+            return workspace.data.getCheckedNode<T>(sourceNodeName, type).dataStream()
+        }
+
         override fun toMeta(): Meta {
             return MetaBuilder("dataNode")
                     .putValue("source", sourceNodeName)
@@ -242,6 +294,15 @@ class TaskModel private constructor(
             return taskModel.toMeta()
         }
 
+        override fun digest(workspace: Workspace): String? {
+            return taskModel.digest?.let {
+                MetaBuilder("dependency")
+                        .setValue("task", it)
+                        .setValue("key", key)
+                        .digest
+            }
+        }
+
     }
 
     /**
@@ -0,0 +1,100 @@
+/*
+ * Copyright  2018 Alexander Nozik.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package hep.dataforge.cache
+
+import hep.dataforge.context.Context
+import hep.dataforge.context.Global
+import hep.dataforge.kodex.buildMeta
+import hep.dataforge.meta.Meta
+import org.junit.Assert.*
+import org.junit.Test
+import java.nio.file.Files
+
+class DefaultCacheTest {
+
+    private fun manager(config: Meta): DefaultCacheManager {
+        val context = Global.getContext("CACHE_TEST_" + System.nanoTime()).apply {
+            setValue(Context.TEMP_DIRECTORY_CONTEXT_KEY, Files.createTempDirectory("cache").toString())
+        }
+        return DefaultCacheManager(context, config)
+    }
+
+    private fun key(i: Int): Meta = buildMeta("key") { "index" to i }
+
+    @Test
+    fun testMemoryEviction() {
+        val cache = manager(buildMeta { "softCache.size" to 4 }).getCache("test", Meta::class.java, String::class.java)
+        (1..10).forEach { cache.put(key(it), "value $it") }
+        cache.flush()
+        assertTrue(cache.statistics.evictions.get() > 0)
+        // evicted values are restored from disk
+        (1..10).forEach { assertEquals("value $it", cache.get(key(it))) }
+        assertTrue(cache.statistics.diskHits.get() > 0)
+        assertNull(cache.get(key(11)))
+        assertEquals(1, cache.statistics.misses.get())
+    }
+
+    @Test
+    fun testManifest() {
+        val manager = manager(Meta.empty())
+        val cache = manager.getCache("test", Meta::class.java, String::class.java)
+        (1..5).forEach { cache.put(key(it), "value $it") }
+        cache.close()
+        assertTrue(Files.exists(manager.rootCacheDir.resolve("test").resolve("manifest.df")))
+
+        val restored = DefaultCache("test", manager, Meta::class.java, String::class.java)
+        assertTrue(restored.containsKey(key(3)))
+        assertEquals("value 3", restored.get(key(3)))
+        assertEquals(1, restored.statistics.diskHits.get())
+    }
+
+    @Test
+    fun testDiskEviction() {
+        val cache = manager(buildMeta { "fileCache.bytes" to 512 }).getCache("test", Meta::class.java, String::class.java)
+        (1..20).forEach { cache.put(key(it), "value $it") }
+        cache.flush()
+        assertTrue(cache.statistics.diskEvictions.get() > 0)
+        assertEquals(20, cache.statistics.diskWrites.get())
+    }
+
+    @Test
+    fun testCloseNumericKeys() {
+        val cache = manager(buildMeta { "fileCache.enabled" to false }).getCache("test", Meta::class.java, String::class.java)
+        val first = buildMeta("key") { "x" to 1.000001 }
+        val second = buildMeta("key") { "x" to 1.000009 }
+        // the keys are equal as meta, but their digests differ
+        cache.put(first, "first")
+        cache.put(second, "second")
+        assertEquals("first", cache.get(first))
+        assertEquals("second", cache.get(second))
+    }
+
+    @Test
+    fun testClearPending() {
+        val manager = manager(Meta.empty())
+        val cache = manager.getCache("test", Meta::class.java, String::class.java)
+        (1..50).forEach { cache.put(key(it), "value $it") }
+        cache.clear()
+        cache.flush()
+        // writes scheduled before clearing do not restore entries
+        (1..50).forEach { assertFalse(cache.containsKey(key(it))) }
+        val dir = manager.rootCacheDir.resolve("test")
+        if (Files.exists(dir)) {
+            Files.list(dir).use { files -> assertFalse(files.anyMatch { it.fileName.toString().startsWith("String") }) }
+        }
+    }
+}
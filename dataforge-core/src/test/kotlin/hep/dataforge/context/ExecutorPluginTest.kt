@@ -0,0 +1,79 @@
+/*
+ * Copyright  2018 Alexander Nozik.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package hep.dataforge.context
+
+import hep.dataforge.actions.OneToOneAction
+import hep.dataforge.data.DataTree
+import hep.dataforge.description.Blocking
+import hep.dataforge.kodex.buildMeta
+import hep.dataforge.meta.Laminate
+import hep.dataforge.meta.Meta
+import org.junit.Assert.*
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ForkJoinWorkerThread
+import java.util.concurrent.TimeUnit
+
+class ExecutorPluginTest {
+
+    private fun context(meta: Meta): Context {
+        return Global.getContext("EXECUTOR_TEST_" + System.nanoTime()).apply {
+            load(DefaultExecutorPlugin::class.java, meta)
+        }
+    }
+
+    open class ThreadAction : OneToOneAction<Int, Boolean>() {
+        override fun execute(context: Context, name: String, input: Int, meta: Laminate): Boolean {
+            return Thread.currentThread() is ForkJoinWorkerThread
+        }
+    }
+
+    @Blocking
+    class BlockingThreadAction : ThreadAction()
+
+    private fun runsOnCompute(context: Context, action: ThreadAction, meta: Meta): Boolean {
+        val data = DataTree.edit(Int::class.javaObjectType).apply { putStatic("a", 1) }.build()
+        return action.run(context, data, meta).getData("a").get()
+    }
+
+    @Test
+    fun testIOExecutor() {
+        val context = context(buildMeta {
+            "threads" to 2
+            "io.threads" to 8
+        })
+        // all blocked tasks are running at the same time
+        val latch = CountDownLatch(8)
+        (1..8).forEach {
+            context.executors.ioExecutor.submit {
+                latch.countDown()
+                latch.await()
+            }
+        }
+        assertTrue(latch.await(5, TimeUnit.SECONDS))
+        assertNotSame(context.executors.defaultExecutor, context.executors.ioExecutor)
+    }
+
+    @Test
+    fun testActionDispatch() {
+        val context = context(Meta.empty())
+        assertTrue(runsOnCompute(context, ThreadAction(), Meta.empty()))
+        assertFalse(runsOnCompute(context, BlockingThreadAction(), Meta.empty()))
+        assertFalse(runsOnCompute(context, ThreadAction(), buildMeta { "@blocking" to true }))
+        assertTrue(runsOnCompute(context, BlockingThreadAction(), buildMeta { "@blocking" to false }))
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright  2018 Alexander Nozik.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package hep.dataforge.data
+
+import hep.dataforge.actions.StreamingManyToOneAction
+import hep.dataforge.actions.StreamingOneToOneAction
+import hep.dataforge.context.Context
+import hep.dataforge.context.Global
+import hep.dataforge.description.TypedActionDef
+import hep.dataforge.kodex.buildMeta
+import hep.dataforge.meta.Laminate
+import hep.dataforge.meta.Meta
+import org.junit.Assert.*
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.stream.Collectors
+
+class ChunkStreamTest {
+
+    /**
+     * Counts chunks which are produced, but not yet consumed
+     */
+    private val alive = AtomicInteger()
+    private val maxAlive = AtomicInteger()
+
+    private fun source(chunks: Int, size: Int): ChunkStream<IntArray> {
+        return ChunkStream(IntArray::class.java) {
+            (0 until chunks).asSequence().map { i ->
+                maxAlive.accumulateAndGet(alive.incrementAndGet(), Math::max)
+                IntArray(size) { i * size + it }
+            }.iterator()
+        }
+    }
+
+    @TypedActionDef(name = "filter", inputType = IntArray::class, outputType = IntArray::class)
+    class FilterAction : StreamingOneToOneAction<IntArray, IntArray>() {
+        override fun executeChunk(context: Context, name: String, chunk: IntArray, meta: Laminate): IntArray? {
+            return chunk.filter { it % 2 == 0 }.toIntArray().takeIf { it.isNotEmpty() }
+        }
+    }
+
+    @TypedActionDef(name = "sum", inputType = IntArray::class, outputType = java.lang.Long::class)
+    inner class SumAction : StreamingManyToOneAction<IntArray, Long>() {
+        override fun initial(context: Context, nodeName: String, meta: Laminate): Long = 0L
+
+        override fun accumulate(context: Context, dataName: String, result: Long, chunk: IntArray, meta: Laminate): Long {
+            alive.decrementAndGet()
+            return result + chunk.sum()
+        }
+    }
+
+    @Test
+    fun testLazy() {
+        val stream = source(10, 10).map(Int::class.javaObjectType, java.util.function.Function { it.size })
+        assertEquals(0, alive.get())
+        assertEquals(100, stream.sum())
+        // cold stream is recomputed on each iteration
+        assertEquals(10, stream.count())
+        assertEquals(20, alive.get())
+    }
+
+    @Test
+    fun testPipeline() {
+        @Suppress("UNCHECKED_CAST")
+        val node = DataTree.edit(ChunkStream::class.java).apply {
+            putData("run1", source(1000, 100).toData())
+            putData("run2", source(1000, 100).toData())
+        }.build() as DataNode<ChunkStream<IntArray>>
+
+        val filtered = FilterAction().run(Global, node, buildMeta { "streaming.buffer" to 4 })
+        val result = SumAction().run(Global, filtered, Meta.empty()).dataStream().findFirst().get().get()
+
+        val expected = (0 until 100_000).filter { it % 2 == 0 }.map { it.toLong() }.sum() * 2
+        assertEquals(expected, result)
+        // only a few chunks are held in buffers at any moment
+        assertTrue(maxAlive.get() <= 10)
+    }
+
+    @Test
+    fun testBufferedFailure() {
+        val stream = ChunkStream(Int::class.javaObjectType) {
+            (0 until 10).asSequence().map { if (it == 5) throw IllegalStateException() else it }.iterator()
+        }.buffered(2)
+        try {
+            stream.toList()
+            fail()
+        } catch (ex: RuntimeException) {
+            assertTrue(ex.cause is IllegalStateException)
+        }
+    }
+
+    /**
+     * Infinite source which counts down the latch when closed by the producer
+     */
+    private fun infinite(closed: CountDownLatch): ChunkStream<Int> {
+        return ChunkStream(Int::class.javaObjectType) {
+            object : Iterator<Int>, AutoCloseable {
+                private var counter = 0
+                override fun hasNext(): Boolean = true
+                override fun next(): Int = counter++
+                override fun close() = closed.countDown()
+            }
+        }
+    }
+
+    @Test
+    fun testEarlyStop() {
+        val closed = CountDownLatch(1)
+        val first = infinite(closed).buffered(2).map(Int::class.javaObjectType, java.util.function.Function { it * 2 })
+                .stream().use { it.limit(3).collect(Collectors.toList()) }
+        assertEquals(listOf(0, 2, 4), first)
+        // closing the stream stops the producer
+        assertTrue(closed.await(5, TimeUnit.SECONDS))
+    }
+
+    @Test
+    fun testAbandonedIterator() {
+        val closed = CountDownLatch(1)
+        assertEquals(0, infinite(closed).buffered(2).iterator().next())
+        // the producer stops when the iterator is collected
+        var attempts = 0
+        while (!closed.await(100, TimeUnit.MILLISECONDS) && attempts++ < 50) {
+            System.gc()
+        }
+        assertEquals(0, closed.count)
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright  2018 Alexander Nozik.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package hep.dataforge.data
+
+import hep.dataforge.kodex.buildMeta
+import hep.dataforge.meta.Meta
+import org.junit.Assert.*
+import org.junit.Test
+import java.util.stream.Collectors
+
+class DataTreeTest {
+
+    private val tree = DataTree.edit(Int::class.javaObjectType).apply {
+        meta = buildMeta { "level" to "root" }
+        (1..3).forEach { i ->
+            (1..3).forEach { j ->
+                putStatic("node$i.sub$j.data", i * 10 + j, Meta.empty())
+                putStatic("node$i.data$j", i * 10 + j, Meta.empty())
+            }
+        }
+        putNode("extra", DataTree.edit(Int::class.javaObjectType).apply {
+            meta = buildMeta { "level" to "extra" }
+            putStatic("data", 0, Meta.empty())
+        }.build())
+    }.build()
+
+    private fun names(mask: String): Set<String> {
+        return tree.select(mask).map { it.name }.collect(Collectors.toSet())
+    }
+
+    @Test
+    fun testLookup() {
+        val data = tree.getData("node2.sub3.data")
+        assertEquals(23, data.get())
+        assertEquals("root", data.meta.getString("level"))
+        assertEquals("extra", tree.getData("extra.data").meta.getString("level"))
+        assertNull(tree.optData("node4.data1"))
+        assertNull(tree.optData("node1.sub1"))
+    }
+
+    @Test
+    fun testSelect() {
+        assertEquals(setOf("node1.sub1.data", "node1.sub2.data", "node1.sub3.data"), names("node1.sub*"))
+        assertEquals(setOf("node3.data1", "node3.data2", "node3.data3"), names("node3.data?"))
+        assertEquals(setOf("node2.sub2.data"), names("node2.sub2.data"))
+        assertEquals(19, names("*").size)
+        assertTrue(names("node4.*").isEmpty())
+        // dots are matched literally
+        assertTrue(names("node1xsub1.data").isEmpty())
+        // the result is the same as a full scan
+        val scan = tree.dataStream().map { it.name }.filter { it.endsWith("2") }.collect(Collectors.toSet())
+        assertEquals(scan, names("*2"))
+        assertEquals("extra", tree.select("extra.*").findFirst().get().meta.getString("level"))
+    }
+
+    @Test
+    fun testMetaCache() {
+        val node = tree.getNode("extra")
+        assertSame(node.meta, node.meta)
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright  2018 Alexander Nozik.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package hep.dataforge.data.binary
+
+import hep.dataforge.io.envelopes.DefaultEnvelopeReader
+import hep.dataforge.io.envelopes.DefaultEnvelopeType
+import hep.dataforge.io.envelopes.EnvelopeBuilder
+import hep.dataforge.meta.MetaBuilder
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.nio.file.Files
+
+class MappedBinaryTest {
+
+    private val bytes = ByteArray(1000) { it.toByte() }
+
+    @Test
+    fun testWindows() {
+        val file = Files.createTempFile("binary", ".bin")
+        try {
+            Files.write(file, bytes)
+            // small windows to check reads across window boundaries
+            val binary = MappedBinary(file, 10, 900, 64)
+            assertEquals(900L, binary.size)
+            assertEquals(20.toByte(), binary.read(10L, 4).get(0))
+            assertEquals(70.toByte(), binary.read(60L, 8).get(0))
+            assertArrayEquals(bytes.copyOfRange(10, 910), binary.stream.readBytes())
+            assertArrayEquals(bytes.copyOfRange(510, 910), binary.stream(500).readBytes())
+        } finally {
+            Files.delete(file)
+        }
+    }
+
+    @Test
+    fun testEnvelope() {
+        val file = Files.createTempFile("envelope", ".df")
+        try {
+            val envelope = EnvelopeBuilder().setMeta(MetaBuilder().setValue("key", "value")).setData(bytes).build()
+            Files.newOutputStream(file).use { DefaultEnvelopeType.INSTANCE.writer.write(it, envelope) }
+
+            val res = DefaultEnvelopeReader.INSTANCE.read(file)
+            assertTrue(res.data is MappedBinary)
+            assertEquals(bytes.size.toLong(), res.data.size)
+            assertEquals(100.toByte(), res.data.read(100, 1).get())
+            assertEquals("value", res.meta.getString("key"))
+        } finally {
+            Files.delete(file)
+        }
+    }
+}
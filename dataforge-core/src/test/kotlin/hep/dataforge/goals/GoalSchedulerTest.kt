@@ -0,0 +1,103 @@
+/*
+ * Copyright  2018 Alexander Nozik.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package hep.dataforge.goals
+
+import hep.dataforge.context.Global
+import hep.dataforge.kodex.buildMeta
+import org.junit.Assert.*
+import org.junit.Test
+import java.util.*
+import java.util.concurrent.CancellationException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.Function
+import java.util.function.Supplier
+
+class GoalSchedulerTest {
+
+    private fun scheduler(cpu: Int): GoalScheduler {
+        return Global.getContext("SCHEDULER_TEST_" + System.nanoTime()).load(GoalScheduler::class.java, buildMeta { "limits.cpu" to cpu })
+    }
+
+    @Test
+    fun testLimits() {
+        val running = AtomicInteger()
+        val maxRunning = AtomicInteger()
+        val goals = (1..10).map { i ->
+            GeneratorGoal(Supplier {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max)
+                Thread.sleep(20)
+                running.decrementAndGet()
+                i
+            })
+        }
+        val schedule = scheduler(2).schedule(GoalGroup(goals))
+        schedule.future.get(10, TimeUnit.SECONDS)
+        assertTrue(goals.all { it.isDone })
+        assertTrue(maxRunning.get() <= 2)
+        assertEquals(1.0, schedule.progress, 0.0)
+        assertEquals(11, schedule.total)
+    }
+
+    @Test
+    fun testCriticalPath() {
+        val started = Collections.synchronizedList(ArrayList<String>())
+        fun generator(name: String) = GeneratorGoal(Supplier { started.add(name); Thread.sleep(10); 0 })
+        fun pipe(name: String, source: Goal<Int>) = PipeGoal(source, Function<Int, Int> { started.add(name); Thread.sleep(10); it })
+
+        val independent = (1..3).map { generator("i$it") }
+        val chainStart = generator("c1")
+        val chain = pipe("c3", pipe("c2", chainStart))
+
+        val schedule = scheduler(1).schedule(GoalGroup(independent + chain))
+        schedule.future.get(10, TimeUnit.SECONDS)
+        assertEquals("c1", started.first())
+        assertTrue(started.indexOf("c2") < started.indexOf("i1"))
+    }
+
+    @Test
+    fun testCancel() {
+        val first = GeneratorGoal(Supplier { Thread.sleep(200); 1 })
+        val second = PipeGoal(first, Function<Int, Int> { it + 1 })
+        val target = PipeGoal(second, Function<Int, Int> { it + 1 })
+        val schedule = scheduler(1).schedule(target)
+        schedule.cancel()
+        assertTrue(schedule.isCancelled)
+        assertTrue(target.isCancelled)
+        assertTrue(second.isCancelled)
+        try {
+            schedule.future.get(1, TimeUnit.SECONDS)
+            fail()
+        } catch (ex: CancellationException) {
+            //expected
+        }
+    }
+
+    @Test
+    fun testCancelPropagation() {
+        val first = GeneratorGoal(Supplier { Thread.sleep(200); 1 })
+        val second = PipeGoal(first, Function<Int, Int> { it + 1 })
+        val other = GeneratorGoal(Supplier { 2 })
+        val schedule = scheduler(1).schedule(GoalGroup(listOf(second, other)))
+        first.cancel(true)
+        assertTrue(second.isCancelled)
+        schedule.future.get(10, TimeUnit.SECONDS)
+        assertTrue(other.isDone && !other.isCancelled)
+        // the cancelled goal, its dependent and the group
+        assertEquals(3, schedule.failed)
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright  2018 Alexander Nozik.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package hep.dataforge.io
+
+import hep.dataforge.tables.*
+import hep.dataforge.values.ValueType
+import org.junit.Assert.*
+import org.junit.Test
+import java.nio.ByteBuffer
+import java.nio.file.Files
+
+class TextTableParserTest {
+
+    private val text = """
+        #f a b c
+        1   2.5    first
+        # comment
+
+        -4  1e-3   second
+        7   @null
+    """.trimIndent()
+
+    @Test
+    fun testParse() {
+        val table = TextTableParser("a", "b", "c").parse(ByteBuffer.wrap(text.toByteArray()))
+        assertEquals(3, table.size())
+        assertTrue(table.getColumn("a") is LongColumn)
+        assertTrue(table.getColumn("b") is DoubleColumn)
+        assertEquals(-4.0, table.getDouble("a", 1), 0.0)
+        assertEquals(1e-3, table.getDouble("b", 1), 0.0)
+        assertTrue(table.get("b", 2).isNull)
+        assertTrue(table.get("c", 2).isNull)
+        assertEquals(ValueType.STRING, table.get("c", 0).type)
+        assertEquals("second", table.get("c", 1).string)
+    }
+
+    @Test
+    fun testParallel() {
+        val format = MetaTableFormat.forNames("x", "y")
+        val file = Files.createTempFile("table", ".dat")
+        try {
+            Files.newBufferedWriter(file).use { writer ->
+                writer.write(IOUtils.formatCaption(format))
+                writer.newLine()
+                for (i in 0 until 200_000) {
+                    writer.write("$i\t${i * 0.25}\n")
+                }
+            }
+            val table = TextTableParser(format).parse(file, 4)
+            assertEquals(200_000, table.size())
+            assertEquals(199_999.0 * 200_000 / 2, table.getColumn("x").doubleStream().sum(), 0.0)
+            assertEquals(0.25 * 1234, table.getDouble("y", 1234), 0.0)
+            // the reference row is read by the line based reader
+            val expected = Files.newInputStream(file).use {
+                ValuesReader(it, arrayOf("x", "y")).asSequence().elementAt(5000)
+            }
+            assertEquals(expected.toMeta(), table.getRow(5000).toMeta())
+        } finally {
+            Files.delete(file)
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright  2018 Alexander Nozik.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package hep.dataforge.io.envelopes
+
+import hep.dataforge.meta.Meta
+import hep.dataforge.meta.MetaBuilder
+import hep.dataforge.io.ByteBufferDataInput
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.nio.ByteBuffer
+
+class CompactMetaTypeTest {
+
+    private val meta = MetaBuilder("device")
+            .setValue("name", "voltmeter")
+            .setValue("port", 8080)
+            .setValue("gain", 1.5)
+            .setValue("enabled", true)
+            .setValue("range", listOf(0.0, 10.0))
+            .putNode(MetaBuilder("channel").setValue("name", "A").setValue("gain", 2.0))
+            .putNode(MetaBuilder("channel").setValue("name", "B")
+                    .putNode(MetaBuilder("filter").setValue("name", "lowpass")))
+
+    private fun write(type: MetaType, meta: Meta): ByteArray {
+        return ByteArrayOutputStream().also { type.writer.write(it, meta) }.toByteArray()
+    }
+
+    @Test
+    fun testWriteRead() {
+        val bytes = write(compactMetaType, meta)
+        val res = compactMetaType.reader.read(ByteArrayInputStream(bytes), bytes.size.toLong())
+        assertEquals(meta, res)
+        assertEquals("device", res.name)
+        assertEquals("lowpass", res.getString("channel[1].filter.name"))
+
+        // read without known length
+        assertEquals(meta, compactMetaType.reader.read(ByteArrayInputStream(bytes), -1))
+    }
+
+    @Test
+    fun testReadBuffer() {
+        val bytes = write(compactMetaType, meta)
+        val buffer = ByteBuffer.allocateDirect(bytes.size + 2)
+        buffer.put(bytes).put(DefaultEnvelopeType.SEPARATOR)
+        assertEquals(meta, compactMetaType.reader.readBuffer(buffer))
+    }
+
+    @Test
+    fun testSize() {
+        assertTrue(write(compactMetaType, meta).size < write(binaryMetaType, meta).size)
+    }
+
+    @Test
+    fun testEnvelope() {
+        val output = ByteArrayOutputStream()
+        StreamingEnvelopeCodec(compactMetaType).write(output, EnvelopeBuilder().setMeta(meta).build())
+        val res = DefaultEnvelopeReader.INSTANCE.read(ByteArrayInputStream(output.toByteArray()))
+        assertEquals("voltmeter", res.meta.getString("name"))
+        assertEquals(2, res.meta.getMetaList("channel").size)
+    }
+
+    @Test
+    fun testReadLine() {
+        val bytes = "first\r\nsecond\rthird\nlast".toByteArray()
+        val input = ByteBufferDataInput(ByteBuffer.wrap(bytes))
+        val reference = DataInputStream(ByteArrayInputStream(bytes))
+        (1..5).forEach { assertEquals(reference.readLine(), input.readLine()) }
+        assertNull(input.readLine())
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright  2018 Alexander Nozik.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package hep.dataforge.io.envelopes
+
+import hep.dataforge.meta.Meta
+import hep.dataforge.meta.MetaBuilder
+import org.junit.Assert.*
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.ObjectInputStream
+import java.io.ObjectOutputStream
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import kotlin.streams.toList
+
+class LazyMetaTest {
+
+    private val meta = MetaBuilder("message")
+            .setValue("@message.target", "storage")
+            .setValue("format", listOf("a", "b"))
+            .setValue("size", 12)
+            .putNode(MetaBuilder("channel").setValue("name", "A").setValue("gain", 2.0))
+            .putNode(MetaBuilder("channel").setValue("name", "B")
+                    .putNode(MetaBuilder("filter").setValue("name", "lowpass")))
+
+    private val bytes = ByteArrayOutputStream().also { compactMetaType.writer.write(it, meta) }.toByteArray()
+
+    @Test
+    fun testAccess() {
+        val lazy = LazyMeta(ByteBuffer.wrap(bytes))
+        assertEquals("message", lazy.name)
+        assertEquals("storage", lazy.getString("@message.target"))
+        assertEquals(12, lazy.getInt("size"))
+        assertEquals(2, lazy.getValue("format").list.size)
+        assertEquals("lowpass", lazy.getString("channel[1].filter.name"))
+        assertEquals(2.0, lazy.getMeta("channel[name=A]").getDouble("gain"), 0.0)
+        assertEquals(listOf("format", "size"), lazy.valueNames.toList())
+        assertFalse(lazy.hasValue("channel.gain.missing"))
+        assertEquals(meta, lazy)
+    }
+
+    @Test
+    fun testSerialization() {
+        val output = ByteArrayOutputStream()
+        ObjectOutputStream(output).use { it.writeObject(LazyMeta(ByteBuffer.wrap(bytes))) }
+        val res = ObjectInputStream(ByteArrayInputStream(output.toByteArray())).use { it.readObject() as Meta }
+        assertEquals(meta, res)
+    }
+
+    @Test
+    fun testEnvelopeFile() {
+        val file = Files.createTempFile("lazy", ".df")
+        try {
+            Files.newOutputStream(file).use {
+                DefaultEnvelopeWriter(DefaultEnvelopeType.INSTANCE, compactMetaType).write(it, EnvelopeBuilder().setMeta(meta).build())
+            }
+            val envelope = DefaultEnvelopeReader.INSTANCE.read(file)
+            assertTrue(envelope.meta is LazyMeta)
+            assertEquals("storage", envelope.meta.getString("@message.target"))
+        } finally {
+            Files.delete(file)
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright  2018 Alexander Nozik.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package hep.dataforge.io.envelopes
+
+import hep.dataforge.data.binary.StreamBinary
+import hep.dataforge.meta.MetaBuilder
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.nio.channels.Channels
+
+class StreamingEnvelopeCodecTest {
+
+    private val meta = MetaBuilder().setValue("key", "value")
+    private val bytes = ByteArray(100_000) { (it % 251).toByte() }
+
+    @Test
+    fun testWriteRead() {
+        val codec = StreamingEnvelopeCodec(bufferSize = 1024)
+        val output = ByteArrayOutputStream()
+        codec.write(output, EnvelopeBuilder().setMeta(meta).setData(bytes).build())
+
+        val res = DefaultEnvelopeReader.INSTANCE.read(ByteArrayInputStream(output.toByteArray()))
+        assertEquals("value", res.meta.getString("key"))
+        assertArrayEquals(bytes, res.data.stream.readBytes())
+
+        val streamed = codec.open(Channels.newChannel(ByteArrayInputStream(output.toByteArray())))
+        assertEquals(bytes.size.toLong(), streamed.data.size)
+        assertArrayEquals(bytes, streamed.data.stream.readBytes())
+    }
+
+    @Test
+    fun testUnknownSize() {
+        val codec = StreamingEnvelopeCodec(bufferSize = 1024)
+        val envelope = EnvelopeBuilder().setMeta(meta).setData(StreamBinary { ByteArrayInputStream(bytes) }).build()
+        val output = ByteArrayOutputStream()
+        codec.write(output, envelope)
+
+        // copy the envelope without parsing
+        val copy = ByteArrayOutputStream()
+        codec.transfer(Channels.newChannel(ByteArrayInputStream(output.toByteArray())), Channels.newChannel(copy))
+        assertArrayEquals(output.toByteArray(), copy.toByteArray())
+
+        val res = codec.read(ByteArrayInputStream(copy.toByteArray()))
+        assertEquals("value", res.meta.getString("key"))
+        assertArrayEquals(bytes, res.data.stream.readBytes())
+    }
+}
@@ -16,7 +16,9 @@
 
 package hep.dataforge.meta
 
+import hep.dataforge.kodex.toList
 import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
 import org.junit.Test
 
 class LaminateTest {
@@ -32,4 +34,32 @@ class LaminateTest {
         assertEquals(3, laminate.toString().split("\n".toRegex()).dropLastWhile { it.isEmpty() }.toTypedArray().size.toLong())
     }
 
+    @Test
+    fun testResolution() {
+        val first = MetaBuilder("first").putValue("a", 1).putNode(MetaBuilder("child").putValue("b", 2)).build()
+        val second = MetaBuilder("second").putValue("a", 3).putValue("c", 4)
+                .putNode(MetaBuilder("child").putValue("b", 5).putValue("d", 6)).build()
+        val laminate = Laminate(first, second)
+        assertEquals(1, laminate.getInt("a"))
+        assertEquals(4, laminate.getInt("c"))
+        assertEquals(2, laminate.getInt("child.b"))
+        assertEquals(listOf("a", "c"), laminate.valueNames.toList())
+        val child = laminate.getMeta("child")
+        assertTrue(child === laminate.getMeta("child"))
+        assertEquals(6, child.getInt("d"))
+    }
+
+    @Test
+    fun testMutableLayer() {
+        val mutable = MetaBuilder("mutable").putValue("a", 1)
+        val laminate = Laminate(mutable, MetaBuilder("immutable").putValue("a", 2).putValue("b", 3).build())
+        assertEquals(1, laminate.getInt("a"))
+        mutable.setValue("a", 10)
+        mutable.putNode(MetaBuilder("child").putValue("c", 4))
+        assertEquals(10, laminate.getInt("a"))
+        assertEquals(4, laminate.getInt("child.c"))
+        mutable.getMeta("child").setValue("c", 5)
+        assertEquals(5, laminate.getInt("child.c"))
+    }
+
 }
\ No newline at end of file
@@ -18,6 +18,7 @@ package hep.dataforge.meta
 import hep.dataforge.exceptions.NamingException
 import org.junit.After
 import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotEquals
 import org.junit.Before
 import org.junit.Test
 
@@ -74,4 +75,33 @@ class MetaTest {
         println("Missing path search")
         assertEquals("otherGrandChildValue", testAnnotation.getString("child[2].grandChild.grandChildValue"))
     }
+
+    @Test
+    fun testStructuralHash() {
+        val first = MetaBuilder("meta")
+                .putValue("a", 1)
+                .putValue("b", "text")
+                .putNode(MetaBuilder("child").putValue("c", 2.5))
+        val second = MetaBuilder("meta")
+                .putNode(MetaBuilder("child").putValue("c", "2.5"))
+                .putValue("b", "text")
+                .putValue("a", 1.0)
+        assertEquals(first, second)
+        assertEquals(first.hashCode(), second.hashCode())
+        assertEquals(first.hashCode(), first.sealed.hashCode())
+        assertEquals(first.digest, second.sealed.digest)
+
+        val map = hashMapOf<Meta, String>(first.sealed to "value")
+        assertEquals("value", map[second])
+
+        val other = second.sealed.builder.setValue("a", 2)
+        assertNotEquals(first.digest, other.digest)
+
+        // numbers equal within relative precision have equal hashes, but different digests
+        val close1 = MetaBuilder("meta").putValue("x", 1.000001)
+        val close2 = MetaBuilder("meta").putValue("x", 1.000009)
+        assertEquals(close1, close2)
+        assertEquals(close1.hashCode(), close2.hashCode())
+        assertNotEquals(close1.digest, close2.digest)
+    }
 }
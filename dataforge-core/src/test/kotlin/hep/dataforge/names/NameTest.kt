@@ -18,6 +18,7 @@ package hep.dataforge.names
 
 import org.junit.Assert
 import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
 import org.junit.Test
 
 class NameTest {
@@ -43,4 +44,26 @@ class NameTest {
         assertEquals(3, name.length.toLong())
     }
 
+    @Test
+    fun testSplit() {
+        assertEquals(listOf("a", "b"), Name.of("a.b.").asArray().toList())
+        assertEquals(listOf("", "a"), Name.of(".a").asArray().toList())
+        assertEquals(Name.EMPTY, Name.of("..."))
+        assertEquals(1, Name.of("a\\.b").length)
+        val query = Name.of("node[key = 2].value[1]")
+        assertEquals("node", query.first.entry())
+        assertEquals("key = 2", query.first.query)
+        assertEquals("1", query.query)
+        assertEquals("node[key = 2].value", query.ignoreQuery().toString())
+    }
+
+    @Test
+    fun testCache() {
+        val name = Name.of("first.second.third")
+        assertTrue(name === Name.of("first.second.third"))
+        assertEquals(name.hashCode(), Name.join("first", "second", "third").hashCode())
+        assertEquals(Name.of("second.third"), name.cutFirst())
+        assertEquals(Name.of("first.second"), name.cutLast())
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,85 @@
+/*
+ * Copyright  2018 Alexander Nozik.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package hep.dataforge.providers
+
+import org.junit.Assert.*
+import org.junit.Test
+import java.lang.reflect.Modifier
+import java.util.stream.Collectors
+
+class ProvidersTest {
+
+    open class Node(val depth: Int) : Provider {
+        @Provides("node")
+        fun optNode(name: String): Node? {
+            return if (depth > 0 && name.startsWith("n")) Node(depth - 1) else null
+        }
+
+        @ProvidesNames("node")
+        fun listNodes(): Collection<String> = (1..depth).map { "n$it" }
+
+        @Provides("value")
+        fun getValue(name: String): String = "$name@$depth"
+
+        override fun getDefaultTarget(): String = "node"
+
+        override fun getDefaultChainTarget(): String = "node"
+    }
+
+    /**
+     * Provider methods are declared in a non-public class, so they could not be accessed via public lookup
+     */
+    private class PrivateProvider : Provider {
+        @Provides("value")
+        fun getValue(name: String): String = "private:$name"
+
+        @ProvidesNames("value")
+        fun listValues(): Collection<String> = listOf("a", "b")
+    }
+
+    @Test
+    fun testDirect() {
+        val root = Node(3)
+        assertEquals(2, root.provide("n1", Node::class.java).get().depth)
+        assertEquals("a@3", root.provide("value::a", String::class.java).get())
+        assertEquals("b@3", root.provide("value", "b", String::class.java).get())
+        assertFalse(root.provide(Path.of("missing::a")).isPresent)
+        assertEquals(setOf("node", "value"), Providers.listTargets(root).toSet())
+        assertEquals(listOf("n1", "n2", "n3"), root.listContent("").collect(Collectors.toList()))
+    }
+
+    @Test
+    fun testChain() {
+        val root = Node(3)
+        assertEquals(0, root.provide("n1/n2/n3", Node::class.java).get().depth)
+        assertEquals("x@1", root.provide("n1/n2/value::x", String::class.java).get())
+        assertFalse(root.provide(Path.of("n1/n2/n3/n4")).isPresent)
+        // tail of a chain shares segments with the parent path
+        val path = Path.of("node::n1/n2/n3")
+        assertEquals("n2", path.optTail().get().name.toString())
+        assertEquals("node", path.optTail().get().target)
+        assertEquals("n3", path.optTail().get().optTail().get().name.toString())
+    }
+
+    @Test
+    fun testNonPublicClass() {
+        val provider = PrivateProvider()
+        assertFalse(Modifier.isPublic(PrivateProvider::class.java.modifiers))
+        assertEquals("private:a", provider.provide("value::a", String::class.java).get())
+        assertEquals(listOf("a", "b"), provider.listContent("value").collect(Collectors.toList()))
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright  2018 Alexander Nozik.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package hep.dataforge.tables
+
+import hep.dataforge.values.Value
+import hep.dataforge.values.ValueType
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.time.Instant
+import kotlin.streams.toList
+
+class PrimitiveColumnTableTest {
+
+    @Test
+    fun testCopy() {
+        val table = ListTable.Builder("a", "b", "c").apply {
+            row(1, 2.5, "first")
+            row(4, 5.5, "second")
+            row(7, 8.5, "first")
+        }.build()
+
+        val primitive = PrimitiveColumnTable.copy(table)
+        assertTrue(primitive.getColumn("a") is LongColumn)
+        assertTrue(primitive.getColumn("b") is DoubleColumn)
+        assertTrue(primitive.getColumn("c") is StringColumn)
+        assertEquals(2, (primitive.getColumn("c") as StringColumn).cardinality)
+        assertEquals(5.5, primitive.getDouble("b", 1), 0.0)
+        assertEquals(16.5, primitive.getColumn("b").doubleStream().sum(), 0.0)
+        assertEquals(table.rows.map { it.toMeta() }.toList(), primitive.rows.map { it.toMeta() }.toList())
+
+        val withNull = PrimitiveColumnTable.copy(ListTable.Builder("n").apply {
+            row(1)
+            row(Value.NULL)
+            row(3)
+        }.build())
+        val longColumn = withNull.getColumn("n")
+        assertTrue(longColumn is LongColumn)
+        assertTrue(longColumn.doubleStream().toArray()[1].isNaN())
+        assertEquals(listOf(1.0, 3.0), longColumn.doubleStream().toList().filter { !it.isNaN() })
+    }
+
+    @Test
+    fun testBuilder() {
+        val time = Instant.parse("2018-01-01T00:00:00.123456789Z")
+        val table = PrimitiveColumnTable.Builder("x", "time").apply {
+            row(Value.NULL, time)
+            row(2.0, time.plusSeconds(1))
+            row(3.0, Value.NULL)
+        }.build()
+
+        assertTrue(table.getColumn("x") is DoubleColumn)
+        assertTrue(table.get("x", 0).isNull)
+        assertTrue(table.getDouble("x", 0).isNaN())
+        assertEquals(ValueType.TIME, table.get("time", 0).type)
+        assertEquals(time, (table.getColumn("time") as InstantColumn).getInstant(0))
+        val timeColumn = table.getColumn("time")
+        assertTrue(timeColumn.doubleStream().toArray()[2].isNaN())
+        assertEquals(timeColumn.getDouble(1), timeColumn.doubleStream().toArray()[1], 0.0)
+        assertEquals(3, table.rows.count())
+    }
+
+    @Test
+    fun testCursor() {
+        val table = PrimitiveColumnTable.Builder("x", "y").apply {
+            (0 until 10).forEach { row(it, it * it) }
+        }.build()
+        val cursor = table.cursor()
+        var sum = 0.0
+        while (cursor.advance()) {
+            sum += cursor.getDouble("y") - cursor.getDouble(0)
+        }
+        assertEquals(240.0, sum, 0.0)
+
+        val listCursor = ListTable.copy(table).cursor()
+        assertEquals(81.0, listCursor.moveTo(9).getDouble("y"), 0.0)
+        assertEquals(table.getRow(3).toMeta(), listCursor.moveTo(3).snapshot().toMeta())
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright  2018 Alexander Nozik.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package hep.dataforge.utils
+
+import org.junit.Assert.*
+import org.junit.Test
+
+class ReferenceRegistryTest {
+
+    @Test
+    fun testAddRemove() {
+        val registry = ReferenceRegistry<String>()
+        listOf("a", "b", "c", "d").forEach { registry.add(it) }
+        assertFalse(registry.add("b"))
+        assertTrue(registry.remove("b"))
+        assertFalse(registry.remove("b"))
+        assertEquals(listOf("a", "c", "d"), registry.toList())
+        registry.add("b")
+        assertEquals(listOf("a", "c", "d", "b"), registry.toList())
+        assertTrue(registry.removeIf { it < "c" })
+        assertEquals(listOf("c", "d"), registry.toList())
+        assertEquals(2, registry.size)
+        registry.clear()
+        assertTrue(registry.isEmpty())
+    }
+
+    @Test
+    fun testIterateWhileModified() {
+        val registry = ReferenceRegistry<Int>()
+        (0 until 10).forEach { registry.add(it) }
+        val res = ArrayList<Int>()
+        val iterator = registry.iterator()
+        res.add(iterator.next())
+        val second = iterator.next()
+        res.add(second)
+        // removing current and following elements does not break iteration
+        registry.remove(second)
+        registry.remove(3)
+        registry.remove(4)
+        iterator.forEachRemaining { res.add(it) }
+        assertEquals(listOf(0, 1, 2, 5, 6, 7, 8, 9), res)
+    }
+
+    @Test
+    fun testWeakReferences() {
+        val registry = ReferenceRegistry<Any>()
+        val strong = Any()
+        registry.add(strong, true)
+        repeat(100) { registry.add(Any(), false) }
+        var attempts = 0
+        while (registry.size > 1 && attempts < 50) {
+            System.gc()
+            Thread.sleep(10)
+            attempts++
+        }
+        assertEquals(1, registry.size)
+        assertSame(strong, registry.first())
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright  2018 Alexander Nozik.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package hep.dataforge.values
+
+import hep.dataforge.meta.MetaMorph
+import hep.dataforge.tables.SimpleValuesParser
+import org.junit.Assert.*
+import org.junit.Test
+
+class ValueMapTest {
+
+    @Test
+    fun testSharedSchema() {
+        val parser = SimpleValuesParser(arrayOf("a", "b"))
+        val first = parser.parse("1 2") as ValueMap
+        val second = ValueMap.Builder().putValue("a", 3).putValue("b", 4).build()
+        assertSame(first.schema, second.schema)
+        assertEquals(4.0, second.getDouble("b"), 0.0)
+        assertEquals(2.0, first[1].double, 0.0)
+        assertFalse(first.optValue("c").isPresent)
+        assertEquals(listOf("a", "b"), second.names.asList())
+    }
+
+    @Test
+    fun testMorph() {
+        val map = ValueMap.of(arrayOf("x", "y"), 1.0, "text")
+        val restored = MetaMorph.morph(ValueMap::class.java, map.toMeta())
+        assertEquals(map.toMeta(), restored.toMeta())
+        assertSame(map.schema, restored.schema)
+    }
+}
@@ -19,6 +19,7 @@ package hep.dataforge.workspace
 import hep.dataforge.cache.CachePlugin
 import hep.dataforge.context.Context
 import hep.dataforge.context.Global
+import hep.dataforge.data.Data
 import hep.dataforge.meta.Laminate
 import hep.dataforge.meta.Meta
 import hep.dataforge.meta.MetaBuilder
@@ -55,6 +56,102 @@ class WorkspaceTest {
         assertEquals(8, counter.get().toLong())
     }
 
+    @Test
+    fun testIncremental() {
+        val context = Global.getContext("INCREMENTAL").apply {
+            load(CachePlugin::class.java, MetaBuilder().setValue("fileCache.enabled", false))
+        }
+        val calls = AtomicInteger()
+        val task = object : PipeTask<Number, Number>("square", Number::class.java, Number::class.java) {
+            override fun buildModel(model: TaskModel.Builder, meta: Meta) {
+                model.data("*")
+            }
+
+            override fun result(context: Context, name: String, input: Number, meta: Laminate): Number {
+                calls.incrementAndGet()
+                return input.toInt() * input.toInt()
+            }
+        }
+
+        fun workspace(vararg data: Int): Workspace {
+            return BasicWorkspace.Builder().apply {
+                this.context = context
+                data.forEachIndexed { index, value -> staticData("data_$index", value) }
+                task(task)
+            }.build()
+        }
+
+        workspace(1, 2, 3).runTask("square", Meta.empty()).dataStream().forEach { it.get() }
+        assertEquals(3, calls.get())
+
+        // only changed data is recomputed in a new workspace with the same cache
+        val res = workspace(1, 5, 3).runTask("square", Meta.empty())
+        assertEquals(25, res.getCheckedData("data_1", Number::class.java).get().toInt())
+        res.dataStream().forEach { it.get() }
+        assertEquals(4, calls.get())
+    }
+
+    @Test
+    fun testUnknownDigest() {
+        val context = Global.getContext("UNKNOWN_DIGEST").apply {
+            load(CachePlugin::class.java, MetaBuilder().setValue("fileCache.enabled", false))
+        }
+        val task = object : PipeTask<Number, Number>("square", Number::class.java, Number::class.java) {
+            override fun buildModel(model: TaskModel.Builder, meta: Meta) {
+                model.data("*")
+            }
+
+            override fun result(context: Context, name: String, input: Number, meta: Laminate): Number {
+                return input.toInt() * input.toInt()
+            }
+        }
+
+        // generated data has no digest, so it is identified neither by its meta nor by the name
+        fun workspace(value: Int): Workspace {
+            return BasicWorkspace.Builder().apply {
+                this.context = context
+                data("data", Data.generate(Number::class.java, Meta.empty()) { value })
+                task(task)
+            }.build()
+        }
+
+        assertEquals(4, workspace(2).runTask("square", Meta.empty()).getCheckedData("data", Number::class.java).get().toInt())
+        assertEquals(9, workspace(3).runTask("square", Meta.empty()).getCheckedData("data", Number::class.java).get().toInt())
+    }
+
+    @Test
+    fun testSerializableDigest() {
+        val context = Global.getContext("SERIALIZABLE_DIGEST").apply {
+            load(CachePlugin::class.java, MetaBuilder().setValue("fileCache.enabled", false))
+        }
+        val calls = AtomicInteger()
+        val task = object : PipeTask<List<*>, Number>("sum", List::class.java as Class<List<*>>, Number::class.java) {
+            override fun buildModel(model: TaskModel.Builder, meta: Meta) {
+                model.data("*")
+            }
+
+            override fun result(context: Context, name: String, input: List<*>, meta: Laminate): Number {
+                calls.incrementAndGet()
+                return input.sumBy { (it as Number).toInt() }
+            }
+        }
+
+        // static data which is not a value is identified by its serialized form
+        fun workspace(vararg data: Int): Workspace {
+            return BasicWorkspace.Builder().apply {
+                this.context = context
+                staticData("data", ArrayList(data.toList()))
+                task(task)
+            }.build()
+        }
+
+        assertEquals(6, workspace(1, 2, 3).runTask("sum", Meta.empty()).getCheckedData("data", Number::class.java).get().toInt())
+        assertEquals(6, workspace(1, 2, 3).runTask("sum", Meta.empty()).getCheckedData("data", Number::class.java).get().toInt())
+        assertEquals(1, calls.get())
+        assertEquals(7, workspace(1, 2, 4).runTask("sum", Meta.empty()).getCheckedData("data", Number::class.java).get().toInt())
+        assertEquals(2, calls.get())
+    }
+
     companion object {
         private val counter = AtomicInteger()
         private lateinit var wsp: Workspace
@@ -21,6 +21,7 @@ import hep.dataforge.stat.models.Model;
 import hep.dataforge.stat.parametric.DerivativeCalculator;
 import hep.dataforge.stat.parametric.ParametricValue;
 import hep.dataforge.tables.NavigableValuesSource;
+import hep.dataforge.tables.RowCursor;
 import hep.dataforge.tables.Table;
 import hep.dataforge.values.Values;
 import org.apache.commons.math3.linear.DiagonalMatrix;
@@ -161,13 +162,13 @@ public class FitState {
      * @return a double.
      */
     public double getChi2(ParamSet set) {
-        int i;
         double res = 0;
         double d;
         double s;
-        for (i = 0; i < this.getDataSize(); i++) {
-            d = this.getDis(i, set);
-            s = this.getDispersion(i, set);
+        RowCursor cursor = points.cursor();
+        while (cursor.advance()) {
+            d = model.distance(cursor, set);
+            s = checkDispersion(model.dispersion(cursor, set));
             res += d * d / s;
         }
         return res;
@@ -198,7 +199,10 @@ public class FitState {
      * @return a double.
      */
     public double getDisDeriv(final String name, final int i, final ParamSet pars) {
-        Values dp = points.getRow(i);
+        return getDisDeriv(name, points.getRow(i), pars);
+    }
+
+    private double getDisDeriv(String name, Values dp, ParamSet pars) {
         if (model.providesDeriv(name)) {
             return model.disDeriv(name, dp, pars);
         } else {
@@ -216,9 +220,12 @@ public class FitState {
      * @return a double.
      */
     public double getDispersion(int i, ParamSet pars) {
-        double res = model.dispersion(points.getRow(i), pars);
-        if (res > 0) {
-            return res;
+        return checkDispersion(model.dispersion(points.getRow(i), pars));
+    }
+
+    private double checkDispersion(double dispersion) {
+        if (dispersion > 0) {
+            return dispersion;
         } else {
             throw new RuntimeException("The returned weight of a data point is infinite. Can not proceed because of infinite point significance.");
         }
@@ -235,8 +242,9 @@ public class FitState {
         if (!model.providesProb()) {
             res = -getChi2(set) / 2;
         } else {
-            for (Values dp : points) {
-                res += model.getLogProb(dp, set);
+            RowCursor cursor = points.cursor();
+            while (cursor.advance()) {
+                res += model.getLogProb(cursor, set);
             }
         }
         if (getPrior() != null) {
@@ -259,15 +267,17 @@ public class FitState {
             double d;
             double s;
             double deriv;
-            for (int i = 0; i < getDataSize(); i++) {
-                d = getDis(i, set);
-                s = getDispersion(i, set);
-                deriv = getDisDeriv(parName, i, set);
+            RowCursor cursor = points.cursor();
+            while (cursor.advance()) {
+                d = model.distance(cursor, set);
+                s = checkDispersion(model.dispersion(cursor, set));
+                deriv = getDisDeriv(parName, cursor, set);
                 res -= d * deriv / s;
             }
         } else {
-            for (Values dp : points) {
-                res += model.getLogProbDeriv(parName, dp, set);
+            RowCursor cursor = points.cursor();
+            while (cursor.advance()) {
+                res += model.getLogProbDeriv(parName, cursor, set);
             }
         }
         if ((getPrior() != null) && (getPrior().getNames().contains(parName))) {
@@ -58,7 +58,7 @@ public class XYModel extends AbstractModel {
     public double disDeriv(String parName, Values point, Values pars) throws NotDefinedException {
         if (source.providesDeriv(parName)) {
             if (source.providesDeriv(parName)) {
-                return derivValue(parName, Adapters.getXValue(adapter, point).getDouble(), pars);
+                return derivValue(parName, Adapters.getXDouble(adapter, point), pars);
             } else {
                 throw new NotDefinedException();
             }
@@ -76,11 +76,11 @@ public class XYModel extends AbstractModel {
     }
 
     private double getWeight(Values point) {
-        if (point.getNames().contains(WEIGHT)) {
+        if (point.hasValue(WEIGHT)) {
             return point.getDouble(WEIGHT);
         } else {
             //TODO add warning on missing error
-            double r = Adapters.optYError(adapter, point).orElse(1d);
+            double r = adapter.getDouble(point, Adapters.Y_ERROR_KEY, 1d);
             return 1d / (r * r);
         }
     }
@@ -90,8 +90,8 @@ public class XYModel extends AbstractModel {
      */
     @Override
     public double distance(Values point, Values pars) {
-        double x = Adapters.getXValue(adapter, point).getDouble();
-        double y = Adapters.getYValue(adapter, point).getDouble();
+        double x = Adapters.getXDouble(adapter, point);
+        double y = Adapters.getYDouble(adapter, point);
         return value(x, pars) - y;
     }
 
@@ -103,7 +103,7 @@ public class XYModel extends AbstractModel {
         double dist = this.distance(point, pars);
         double disp = this.dispersion(point, pars);
         double base; // нормировка
-        double xerr = Adapters.optXError(adapter,point).orElse(0d);
+        double xerr = adapter.getDouble(point, Adapters.X_ERROR_KEY, 0d);
         if (xerr > 0) {
             base = log(2d * Math.PI * sqrt(disp) * xerr);
         } else {
@@ -19,15 +19,13 @@ import hep.dataforge.data.binary.FileBinary
 import hep.dataforge.io.envelopes.*
 import hep.dataforge.meta.Meta
 import org.slf4j.LoggerFactory
-import java.io.ByteArrayOutputStream
 import java.io.IOException
 import java.io.ObjectStreamException
 import java.net.URI
 import java.nio.ByteBuffer
-import java.nio.channels.Channels
+import java.nio.MappedByteBuffer
 import java.nio.channels.FileChannel
 import java.nio.channels.SeekableByteChannel
-import java.nio.charset.Charset
 import java.nio.file.Files
 import java.nio.file.Path
 import java.nio.file.Paths
@@ -81,6 +79,8 @@ open class FileEnvelope protected constructor(val file: Path, val isReadOnly: Bo
         }
 
 
+    private var mapping: MappedByteBuffer? = null
+
     private val tag: EnvelopeTag by lazy {
         buildTag().read(readChannel)
     }
@@ -90,7 +90,7 @@ open class FileEnvelope protected constructor(val file: Path, val isReadOnly: Bo
             readChannel.position(tag.length.toLong())
             val buffer = ByteBuffer.allocate(tag.metaSize)
             readChannel.read(buffer)
-            tag.metaType.reader.readBuffer(buffer)
+            tag.metaType.reader.readLazy(buffer)
         } catch (e: Exception) {
             throw RuntimeException("Can't read meta from file Envelope", e)
         }
@@ -153,20 +153,37 @@ open class FileEnvelope protected constructor(val file: Path, val isReadOnly: Bo
      * @return
      * @throws IOException
      */
-    @Synchronized
     @Throws(IOException::class)
     fun readLine(offset: Int): String {
-        //TODO move to binary?
-        readChannel.position(dataOffset + offset)
-        Channels.newReader(readChannel, "UTF-8").use { stream ->
-            val buffer = ByteArrayOutputStream()
-            var nextChar = stream.read()
-            while (readChannel.position() < readChannel.size() && nextChar != '\r'.toInt()) {
-                buffer.write(nextChar)
-                nextChar = stream.read()
-            }
-            return String(buffer.toByteArray(), Charset.forName("UTF-8")).replace("\\n", NEWLINE)
+        val buffer = dataBuffer()
+        var end = offset
+        while (end < buffer.limit() && buffer.get(end) != '\r'.toByte() && buffer.get(end) != '\n'.toByte()) {
+            end++
+        }
+        val bytes = ByteArray(end - offset)
+        buffer.position(offset)
+        buffer.get(bytes)
+        return String(bytes, Charsets.UTF_8).replace("\\n", NEWLINE)
+    }
+
+    /**
+     * Read-only view of the data. The view is backed by a file mapping which is kept between calls and replaced only
+     * when the data grows beyond it.
+     *
+     * @return the buffer with position 0 and limit equal to the data size
+     * @throws IOException
+     */
+    @Synchronized
+    @Throws(IOException::class)
+    fun dataBuffer(): ByteBuffer {
+        val size = data.size
+        val current = mapping
+        val buffer = if (current == null || current.capacity() < size) {
+            readChannel.map(FileChannel.MapMode.READ_ONLY, dataOffset, size).also { mapping = it }
+        } else {
+            current
         }
+        return buffer.duplicate().also { it.limit(size.toInt()) }
     }
 
 
@@ -174,6 +191,7 @@ open class FileEnvelope protected constructor(val file: Path, val isReadOnly: Bo
     private fun readBlock(pos: Int, length: Int): ByteBuffer {
         val block = ByteBuffer.allocate(length)
         readChannel.read(block, pos.toLong())
+        block.flip()
         return block
     }
 
@@ -186,6 +204,7 @@ open class FileEnvelope protected constructor(val file: Path, val isReadOnly: Bo
     @Throws(IOException::class)
     fun clearData() {
         val header = readBlock(0, dataOffset.toInt())
+        mapping = null
         Files.newByteChannel(file, WRITE, TRUNCATE_EXISTING).use { channel ->
             channel.write(header)
             setDataSize(channel, 0)
@@ -231,6 +250,22 @@ open class FileEnvelope protected constructor(val file: Path, val isReadOnly: Bo
     }
 
 
+    /**
+     * Append several buffers with a single gathering write and update data size only once
+     *
+     * @param buffers
+     * @throws IOException
+     */
+    @Synchronized
+    @Throws(IOException::class)
+    fun append(buffers: Array<ByteBuffer>) {
+        writeChannel.position(eofPos)
+        while (buffers.any { it.hasRemaining() }) {
+            writeChannel.write(buffers)
+        }
+        setDataSize(writeChannel, (writeChannel.size() - dataOffset).toInt())
+    }
+
     @Synchronized
     @Throws(IOException::class)
     fun append(bytes: ByteArray) {
@@ -245,7 +280,66 @@ open class FileEnvelope protected constructor(val file: Path, val isReadOnly: Bo
      */
     @Throws(IOException::class)
     fun appendLine(line: String) {
-        append((line.replace("\n", "\\n") + NEWLINE).toByteArray())
+        append(encodeLine(line))
+    }
+
+    /**
+     * Append lines with escaped new line characters in a single write
+     *
+     * @param lines
+     * @throws IOException
+     */
+    @Throws(IOException::class)
+    fun appendLines(lines: Collection<String>) {
+        append(lines.map { ByteBuffer.wrap(encodeLine(it)) }.toTypedArray())
+    }
+
+    /**
+     * Force all written data and the tag to the storage device
+     *
+     * @throws IOException
+     */
+    @Synchronized
+    @Throws(IOException::class)
+    fun force() {
+        if (isOpenForWrite) {
+            writeChannel.force(true)
+        }
+    }
+
+    /**
+     * Cut the data to given size. Used to drop incomplete records after a failure.
+     *
+     * @param size new data size
+     * @throws IOException
+     */
+    @Synchronized
+    @Throws(IOException::class)
+    fun truncateData(size: Long) {
+        mapping = null
+        writeChannel.truncate(dataOffset + size)
+        setDataSize(writeChannel, size.toInt())
+    }
+
+    /**
+     * Check that data size in the tag matches the actual size of the file and fix the tag if it does not. The data
+     * could be written without the tag update if the process was terminated during append.
+     *
+     * @return true if the tag was changed
+     * @throws IOException
+     */
+    @Synchronized
+    @Throws(IOException::class)
+    fun recover(): Boolean {
+        val actualSize = writeChannel.size() - dataOffset
+        return if (tag.dataSize >= 0 && tag.dataSize.toLong() != actualSize) {
+            LoggerFactory.getLogger(javaClass).warn("Data size in the envelope tag of {} is {}, but actual size is {}. Fixing the tag.",
+                    file, tag.dataSize, actualSize)
+            setDataSize(writeChannel, actualSize.toInt())
+            true
+        } else {
+            false
+        }
     }
 
 
@@ -267,6 +361,10 @@ open class FileEnvelope protected constructor(val file: Path, val isReadOnly: Bo
         //val INFINITE_DATA_SIZE = Integer.toUnsignedLong(-1)
         private const val NEWLINE = "\r\n"
 
+        private fun encodeLine(line: String): ByteArray {
+            return (line.replace("\n", "\\n") + NEWLINE).toByteArray()
+        }
+
         /**
          * Create empty envelope with given meta
          *
@@ -281,11 +379,18 @@ open class FileEnvelope protected constructor(val file: Path, val isReadOnly: Bo
             return FileEnvelope(path, false)
         }
 
+        /**
+         * Open existing envelope. If it is opened for writing, data size in the tag is reconciled with the file size.
+         */
         fun open(path: Path, readOnly: Boolean): FileEnvelope {
             if (!Files.exists(path)) {
                 throw RuntimeException("File envelope does not exist")
             }
-            return FileEnvelope(path, readOnly)
+            return FileEnvelope(path, readOnly).also {
+                if (!readOnly) {
+                    it.recover()
+                }
+            }
         }
 
         fun open(uri: String, readOnly: Boolean): FileEnvelope {
@@ -0,0 +1,432 @@
+/*
+ * Copyright  2018 Alexander Nozik.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package hep.dataforge.storage.filestorage
+
+import hep.dataforge.context.Context
+import hep.dataforge.context.ContextAware
+import hep.dataforge.exceptions.StorageException
+import hep.dataforge.storage.api.ValueIndex
+import hep.dataforge.values.Value
+import hep.dataforge.values.ValueType
+import java.io.IOException
+import java.math.BigDecimal
+import java.math.BigInteger
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption.*
+import java.util.*
+import java.util.stream.Stream
+import java.util.stream.StreamSupport
+import java.util.zip.CRC32
+
+/**
+ * A persistent index for numeric and time values which is never loaded into memory as a whole. The index file is a
+ * sequence of sorted runs of fixed size `(key, offset)` records. Each run starts with a header containing the number
+ * of records, the size of indexed data when the run was written, the checksum of the last indexed bytes and the
+ * minimal and maximal keys of the run (fence keys). The checksums are verified on opening, so the index is rebuilt if
+ * the data was replaced or rewritten.
+ *
+ * Keys are stored as doubles, time values are indexed by epoch milliseconds. Entries are filtered by the exact indexed
+ * value on read, so queries return correct entries for longs above 2^53 and sub-millisecond times, but the order of
+ * entries which are equal after conversion to double is the order they were appended in.
+ *
+ * New entries are collected in memory and written as a new run when `runSize` of them are accumulated. Opening the
+ * index reads only run headers; runs are memory mapped on first access. Range queries skip runs by their fence keys,
+ * find the start of the range in each remaining run by binary search and merge the results. Entries which were not
+ * written to a run are restored from the data on the next update, so the file is always consistent with the data.
+ *
+ * @author Alexander Nozik
+ */
+abstract class FileSortedIndex<T>(
+        override val context: Context,
+        private val file: FileEnvelope,
+        private val runSize: Int = DEFAULT_RUN_SIZE) : ValueIndex<T>, ContextAware {
+
+    private class Run(val position: Long, val size: Int, val dataEnd: Long, val fingerprint: Long, val min: Double, val max: Double) {
+        var buffer: ByteBuffer? = null
+    }
+
+    /**
+     * Iterator over sorted records in a buffer with the records layout
+     */
+    private class Cursor(private val buffer: ByteBuffer, private var index: Int, private val end: Int, private val to: Double) {
+        val key: Double
+            get() = buffer.getDouble(index * ENTRY_SIZE)
+
+        val offset: Long
+            get() = buffer.getLong(index * ENTRY_SIZE + 8)
+
+        fun hasValue(): Boolean = index < end && key <= to
+
+        fun advance() {
+            index++
+        }
+    }
+
+    private val runs = ArrayList<Run>()
+
+    private var pendingKeys = DoubleArray(16)
+    private var pendingOffsets = LongArray(16)
+    private var pendingCount = 0
+
+    /**
+     * The size of the data covered by runs and pending entries
+     */
+    private var indexedSize = 0L
+
+    private var channel: FileChannel? = null
+    private var fileSize = 0L
+
+    private val indexFile: Path
+        get() = context.tmpDir.resolve("storage/fileindex").resolve(indexFileName() + ".sidx")
+
+    protected abstract fun indexFileName(): String
+
+    protected abstract fun readEntry(str: String): T
+
+    protected abstract fun getIndexedValue(entry: T): Value
+
+    private fun readAt(offset: Long): T {
+        try {
+            return readEntry(file.readLine(offset.toInt()))
+        } catch (ex: IOException) {
+            throw RuntimeException("Can't read entry at $offset", ex)
+        }
+    }
+
+    @Throws(IOException::class)
+    private fun open(): FileChannel {
+        channel?.let { return it }
+        val path = indexFile
+        Files.createDirectories(path.parent)
+        val newChannel = FileChannel.open(path, READ, WRITE, CREATE)
+        runs.clear()
+        pendingCount = 0
+        if (!readRuns(newChannel)) {
+            logger.info("Creating new sorted index file {}", path)
+            runs.clear()
+            newChannel.truncate(0)
+            val header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION)
+            header.flip()
+            newChannel.write(header, 0)
+        }
+        fileSize = newChannel.size()
+        indexedSize = runs.lastOrNull()?.dataEnd ?: 0L
+        channel = newChannel
+        return newChannel
+    }
+
+    /**
+     * Read run headers from existing index file. Incomplete last run is dropped.
+     *
+     * @return false if file does not contain a valid index for current data
+     */
+    private fun readRuns(channel: FileChannel): Boolean {
+        val size = channel.size()
+        if (size < HEADER_SIZE) {
+            return false
+        }
+        val header = ByteBuffer.allocate(HEADER_SIZE)
+        channel.read(header, 0)
+        header.flip()
+        if (header.int != MAGIC || header.int != VERSION) {
+            return false
+        }
+        var position = HEADER_SIZE.toLong()
+        val runHeader = ByteBuffer.allocate(RUN_HEADER_SIZE)
+        while (position + RUN_HEADER_SIZE <= size) {
+            runHeader.clear()
+            channel.read(runHeader, position)
+            runHeader.flip()
+            val count = runHeader.int
+            val dataEnd = runHeader.long
+            val fingerprint = runHeader.long
+            val min = runHeader.double
+            val max = runHeader.double
+            val end = position + RUN_HEADER_SIZE + count.toLong() * ENTRY_SIZE
+            if (end > size) {
+                break
+            }
+            runs.add(Run(position + RUN_HEADER_SIZE, count, dataEnd, fingerprint, min, max))
+            position = end
+        }
+        if (position < size) {
+            logger.warn("Dropping incomplete run in index file {}", indexFile)
+            channel.truncate(position)
+        }
+        val dataSize = file.data.size
+        return runs.all { it.dataEnd <= dataSize && it.fingerprint == fingerprint(it.dataEnd) }
+    }
+
+    /**
+     * Checksum of the data bytes preceding given position
+     */
+    private fun fingerprint(dataEnd: Long): Long {
+        val start = maxOf(0L, dataEnd - FINGERPRINT_SIZE)
+        return CRC32().apply { update(file.data.read(start, (dataEnd - start).toInt())) }.value
+    }
+
+    /**
+     * Index all lines appended to the data since last update
+     */
+    @Synchronized
+    @Throws(StorageException::class)
+    fun update() {
+        try {
+            open()
+            val buffer = file.dataBuffer()
+            if (buffer.limit() < indexedSize) {
+                //data was cleared or replaced
+                invalidate()
+                open()
+            }
+            val limit = buffer.limit()
+            var lineStart = indexedSize.toInt()
+            for (pos in lineStart until limit) {
+                if (buffer.get(pos) == '\n'.toByte()) {
+                    val bytes = ByteArray(pos - lineStart)
+                    buffer.position(lineStart)
+                    buffer.get(bytes)
+                    val str = String(bytes, Charsets.UTF_8).trim { it <= ' ' }
+                    if (!str.startsWith("#") && !str.isEmpty()) {
+                        putToIndex(getIndexedValue(readEntry(str)), lineStart.toLong())
+                    }
+                    lineStart = pos + 1
+                    indexedSize = lineStart.toLong()
+                    if (pendingCount >= runSize) {
+                        writeRun()
+                    }
+                }
+            }
+        } catch (ex: IOException) {
+            throw StorageException(ex)
+        }
+    }
+
+    private fun putToIndex(value: Value, offset: Long) {
+        val key = when (value.type) {
+            ValueType.NUMBER, ValueType.TIME -> value.double
+            ValueType.NULL -> return
+            else -> throw StorageException("Value $value could not be used as a key in the sorted index")
+        }
+        if (key.isNaN()) {
+            return
+        }
+        if (pendingCount == pendingKeys.size) {
+            pendingKeys = pendingKeys.copyOf(pendingCount * 2)
+            pendingOffsets = pendingOffsets.copyOf(pendingCount * 2)
+        }
+        pendingKeys[pendingCount] = key
+        pendingOffsets[pendingCount] = offset
+        pendingCount++
+    }
+
+    /**
+     * Pending entries sorted by key in the records layout
+     */
+    private fun sortedPending(): ByteBuffer {
+        val order = (0 until pendingCount).sortedWith(compareBy({ pendingKeys[it] }, { pendingOffsets[it] }))
+        val buffer = ByteBuffer.allocate(pendingCount * ENTRY_SIZE)
+        order.forEach { buffer.putDouble(pendingKeys[it]).putLong(pendingOffsets[it]) }
+        buffer.flip()
+        return buffer
+    }
+
+    @Throws(IOException::class)
+    private fun writeRun() {
+        val entries = sortedPending()
+        val min = entries.getDouble(0)
+        val max = entries.getDouble((pendingCount - 1) * ENTRY_SIZE)
+        val header = ByteBuffer.allocate(RUN_HEADER_SIZE)
+                .putInt(pendingCount).putLong(indexedSize).putLong(fingerprint(indexedSize)).putDouble(min).putDouble(max)
+        header.flip()
+        val channel = open()
+        val buffers = arrayOf(header, entries)
+        channel.position(fileSize)
+        while (entries.hasRemaining()) {
+            channel.write(buffers)
+        }
+        runs.add(Run(fileSize + RUN_HEADER_SIZE, pendingCount, indexedSize, header.getLong(12), min, max))
+        fileSize = channel.position()
+        pendingCount = 0
+    }
+
+    @Throws(IOException::class)
+    private fun runBuffer(run: Run): ByteBuffer {
+        return run.buffer ?: open().map(FileChannel.MapMode.READ_ONLY, run.position, run.size.toLong() * ENTRY_SIZE)
+                .also { run.buffer = it }
+    }
+
+    /**
+     * Create a cursor at the first entry with key not less than `from`
+     */
+    private fun cursor(buffer: ByteBuffer, size: Int, from: Double, to: Double): Cursor {
+        var low = 0
+        var high = size
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (buffer.getDouble(mid * ENTRY_SIZE) < from) {
+                low = mid + 1
+            } else {
+                high = mid
+            }
+        }
+        return Cursor(buffer, low, size, to)
+    }
+
+    /**
+     * Offsets of all entries with keys in given range ordered by key
+     */
+    @Synchronized
+    private fun scan(from: Double, to: Double): Iterator<Long> {
+        update()
+        val queue = PriorityQueue<Cursor>(compareBy { it.key })
+        try {
+            runs.filter { it.max >= from && it.min <= to }.forEach { run ->
+                cursor(runBuffer(run).duplicate(), run.size, from, to).takeIf { it.hasValue() }?.let { queue.add(it) }
+            }
+        } catch (ex: IOException) {
+            throw StorageException(ex)
+        }
+        if (pendingCount > 0) {
+            cursor(sortedPending(), pendingCount, from, to).takeIf { it.hasValue() }?.let { queue.add(it) }
+        }
+        return object : Iterator<Long> {
+            override fun hasNext(): Boolean = queue.isNotEmpty()
+
+            override fun next(): Long {
+                val cursor = queue.poll() ?: throw NoSuchElementException()
+                val res = cursor.offset
+                cursor.advance()
+                if (cursor.hasValue()) {
+                    queue.add(cursor)
+                }
+                return res
+            }
+        }
+    }
+
+    private fun pull(from: Double, to: Double): Stream<T> {
+        val iterator = scan(from, to)
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false)
+                .map { readAt(it) }
+    }
+
+    private fun Value.key(default: Double): Double {
+        return if (type == ValueType.NULL) default else double
+    }
+
+    override fun pull(value: Value): Stream<T> {
+        return pull(value, value)
+    }
+
+    /**
+     * Filter entries found by double keys using the exact indexed values
+     */
+    private fun Stream<T>.exact(from: Value, to: Value): Stream<T> {
+        return filter { entry ->
+            val value = getIndexedValue(entry)
+            (from.type == ValueType.NULL || compareExact(value, from) >= 0) && (to.type == ValueType.NULL || compareExact(value, to) <= 0)
+        }
+    }
+
+    /**
+     * Strict comparison of values. [Value.compareTo] treats numbers with small relative difference as equal.
+     */
+    private fun compareExact(a: Value, b: Value): Int {
+        if (a.type != ValueType.NUMBER || b.type != ValueType.NUMBER) {
+            return a.compareTo(b)
+        }
+        val x = a.double
+        val y = b.double
+        return if (x.isNaN() || y.isNaN() || x.isInfinite() || y.isInfinite()) {
+            java.lang.Double.compare(x, y)
+        } else {
+            a.number.toDecimal().compareTo(b.number.toDecimal())
+        }
+    }
+
+    private fun Number.toDecimal(): BigDecimal {
+        return when (this) {
+            is BigDecimal -> this
+            is BigInteger -> BigDecimal(this)
+            is Long, is Int, is Short, is Byte -> BigDecimal.valueOf(toLong())
+            else -> BigDecimal(toDouble())
+        }
+    }
+
+    override fun pull(from: Value, to: Value): Stream<T> {
+        return pull(from.key(Double.NEGATIVE_INFINITY), to.key(Double.POSITIVE_INFINITY)).exact(from, to)
+    }
+
+    /**
+     * The first entry with the key not less than given value
+     */
+    override fun pullOne(value: Value): Optional<T> {
+        return pull(value.key(Double.NEGATIVE_INFINITY), Double.POSITIVE_INFINITY).exact(value, Value.NULL).findFirst()
+    }
+
+    override val firstKey: Value
+        get() = pull(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY).findFirst()
+                .map { getIndexedValue(it) }.orElseThrow { StorageException("The index is empty") }
+
+    override val lastKey: Value
+        @Synchronized
+        get() {
+            update()
+            val max = maxOf(runs.map { it.max }.max() ?: Double.NEGATIVE_INFINITY,
+                    (0 until pendingCount).map { pendingKeys[it] }.max() ?: Double.NEGATIVE_INFINITY)
+            return pull(max, max).findFirst().map { getIndexedValue(it) }.orElseThrow { StorageException("The index is empty") }
+        }
+
+    /**
+     * Read all keys. This operation reads all indexed entries, so it should be avoided for large data.
+     */
+    override fun keySet(): NavigableSet<Value> {
+        return pull(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY).collect({ TreeSet<Value>() }, { set, it -> set.add(getIndexedValue(it)) }, { set1, set2 -> set1.addAll(set2) })
+    }
+
+    /**
+     * Remove the index file and reset the index
+     */
+    @Synchronized
+    @Throws(StorageException::class)
+    fun invalidate() {
+        try {
+            channel?.close()
+            channel = null
+            runs.clear()
+            pendingCount = 0
+            indexedSize = 0
+            Files.deleteIfExists(indexFile)
+        } catch (ex: IOException) {
+            logger.error("Failed to reset index file {}", indexFile, ex)
+        }
+    }
+
+    companion object {
+        const val DEFAULT_RUN_SIZE = 65536
+
+        private const val MAGIC = 0x44465358//DFSX
+        private const val VERSION = 2
+        private const val HEADER_SIZE = 8
+        private const val RUN_HEADER_SIZE = 36
+        private const val FINGERPRINT_SIZE = 64
+        private const val ENTRY_SIZE = 16
+    }
+}
@@ -24,6 +24,7 @@ package hep.dataforge.storage.filestorage
 import hep.dataforge.exceptions.StorageException
 import hep.dataforge.io.IOUtils
 import hep.dataforge.io.LineIterator
+import hep.dataforge.io.TextTableParser
 import hep.dataforge.isAnonymous
 import hep.dataforge.meta.Meta
 import hep.dataforge.storage.api.Storage
@@ -32,15 +33,83 @@ import hep.dataforge.storage.api.ValueIndex
 import hep.dataforge.storage.commons.DefaultIndex
 import hep.dataforge.tables.*
 import hep.dataforge.values.Value
+import hep.dataforge.values.ValueType
 import hep.dataforge.values.Values
+import kotlinx.coroutines.experimental.Job
+import kotlinx.coroutines.experimental.delay
+import kotlinx.coroutines.experimental.launch
 import java.io.IOException
+import java.nio.file.Files
+import java.nio.file.StandardOpenOption
 import java.util.*
 
 /**
+ * A table loader storing points as text lines.
+ *
+ * By default each push is written to the file immediately. If `writeBuffer.size` is set in loader meta, points are
+ * accumulated in memory and written with a single gathering write and tag update when the buffer is full, when
+ * `writeBuffer.interval` milliseconds pass since the first buffered point, or on explicit [flush]. Set
+ * `writeBuffer.force` to force each flush to the storage device. Buffered points are not visible for reading until
+ * they are flushed.
+ *
+ * Indexes on numeric and time columns are stored as memory mapped sorted runs (see [FileSortedIndex]) and are
+ * updated on each write. `index.runSize` sets the number of entries in a run.
+ *
+ * The data size in the envelope tag is reconciled with the file size when the envelope is opened. Incomplete last
+ * line left by a failure during append is kept unless `repair` is set in loader meta (see [repair]).
+ *
  * @author Alexander Nozik
  */
 class FileTableLoader(storage: Storage, name: String, meta: Meta, file: FileEnvelope) : FileLoader(storage, name, meta, file), TableLoader {
 
+    private val bufferSize: Int by lazy { this.meta.getInt("writeBuffer.size", 0) }
+    private val flushInterval: Long by lazy { this.meta.getValue("writeBuffer.interval", 1000).long }
+    private val forceOnFlush: Boolean by lazy { this.meta.getBoolean("writeBuffer.force", false) }
+
+    private val pending = ArrayList<String>()
+    private var flushJob: Job? = null
+
+    init {
+        if (!file.isReadOnly && this.meta.getBoolean("repair", false)) {
+            repair()
+        }
+    }
+
+    /**
+     * Drop the incomplete last line left by a failure during append. The dropped bytes are saved to a side file
+     * with `.tail` extension next to the loader file. Data without any line break is not changed.
+     *
+     * @return true if the data was changed
+     */
+    fun repair(): Boolean {
+        val data = file.data
+        var pos = data.size
+        while (pos > 0) {
+            val chunk = minOf(pos, 4096L).toInt()
+            val buffer = data.read(pos - chunk, chunk)
+            for (i in chunk - 1 downTo 0) {
+                if (buffer.get(buffer.position() + i) == '\n'.toByte()) {
+                    val validSize = pos - chunk + i + 1
+                    if (validSize == data.size) {
+                        return false
+                    }
+                    val tail = file.file.resolveSibling(file.file.fileName.toString() + ".tail")
+                    val bytes = ByteArray((data.size - validSize).toInt())
+                    data.read(validSize, bytes.size).get(bytes)
+                    Files.write(tail, bytes, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)
+                    logger.warn("Incomplete last line in {} is moved to {}", file.file, tail)
+                    file.truncateData(validSize)
+                    return true
+                }
+            }
+            pos -= chunk
+        }
+        if (data.size > 0) {
+            logger.warn("No complete lines found in {}. The data is left unchanged", file.file)
+        }
+        return false
+    }
+
     override val format: TableFormat by lazy {
         when {
             file.meta.hasMeta("format") -> MetaTableFormat(meta.getMeta("format"))
@@ -54,6 +123,7 @@ class FileTableLoader(storage: Storage, name: String, meta: Meta, file: FileEnve
     }
 
     override fun iterator(): MutableIterator<Values> {
+        flush()
         try {
             val iterator = LineIterator(file.data.stream, "UTF-8")
             return object : MutableIterator<Values> {
@@ -78,23 +148,54 @@ class FileTableLoader(storage: Storage, name: String, meta: Meta, file: FileEnve
 
     }
 
+    /**
+     * Read all points into a column table at once. The data is parsed directly from the mapped file, which is much
+     * faster than iteration.
+     *
+     * @param parallelism the number of threads used for parsing
+     */
+    fun readTable(parallelism: Int = Runtime.getRuntime().availableProcessors()): Table {
+        flush()
+        try {
+            return TextTableParser(format).parse(file.data.buffer, parallelism)
+        } catch (ex: IOException) {
+            throw StorageException("Failed to read table from the loader", ex)
+        }
+    }
+
     private fun buildIndex(name: String?): ValueIndex<Values> {
-        return if (name == null || name.isEmpty()) {
-            //use point number index
-            DefaultIndex(this)
-        } else {
-            FilePointIndex(name)
+        return when {
+            name == null || name.isEmpty() -> DefaultIndex(this)//use point number index
+            isSortable(name) -> FileSortedPointIndex(name)
+            else -> FilePointIndex(name)
         }
     }
 
+    /**
+     * Numeric and time columns are indexed by [FileSortedIndex]
+     */
+    private fun isSortable(name: String): Boolean {
+        return format.names.contains(name) && format.getColumn(name).primaryType.let { it == ValueType.NUMBER || it == ValueType.TIME }
+    }
+
+    /**
+     * Add newly written lines to existing sorted indexes
+     */
+    private fun updateIndexes() {
+        indexMap.values.forEach { (it as? FileSortedIndex<*>)?.update() }
+    }
+
 
     private val indexMap = HashMap<String, ValueIndex<Values>>()
 
     @Throws(StorageException::class)
     override fun push(dps: Collection<Values>) {
-        for (dp in dps) {
-            push(dp)
+        dps.forEach { dp ->
+            connectionHelper.forEachConnection(ValuesListener::class.java) {
+                it.accept(dp)
+            }
         }
+        write(dps.map { IOUtils.formatDataPoint(format, it) })
     }
 
     @Synchronized
@@ -115,14 +216,74 @@ class FileTableLoader(storage: Storage, name: String, meta: Meta, file: FileEnve
             it.accept(dp)
         }
 
+        write(listOf(IOUtils.formatDataPoint(format, dp)))
+    }
+
+    @Synchronized
+    private fun write(lines: List<String>) {
+        if (bufferSize > 0) {
+            pending.addAll(lines)
+            if (pending.size >= bufferSize) {
+                flush()
+            } else if (flushJob?.isActive != true) {
+                flushJob = launch {
+                    delay(flushInterval)
+                    try {
+                        flush()
+                    } catch (ex: Exception) {
+                        logger.error("Failed to flush buffered points", ex)
+                    }
+                }
+            }
+        } else {
+            try {
+                file.appendLines(lines)
+            } catch (ex: IOException) {
+                throw StorageException("Error while opening an envelope", ex)
+            }
+            updateIndexes()
+        }
+    }
+
+    /**
+     * Write all buffered points to the file
+     */
+    @Synchronized
+    fun flush() {
+        if (pending.isEmpty()) {
+            return
+        }
         try {
-            val str = IOUtils.formatDataPoint(format, dp)
-            file.appendLine(str)
+            file.appendLines(pending)
+            pending.clear()
+            if (forceOnFlush) {
+                file.force()
+            }
+        } catch (ex: IOException) {
+            throw StorageException("Failed to flush buffered points", ex)
+        }
+        updateIndexes()
+    }
+
+    /**
+     * Flush buffered points and force them to the storage device
+     */
+    @Synchronized
+    fun force() {
+        flush()
+        try {
+            file.force()
         } catch (ex: IOException) {
-            throw StorageException("Error while opening an envelope", ex)
+            throw StorageException("Failed to force points to storage", ex)
         }
     }
 
+    override fun close() {
+        flush()
+        flushJob?.cancel()
+        super.close()
+    }
+
 //    override fun respond(message: Envelope): Envelope {
 //        try {
 //            if (!validator.isValid(message)) {
@@ -191,6 +352,26 @@ class FileTableLoader(storage: Storage, name: String, meta: Meta, file: FileEnve
 //    }
 
 
+    private inner class FileSortedPointIndex(private val valueName: String)
+        : FileSortedIndex<Values>(context, file, meta.getInt("index.runSize", FileSortedIndex.DEFAULT_RUN_SIZE)) {
+
+        override fun getIndexedValue(entry: Values): Value {
+            return entry.getValue(valueName)
+        }
+
+        override fun indexFileName(): String {
+            return if (storage.isAnonymous) {
+                name + "_" + valueName
+            } else {
+                storage.name + "/" + name + "_" + valueName
+            }
+        }
+
+        override fun readEntry(str: String): Values {
+            return parser.parse(str)
+        }
+    }
+
     private inner class FilePointIndex(private val valueName: String) : FileMapIndex<Values>(context, file) {
 
         override fun getIndexedValue(entry: Values): Value {
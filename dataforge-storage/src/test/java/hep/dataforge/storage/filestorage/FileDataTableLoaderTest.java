@@ -17,13 +17,18 @@ package hep.dataforge.storage.filestorage;
 
 import hep.dataforge.context.Global;
 import hep.dataforge.exceptions.StorageException;
+import hep.dataforge.meta.Meta;
+import hep.dataforge.meta.MetaBuilder;
 import hep.dataforge.storage.api.TableLoader;
 import hep.dataforge.storage.api.ValueIndex;
 import hep.dataforge.storage.commons.LoaderFactory;
 import hep.dataforge.storage.commons.MapIndex;
 import hep.dataforge.storage.commons.StorageManager;
 import hep.dataforge.tables.MetaTableFormat;
+import hep.dataforge.tables.TableFormat;
+import hep.dataforge.tables.TableFormatBuilder;
 import hep.dataforge.utils.DateTimeUtils;
+import hep.dataforge.values.Value;
 import hep.dataforge.values.ValueFactory;
 import hep.dataforge.values.ValueMap;
 import hep.dataforge.values.Values;
@@ -31,9 +36,15 @@ import org.junit.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.Files;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
 import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertEquals;
@@ -60,7 +71,7 @@ public class FileDataTableLoaderTest {
 
     @Before
     public void setUp() throws IOException {
-        new StorageManager().startGlobal();
+        Global.INSTANCE.load(StorageManager.class);
         dir = Files.createTempDirectory("df_storage").toFile();
     }
 
@@ -120,4 +131,138 @@ public class FileDataTableLoaderTest {
         ((MapIndex) index).invalidate();
     }
 
+    @Test
+    public void testBufferedWrite() throws Exception {
+        String[] names = {"key", "sqrt"};
+
+        FileStorage storage = FileStorageFactory.Companion.buildLocal(Global.INSTANCE, dir, false, true);
+
+        Meta loaderMeta = LoaderFactory.INSTANCE.buildTableLoaderMeta("key", MetaTableFormat.Companion.forNames(names))
+                .putValue("writeBuffer.size", 100)
+                .putValue("writeBuffer.interval", 60000);
+        FileTableLoader loader = (FileTableLoader) storage.buildLoader("buffered_points", loaderMeta);
+
+        for (int i = 0; i < 250; i++) {
+            loader.push(ValueMap.Companion.of(names, i, Math.sqrt(i)));
+        }
+        // the last 50 points are still in the buffer
+        assertEquals(200, countLines(loader.getFile()));
+        loader.flush();
+        assertEquals(250, countLines(loader.getFile()));
+
+        // simulate a failure during append: data written, but the tag is not updated
+        Path path = loader.getFile().getFile();
+        loader.close();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap("250\t15.8".getBytes()));
+        }
+        FileEnvelope recovered = FileEnvelope.Companion.open(path, false);
+        FileTableLoader reopened = new FileTableLoader(storage, "buffered_points",
+                new MetaBuilder(loader.getMeta()).setValue("repair", true), recovered);
+        assertEquals(250, countLines(reopened.getFile()));
+        assertEquals(250, reopened.readTable(1).size());
+        assertEquals("250\t15.8", new String(Files.readAllBytes(path.resolveSibling(path.getFileName() + ".tail"))));
+    }
+
+    @Test
+    public void testSortedIndex() throws Exception {
+        String[] names = {"key", "sqrt"};
+
+        FileStorage storage = FileStorageFactory.Companion.buildLocal(Global.INSTANCE, dir, false, true);
+
+        TableFormat format = new TableFormatBuilder().addNumber("key").addNumber("sqrt").build();
+        Meta loaderMeta = LoaderFactory.INSTANCE.buildTableLoaderMeta("key", format)
+                .putValue("index.runSize", 100);
+        FileTableLoader loader = (FileTableLoader) storage.buildLoader("sorted_points", loaderMeta);
+
+        ValueIndex<Values> index = loader.getIndex("key");
+        assertTrue(index instanceof FileSortedIndex);
+
+        // keys are not ordered, so runs overlap
+        for (int i = 0; i < 1000; i++) {
+            int key = i * 7 % 1000;
+            loader.push(ValueMap.Companion.of(names, key, Math.sqrt(key)));
+        }
+
+        List<Values> range = index.pull(24, 26).collect(Collectors.toList());
+        assertEquals(3, range.size());
+        assertEquals(25, range.get(1).getInt("key"));
+        assertEquals(Math.sqrt(24), range.get(0).getDouble("sqrt"), 0.001);
+        assertEquals(501, index.pullOne(500.5).get().getInt("key"));
+        assertEquals(0, index.getFirstKey().getInt());
+        assertEquals(999, index.getLastKey().getInt());
+        assertTrue(index.pull(ValueFactory.NULL, ValueFactory.NULL, 100).count() <= 100);
+
+        // reopen the index from file
+        Path path = loader.getFile().getFile();
+        loader.close();
+        FileTableLoader reopened = new FileTableLoader(storage, "sorted_points", loader.getMeta(), FileEnvelope.Companion.open(path, false));
+        reopened.push(ValueMap.Companion.of(names, 1000, Math.sqrt(1000)));
+        ValueIndex<Values> reopenedIndex = reopened.getIndex("key");
+        assertEquals(1001, reopenedIndex.pull(ValueFactory.NULL, ValueFactory.NULL).count());
+        assertEquals(Arrays.asList(998, 999, 1000), reopenedIndex.pull(998, 1000)
+                .map(it -> it.getInt("key")).collect(Collectors.toList()));
+
+        // rewrite the data in place, the old index file should not be reused
+        reopened.close();
+        FileEnvelope rewritten = FileEnvelope.Companion.open(path, false);
+        rewritten.clearData();
+        FileTableLoader rewrittenLoader = new FileTableLoader(storage, "sorted_points", loader.getMeta(), rewritten);
+        for (int i = 0; i < 1000; i++) {
+            int key = 10000 + i * 7 % 1000;
+            rewrittenLoader.push(ValueMap.Companion.of(names, key, Math.sqrt(key)));
+        }
+        ValueIndex<Values> rewrittenIndex = rewrittenLoader.getIndex("key");
+        assertEquals(Arrays.asList(10024, 10025, 10026), rewrittenIndex.pull(10024, 10026)
+                .map(it -> it.getInt("key")).collect(Collectors.toList()));
+
+        ((FileSortedIndex) rewrittenIndex).invalidate();
+    }
+
+    @Test
+    public void testSortedIndexLongKeys() throws Exception {
+        // table rows keep only a few digits of numbers, so long keys are checked on plain lines
+        Path path = new File(dir, "long_keys.df").toPath();
+        FileEnvelope envelope = FileEnvelope.Companion.createEmpty(path, Meta.empty());
+        long big = 1L << 53;
+        envelope.appendLine(Long.toString(big + 1));
+        envelope.appendLine(Long.toString(big));
+        envelope.appendLine(Long.toString(big + 2));
+
+        FileSortedIndex<Long> index = new FileSortedIndex<Long>(Global.INSTANCE, envelope, 2) {
+            @Override
+            protected String indexFileName() {
+                return "long_keys_" + System.nanoTime();
+            }
+
+            @Override
+            protected Long readEntry(String str) {
+                return Long.parseLong(str.trim());
+            }
+
+            @Override
+            protected Value getIndexedValue(Long entry) {
+                return ValueFactory.of(entry);
+            }
+        };
+        index.update();
+        // all three keys are equal as doubles
+        assertEquals(Arrays.asList(big + 1), index.pull(big + 1).collect(Collectors.toList()));
+        assertEquals(Arrays.asList(big + 1, big + 2), index.pull(big + 1, big + 2).collect(Collectors.toList()));
+        assertEquals(big + 1, (long) index.pullOne(big + 1).get());
+        index.invalidate();
+        envelope.close();
+    }
+
+    private int countLines(FileEnvelope envelope) {
+        ByteBuffer buffer = envelope.getData().getBuffer();
+        int count = 0;
+        while (buffer.hasRemaining()) {
+            if (buffer.get() == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+
 }
@@ -0,0 +1,69 @@
+package hep.dataforge.storage
+
+import hep.dataforge.context.Global
+import hep.dataforge.tables.MetaTableFormat
+import hep.dataforge.values.ValueMap
+import hep.dataforge.values.Values
+import org.openjdk.jmh.annotations.*
+import java.nio.file.Files
+import java.nio.file.Path
+
+/**
+ * Append time should not depend on the number of rows already in the loader
+ */
+@Fork(1)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+open class TableAppendBenchmark {
+
+    @Param("0", "1000000", "10000000")
+    var rows: Int = 0
+
+    private val format = MetaTableFormat.forNames("timestamp", "channel", "count")
+
+    private lateinit var path: Path
+    private lateinit var loader: FileTableLoader
+    private lateinit var writer: AppendableFileTableLoader
+    private var counter = 0
+
+    private fun row(i: Int): Values = ValueMap.of(format.namesAsArray(), i.toLong(), i % 16, i * 2)
+
+    @Setup
+    fun setup() {
+        path = Files.createTempFile("append", ".df")
+        Files.delete(path)
+        loader = TableLoaderType.create(Global, path, format)
+        writer = loader.mutable()
+        (0 until rows).chunked(100_000).forEach { chunk ->
+            writer.appendAll(chunk.map { row(it) })
+        }
+        // build the index so that appends have to maintain it
+        loader.keys
+        counter = rows
+    }
+
+    @TearDown
+    fun tearDown() {
+        writer.close()
+        loader.close()
+        Files.deleteIfExists(path)
+    }
+
+    @Benchmark
+    fun appendOne() {
+        writer.append(row(counter++))
+    }
+
+    @Benchmark
+    fun appendBatch() {
+        writer.appendAll((counter until counter + 100).map { row(it) })
+        counter += 100
+    }
+
+    @Benchmark
+    fun appendAndRead(): Values? {
+        writer.append(row(counter))
+        return loader[counter++]
+    }
+}
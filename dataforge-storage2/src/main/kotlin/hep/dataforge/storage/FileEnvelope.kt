@@ -50,18 +50,35 @@ abstract class FileEnvelope(val path: Path) : Envelope, AutoCloseable {
 
     /**
      * Append data to the end of envelope file and update tag
+     * @return the offset of appended block relative to data start
      */
-    fun append(buffer: ByteBuffer) {
+    fun append(buffer: ByteBuffer): Int {
         synchronized(this) {
-            updateDataLength(dataLength + channel.write(buffer, dataOffset + dataLength))
+            val offset = dataLength
+            var size = 0
+            while (buffer.hasRemaining()) {
+                size += channel.write(buffer, dataOffset + offset + size)
+            }
+            updateDataLength(offset + size)
+            return offset
         }
     }
 
-    fun appendAll(buffers: Iterable<ByteBuffer>){
+    /**
+     * Append all buffers with a single gathering write and update tag once
+     * @return offsets of appended blocks relative to data start
+     */
+    fun appendAll(buffers: Iterable<ByteBuffer>): List<Int> {
         synchronized(this) {
+            val array = buffers.toList().toTypedArray()
+            var end = dataLength
+            val offsets = array.map { buffer -> end.also { end += buffer.remaining() } }
             channel.position(dataOffset + dataLength)
-            val size = buffers.map { channel.write(it) }.sum()
-            updateDataLength(dataLength + size)
+            while (array.any { it.hasRemaining() }) {
+                channel.write(array)
+            }
+            updateDataLength(end)
+            return offsets
         }
     }
 
@@ -143,7 +160,7 @@ class TaggedFileEnvelope(path: Path) : FileEnvelope(path) {
         val buffer = ByteBuffer.allocate(tag.metaSize).also {
             channel.read(it, tag.length.toLong())
         }
-        tag.metaType.reader.readBuffer(buffer)
+        tag.metaType.reader.readLazy(buffer)
     }
 
     override fun updateDataLength(length: Int) {
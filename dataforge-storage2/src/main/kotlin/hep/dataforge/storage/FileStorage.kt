@@ -72,10 +72,10 @@ open class FileStorage protected constructor(
      * Resolve element type from path if path represents an element, otherwise null.
      */
     protected open fun resolveType(path: Path): FileStorageElementType<*>? {
-        return if (Files.isDirectory(path)) {
-            Directory
-        } else {
-            null
+        return when {
+            SegmentedTableLoaderType.isSegmentedLoader(path) -> SegmentedTableLoaderType
+            Files.isDirectory(path) -> Directory
+            else -> null
         }
     }
 
@@ -0,0 +1,672 @@
+/*
+ * Copyright  2018 Alexander Nozik.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package hep.dataforge.storage
+
+import hep.dataforge.connections.ConnectionHelper
+import hep.dataforge.context.Context
+import hep.dataforge.io.envelopes.*
+import hep.dataforge.kodex.buildMeta
+import hep.dataforge.meta.Meta
+import hep.dataforge.meta.MetaBuilder
+import hep.dataforge.storage.SegmentedTableLoaderType.MANIFEST_FILE
+import hep.dataforge.storage.TableLoaderType.TABLE_FORMAT_KEY
+import hep.dataforge.tables.MetaTableFormat
+import hep.dataforge.tables.TableFormat
+import hep.dataforge.values.Value
+import hep.dataforge.values.ValueMap
+import hep.dataforge.values.ValueType
+import hep.dataforge.values.Values
+import kotlinx.coroutines.experimental.Deferred
+import kotlinx.coroutines.experimental.Job
+import kotlinx.coroutines.experimental.channels.ReceiveChannel
+import kotlinx.coroutines.experimental.channels.produce
+import kotlinx.coroutines.experimental.launch
+import java.lang.ref.PhantomReference
+import java.lang.ref.ReferenceQueue
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.time.Duration
+import java.time.Instant
+import java.util.*
+
+/**
+ * A table loader which stores entries in a directory of [FileTableLoader] segments. A new segment is started when the
+ * current one reaches `segment.size` entries or when the key of a new entry is farther than `segment.window` from the
+ * first key of the segment. The window is either a number or an ISO-8601 duration for time keys. The key field is set
+ * by `segment.field` and is `timestamp` by default.
+ *
+ * The manifest file keeps the list of segments with the number of entries and minimal and maximal key of each one, so
+ * range queries open only segments which could contain the range. The manifest also keeps a [ZoneMap] of each segment
+ * which is used to skip segments in [select] with filter. The manifest is replaced atomically and only when
+ * segments are added or removed, the statistics of the last segment are restored from its file on load.
+ *
+ * After each new segment the retention policy is applied and small segments are compacted in background. Retention
+ * keeps at most `retention.count` closed segments and drops segments with all keys older than `retention.age`
+ * duration. Compaction merges adjacent closed segments if their total size does not exceed `compaction.size`
+ * (`segment.size` by default); set `compaction.enabled` to false to disable it. Merged segment is written to a
+ * temporary file and is registered in the manifest only after it is complete. Segment files which are not registered
+ * in the manifest are left by an interrupted compaction or segment creation and are deleted on load.
+ *
+ * Readers acquire segments they use, so removed segments are closed and deleted only after all readers release them.
+ */
+class SegmentedTableLoader internal constructor(
+        override val parent: StorageElement?,
+        override val context: Context,
+        override val path: Path
+) : IndexedTableLoader, FileStorageElement {
+
+    /**
+     * Manifest entry for a segment. The zone map is absent if it was not recorded.
+     */
+    private class Segment(val fileName: String, var count: Int, var min: Value, var max: Value, val zone: ZoneMap?) {
+        /**
+         * The number of readers using the segment. Guarded by the loader lock
+         */
+        var readers = 0
+
+        /**
+         * The segment is removed from the manifest and should be deleted when released
+         */
+        var removed = false
+
+        fun toMeta(): Meta = buildMeta("segment") {
+            "file" to fileName
+            "count" to count
+            "min" to min
+            "max" to max
+            zone?.let { "zone" to it.toMeta() }
+        }
+
+        /**
+         * Check if the segment could contain keys in given range. NULL bounds are open.
+         */
+        fun contains(from: Value, to: Value): Boolean {
+            return count > 0 && (to.type == ValueType.NULL || min <= to) && (from.type == ValueType.NULL || max >= from)
+        }
+
+        fun update(key: Value, item: Values) {
+            zone?.update(item)
+            if (count == 0 || key < min) {
+                min = key
+            }
+            if (count == 0 || key > max) {
+                max = key
+            }
+            count++
+        }
+    }
+
+    private val _connectionHelper = ConnectionHelper(this)
+
+    override fun getConnectionHelper(): ConnectionHelper = _connectionHelper
+
+    override val name: String = path.fileName.toString()
+
+    private val manifestPath = path.resolve(MANIFEST_FILE)
+
+    private val manifest: Meta = EnvelopeReader.readFile(manifestPath).meta
+
+    override val meta: Meta = manifest.getMeta("meta")
+
+    override val format: TableFormat by lazy {
+        when {
+            meta.hasMeta(TABLE_FORMAT_KEY) -> MetaTableFormat(meta.getMeta(TABLE_FORMAT_KEY))
+            meta.hasValue(TABLE_FORMAT_KEY) -> MetaTableFormat.forNames(*meta.getStringArray(TABLE_FORMAT_KEY))
+            else -> throw RuntimeException("Format definition not found")
+        }
+    }
+
+    val keyField: String = meta.getString("segment.field", "timestamp")
+
+    private val segmentSize: Int = meta.getInt("segment.size", 1_000_000)
+
+    private val segmentWindow: Double? = meta.optValue("segment.window").map { it.toWidth() }.orElse(null)
+
+    private val retentionCount: Int? = meta.optValue("retention.count").map { it.int }.orElse(null)
+
+    private val retentionAge: Duration? = meta.optValue("retention.age").map { Duration.parse(it.string) }.orElse(null)
+
+    private val compactionEnabled: Boolean = meta.getBoolean("compaction.enabled", true)
+
+    private val compactionSize: Int = meta.getInt("compaction.size", segmentSize)
+
+    private val segments = ArrayList<Segment>()
+
+    private var nextSegment: Int = manifest.getInt("nextSegment", 0)
+
+    /**
+     * Removed segments which are still used by readers
+     */
+    private val released = HashSet<Segment>()
+
+    /**
+     * Segments acquired by an iterator. Released when the iteration is finished or when the iterator is collected.
+     */
+    private class Pin(owner: Any, queue: ReferenceQueue<Any>, val acquired: List<Segment>) : PhantomReference<Any>(owner, queue)
+
+    private val pins = HashSet<Pin>()
+
+    private val abandoned = ReferenceQueue<Any>()
+
+    private val loaders = HashMap<String, IndexedTableLoader>()
+
+    private var maintenanceJob: Job? = null
+
+    /**
+     * Retention and compaction are never run concurrently
+     */
+    private val maintenanceLock = Any()
+
+    init {
+        manifest.getMetaList("segment").forEach {
+            val zone = it.optMeta("zone").map { ZoneMap.fromMeta(it) }.orElse(null)
+            segments.add(Segment(it.getString("file"), it.getInt("count"), it.getValue("min"), it.getValue("max"), zone))
+        }
+        //The manifest is not updated on append, so statistics for the last segment are restored from file
+        segments.lastOrNull()?.let { last ->
+            val restored = emptySegment(last.fileName)
+            segmentLoader(last).forEach { restored.update(it.getValue(keyField), it) }
+            segments[segments.size - 1] = restored
+        }
+        cleanup()
+    }
+
+    /**
+     * Delete segment files which are not registered in the manifest and make sure new segment names do not clash
+     * with existing files.
+     */
+    private fun cleanup() {
+        val known = segments.map { it.fileName }.toSet()
+        Files.newDirectoryStream(path, "segment-*").use { stream ->
+            stream.forEach { file ->
+                val fileName = file.fileName.toString()
+                SEGMENT_NAME.matchEntire(fileName)?.let { match ->
+                    nextSegment = maxOf(nextSegment, match.groupValues[1].toInt() + 1)
+                }
+                if (fileName !in known) {
+                    logger.warn("Deleting segment file {} which is not registered in the manifest of {}", fileName, name)
+                    Files.deleteIfExists(file)
+                }
+            }
+        }
+    }
+
+    private fun emptySegment(fileName: String) = Segment(fileName, 0, Value.NULL, Value.NULL, ZoneMap(format.names))
+
+    private fun Value.toWidth(): Double = if (type == ValueType.NUMBER) double else Duration.parse(string).toMillis().toDouble()
+
+    /**
+     * Indexed loader for given segment
+     */
+    @Synchronized
+    private fun segmentLoader(segment: Segment): IndexedTableLoader {
+        if (segment.removed && segment.readers == 0) {
+            throw IllegalStateException("Segment ${segment.fileName} of $name is removed")
+        }
+        return loaders.getOrPut(segment.fileName) {
+            TableLoaderType.read(context, path.resolve(segment.fileName)).indexed(buildMeta { "field" to keyField })
+        }
+    }
+
+    /**
+     * Acquire segments satisfying the condition. Acquired segments are not closed or deleted until they are released.
+     */
+    @Synchronized
+    private fun acquire(condition: (Segment) -> Boolean): List<Segment> {
+        releaseAbandoned()
+        return segments.filter(condition).onEach { it.readers++ }
+    }
+
+    @Synchronized
+    private fun unpin(pin: Pin) {
+        if (pins.remove(pin)) {
+            release(pin.acquired)
+        }
+    }
+
+    /**
+     * Release segments of collected iterators
+     */
+    @Synchronized
+    private fun releaseAbandoned() {
+        generateSequence { abandoned.poll() as Pin? }.forEach { unpin(it) }
+    }
+
+    @Synchronized
+    private fun release(acquired: Collection<Segment>) {
+        acquired.forEach {
+            it.readers--
+            if (it.removed && it.readers == 0) {
+                dispose(it)
+            }
+        }
+    }
+
+    /**
+     * Run the block with acquired segments and release them after
+     */
+    private inline fun <R> reading(noinline condition: (Segment) -> Boolean, block: (List<Segment>) -> R): R {
+        val acquired = acquire(condition)
+        try {
+            return block(acquired)
+        } finally {
+            release(acquired)
+        }
+    }
+
+    /**
+     * Close and delete the segment file
+     */
+    private fun dispose(segment: Segment) {
+        released.remove(segment)
+        loaders.remove(segment.fileName)?.close()
+        Files.deleteIfExists(path.resolve(segment.fileName))
+    }
+
+    /**
+     * Names of segment files in order
+     */
+    val segmentFiles: List<String>
+        @Synchronized
+        get() = segments.map { it.fileName }
+
+    @Synchronized
+    private fun writeManifest() {
+        val builder = MetaBuilder("manifest")
+                .putValue("nextSegment", nextSegment)
+                .putNode("meta", meta)
+        segments.forEach { builder.putNode(it.toMeta()) }
+        SegmentedTableLoaderType.writeManifest(path, builder)
+    }
+
+    /**
+     * Create new empty segment and make it active
+     */
+    @Synchronized
+    private fun newSegment(): Segment {
+        val fileName = String.format("segment-%06d.df", nextSegment++)
+        TableLoaderType.create(context, path.resolve(fileName), format).close()
+        return emptySegment(fileName).also {
+            segments.add(it)
+            writeManifest()
+        }
+    }
+
+    @Synchronized
+    private fun activeSegment(): Segment = segments.lastOrNull() ?: newSegment()
+
+    private fun needsRoll(segment: Segment, key: Value): Boolean {
+        return segment.count >= segmentSize || segmentWindow?.let { segment.count > 0 && key.double - segment.min.double >= it } == true
+    }
+
+    /**
+     * Remove segments and their files. The manifest is updated before files are deleted. Files of segments used by
+     * readers are deleted when the last reader releases them.
+     */
+    @Synchronized
+    private fun remove(toRemove: Collection<Segment>) {
+        if (toRemove.isEmpty()) {
+            return
+        }
+        segments.removeAll(toRemove)
+        writeManifest()
+        releaseAbandoned()
+        toRemove.forEach {
+            it.removed = true
+            if (it.readers == 0) {
+                dispose(it)
+            } else {
+                released.add(it)
+            }
+        }
+    }
+
+    /**
+     * Apply retention policy to closed segments
+     */
+    fun applyRetention() = synchronized(maintenanceLock) {
+        val toRemove = synchronized(this) {
+            val closed = segments.dropLast(1)
+            val res = HashSet<Segment>()
+            retentionCount?.let { count -> res.addAll(closed.take(maxOf(0, closed.size - count))) }
+            retentionAge?.let { age ->
+                val limit = Instant.now().minus(age).toEpochMilli().toDouble()
+                res.addAll(closed.filter { it.count > 0 && it.max.double < limit })
+            }
+            res
+        }
+        if (toRemove.isNotEmpty()) {
+            logger.info("Removing {} segments of {} by retention policy", toRemove.size, name)
+        }
+        remove(toRemove)
+    }
+
+    /**
+     * Merge adjacent closed segments which together fit in `compaction.size`. Merged entries are ordered by key.
+     * Closed segments are not modified, so the data is copied without holding the loader lock.
+     */
+    fun compact() = synchronized(maintenanceLock) {
+        while (true) {
+            val group = synchronized(this) {
+                val closed = segments.dropLast(1)
+                var res: List<Segment> = emptyList()
+                for (start in closed.indices) {
+                    var total = 0
+                    val candidate = closed.drop(start).takeWhile { total += it.count; total <= compactionSize }
+                    if (candidate.size > 1) {
+                        res = candidate
+                        break
+                    }
+                }
+                res
+            }
+            if (group.isEmpty()) {
+                return@synchronized
+            }
+            val fileName = synchronized(this) { String.format("segment-%06d.df", nextSegment++) }
+            val temp = path.resolve("$fileName.tmp")
+            val merged = TableLoaderType.create(context, temp, format)
+            val writer = merged.mutable()
+            val segment = emptySegment(fileName)
+            val items = group.flatMap { segmentLoader(it).toList() }.sortedBy { it.getValue(keyField) }
+            items.forEach { segment.update(it.getValue(keyField), it) }
+            writer.appendAll(items)
+            writer.close()
+            merged.close()
+            synchronized(this) {
+                Files.move(temp, path.resolve(fileName), StandardCopyOption.ATOMIC_MOVE)
+                val index = segments.indexOf(group.first())
+                segments.add(index, segment)
+                logger.debug("Compacting {} segments of {} into {}", group.size, name, fileName)
+                remove(group)
+            }
+        }
+    }
+
+    /**
+     * Run retention and compaction in background unless it is already running
+     */
+    @Synchronized
+    private fun maintain() {
+        if (maintenanceJob?.isActive != true) {
+            maintenanceJob = launch {
+                try {
+                    applyRetention()
+                    if (compactionEnabled) {
+                        compact()
+                    }
+                } catch (ex: Exception) {
+                    logger.error("Segment maintenance failed for $name", ex)
+                }
+            }
+        }
+    }
+
+    /**
+     * Wait for background maintenance to finish
+     */
+    suspend fun awaitMaintenance() {
+        maintenanceJob?.join()
+    }
+
+    private var writer: AppendableFileTableLoader? = null
+
+    private var writerSegment: Segment? = null
+
+    /**
+     * Append entries to the active segment starting new segments when needed
+     */
+    @Synchronized
+    internal fun appendAll(items: List<Values>) {
+        val batch = ArrayList<Values>()
+        var rolled = false
+        var segment = activeSegment()
+        items.forEach { item ->
+            val key = item.getValue(keyField)
+            if (needsRoll(segment, key)) {
+                write(segment, batch)
+                batch.clear()
+                segment = newSegment()
+                rolled = true
+            }
+            segment.update(key, item)
+            batch.add(item)
+        }
+        write(segment, batch)
+        if (rolled) {
+            maintain()
+        }
+    }
+
+    private fun write(segment: Segment, batch: List<Values>) {
+        if (batch.isEmpty()) {
+            return
+        }
+        if (writerSegment != segment) {
+            writer?.close()
+            writer = (segmentLoader(segment) as IndexedFileTableLoader).loader.mutable()
+            writerSegment = segment
+        }
+        writer!!.appendAll(batch)
+    }
+
+    /**
+     * All keys of all segments. Opens all segments, so it should not be used for large loaders.
+     */
+    override val keys: NavigableSet<Value>
+        get() = reading({ true }) { acquired -> acquired.flatMapTo(TreeSet()) { segmentLoader(it).keys } }
+
+    override fun getInFuture(key: Value): Deferred<Values>? {
+        val acquired = acquire { it.contains(key, key) }
+        val res = try {
+            acquired.asSequence().mapNotNull { segmentLoader(it).getInFuture(key) }.firstOrNull()
+        } catch (ex: Exception) {
+            release(acquired)
+            throw ex
+        }
+        if (res == null) {
+            release(acquired)
+        } else {
+            res.invokeOnCompletion { release(acquired) }
+        }
+        return res
+    }
+
+    override fun get(key: Value): Values? {
+        return reading({ it.contains(key, key) }) { acquired ->
+            acquired.asSequence().mapNotNull { segmentLoader(it)[key] }.firstOrNull()
+        }
+    }
+
+    override fun get(any: Any): Values? = get(Value.of(any))
+
+    /**
+     * Select entries with keys in given range. Only segments which could contain the range are opened.
+     */
+    override fun select(from: Value, to: Value): List<Values> {
+        return reading({ it.contains(from, to) }) { acquired ->
+            acquired.flatMap { segmentLoader(it).select(from, to) }.sortedBy { it.getValue(keyField) }
+        }
+    }
+
+    /**
+     * Send entries with keys in given range in key order. Segments could overlap, so their scans are merged. The
+     * segments are released when the scan is finished or cancelled.
+     */
+    override fun scan(from: Value, to: Value): ReceiveChannel<Values> {
+        val acquired = acquire { it.contains(from, to) }
+        return produce {
+            val channels = ArrayList<ReceiveChannel<Values>>()
+            try {
+                val heads = PriorityQueue<Pair<Values, ReceiveChannel<Values>>>(compareBy { it.first.getValue(keyField) })
+                acquired.forEach { segment ->
+                    val channel = segmentLoader(segment).scan(from, to).also { channels.add(it) }
+                    channel.receiveOrNull()?.let { heads.add(it to channel) }
+                }
+                while (heads.isNotEmpty()) {
+                    val (item, channel) = heads.poll()
+                    send(item)
+                    channel.receiveOrNull()?.let { heads.add(it to channel) }
+                }
+            } finally {
+                channels.forEach { it.cancel() }
+                release(acquired)
+            }
+        }
+    }
+
+    /**
+     * Select entries satisfying the filter. Segments are skipped using their zone maps from the manifest and blocks
+     * inside remaining segments are skipped by segment loaders.
+     */
+    override fun select(filter: Meta): List<Values> {
+        return reading({ it.zone?.mayMatch(filter) ?: true }) { acquired ->
+            acquired.flatMap { segmentLoader(it).select(filter) }
+        }
+    }
+
+    override fun updateIndex() {
+        synchronized(this) { loaders.values.toList() }.forEach { it.updateIndex() }
+    }
+
+    /**
+     * Iterate over all entries. The segments are released when iteration is finished. Segments of abandoned
+     * iterators are released after the iterator is garbage collected or on [close].
+     */
+    override fun iterator(): Iterator<Values> {
+        val acquired = acquire { true }
+        val iterator = acquired.asSequence().flatMap { segmentLoader(it).asSequence() }.iterator()
+        return object : Iterator<Values> {
+            private val pin = synchronized(this@SegmentedTableLoader) {
+                Pin(this, abandoned, acquired).also { pins.add(it) }
+            }
+
+            override fun hasNext(): Boolean {
+                val res = try {
+                    iterator.hasNext()
+                } catch (ex: Exception) {
+                    finish()
+                    throw ex
+                }
+                if (!res) {
+                    finish()
+                }
+                return res
+            }
+
+            override fun next(): Values = iterator.next()
+
+            private fun finish() {
+                unpin(pin)
+            }
+        }
+    }
+
+    override val type = Values::class
+
+    override fun indexed(meta: Meta): IndexedTableLoader {
+        return if (meta.isEmpty || meta.getString("field") == keyField) {
+            this
+        } else {
+            throw UnsupportedOperationException("Segmented loader is indexed only by $keyField")
+        }
+    }
+
+    override fun mutable(): MutableTableLoader {
+        val loader = this
+        return object : MutableTableLoader, IndexedTableLoader by loader {
+            override fun append(item: Values) {
+                appendAll(listOf(item))
+            }
+
+            override fun close() {
+                //the writer is closed with the loader
+            }
+        }
+    }
+
+    fun append(vararg values: Any) {
+        appendAll(listOf(ValueMap.of(format.namesAsArray(), *values)))
+    }
+
+    @Synchronized
+    override fun close() {
+        maintenanceJob?.cancel()
+        writer?.close()
+        writer = null
+        writerSegment = null
+        loaders.values.forEach { it.close() }
+        loaders.clear()
+        pins.clear()
+        released.toList().forEach { dispose(it) }
+    }
+
+    companion object {
+        private val SEGMENT_NAME = Regex("segment-(\\d+)\\.df(\\.tmp)?")
+    }
+}
+
+object SegmentedTableLoaderType : FileStorageElementType<SegmentedTableLoader> {
+    const val SEGMENTED_TABLE_TYPE = "hep.dataforge.storage.table.segmented"
+    const val MANIFEST_FILE = "manifest.df"
+
+    internal fun writeManifest(path: Path, manifest: Meta) {
+        val envelope = EnvelopeBuilder().setEnvelopeType(SEGMENTED_TABLE_TYPE).setMeta(manifest).build()
+        val temp = path.resolve("$MANIFEST_FILE.tmp")
+        Files.newOutputStream(temp).use {
+            DefaultEnvelopeWriter(DefaultEnvelopeType.INSTANCE, compactMetaType).write(it, envelope)
+        }
+        Files.move(temp, path.resolve(MANIFEST_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+    }
+
+    /**
+     * Check if given directory is a segmented loader
+     */
+    fun isSegmentedLoader(path: Path): Boolean = Files.isDirectory(path) && Files.exists(path.resolve(MANIFEST_FILE))
+
+    override fun create(parent: FileStorage, meta: Meta): SegmentedTableLoader {
+        return create(parent, parent.context, parent.path.resolve(meta.getString("name")), meta)
+    }
+
+    private fun create(parent: FileStorage?, context: Context, path: Path, meta: Meta): SegmentedTableLoader {
+        if (!meta.hasMeta(TABLE_FORMAT_KEY)) {
+            throw IllegalArgumentException("Values format not found")
+        }
+        Files.createDirectory(path)
+        writeManifest(path, MetaBuilder("manifest").putNode("meta", meta))
+        return SegmentedTableLoader(parent, context, path)
+    }
+
+    /**
+     * Create a standalone loader without a storage
+     */
+    fun create(context: Context, path: Path, meta: Meta): SegmentedTableLoader {
+        return create(null, context, path, meta)
+    }
+
+    override fun read(parent: FileStorage, path: Path): SegmentedTableLoader {
+        return SegmentedTableLoader(parent, parent.context, path)
+    }
+
+    /**
+     * Read orphaned loader
+     */
+    fun read(context: Context, path: Path): SegmentedTableLoader {
+        return SegmentedTableLoader(null, context, path)
+    }
+}
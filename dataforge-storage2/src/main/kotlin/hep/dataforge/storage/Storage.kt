@@ -33,6 +33,7 @@ import hep.dataforge.providers.Provides
 import hep.dataforge.providers.ProvidesNames
 import hep.dataforge.storage.StorageElement.Companion.STORAGE_TARGET
 import kotlinx.coroutines.experimental.Deferred
+import kotlinx.coroutines.experimental.async
 import kotlinx.coroutines.experimental.runBlocking
 import org.slf4j.Logger
 import java.util.*
@@ -167,6 +168,17 @@ interface IndexedLoader<K: Comparable<K>, T: Any> : Loader<T> {
      * Deferred element retrieval
      */
     fun getInFuture(key: K): Deferred<T>?
+
+    /**
+     * Deferred retrieval of several elements. Keys which are not present are omitted from the result.
+     */
+    @JvmDefault
+    fun getAll(keys: Collection<K>): Deferred<Map<K, T>> {
+        val deferred = keys.mapNotNull { key -> getInFuture(key)?.let { key to it } }
+        return async {
+            deferred.associate { (key, value) -> key to value.await() }
+        }
+    }
 }
 
 /**
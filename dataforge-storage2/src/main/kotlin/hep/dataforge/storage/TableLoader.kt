@@ -17,31 +17,52 @@
 package hep.dataforge.storage
 
 import hep.dataforge.context.Context
+import hep.dataforge.data.binary.MappedBinary
 import hep.dataforge.io.envelopes.*
 import hep.dataforge.kodex.buildMeta
 import hep.dataforge.meta.Meta
 import hep.dataforge.storage.TableLoaderType.BINARY_DATA_TYPE
+import hep.dataforge.storage.TableLoaderType.IO_EXECUTOR_META
 import hep.dataforge.storage.TableLoaderType.TABLE_FORMAT_KEY
 import hep.dataforge.storage.TableLoaderType.TEXT_DATA_TYPE
 import hep.dataforge.storage.TableLoaderType.binaryTableWriter
+import hep.dataforge.tables.Filtering
 import hep.dataforge.tables.MetaTableFormat
 import hep.dataforge.tables.TableFormat
 import hep.dataforge.tables.ValuesSource
 import hep.dataforge.values.*
 import kotlinx.coroutines.experimental.Deferred
 import kotlinx.coroutines.experimental.async
-import kotlinx.coroutines.experimental.runBlocking
+import kotlinx.coroutines.experimental.Unconfined
+import kotlinx.coroutines.experimental.asCoroutineDispatcher
+import kotlinx.coroutines.experimental.channels.ReceiveChannel
+import kotlinx.coroutines.experimental.channels.produce
 import java.io.ByteArrayOutputStream
 import java.io.DataOutputStream
 import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
 import java.nio.file.Files
 import java.nio.file.Path
 import java.nio.file.StandardOpenOption
 import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.ConcurrentSkipListMap
+import kotlin.coroutines.experimental.CoroutineContext
 import kotlin.coroutines.experimental.buildSequence
 
 interface TableLoader : Loader<Values>, ValuesSource {
     val format: TableFormat
+
+    /**
+     * Select entries satisfying the condition set in [Filtering.buildConditionSet] format. Loaders could skip blocks of
+     * entries which could not satisfy the condition without reading them.
+     */
+    fun select(filter: Meta): List<Values> {
+        val condition = Filtering.buildConditionSet(filter) ?: return toList()
+        return filter { condition.test(it) }
+    }
+
     fun indexed(meta: Meta = Meta.empty()): IndexedTableLoader
     fun mutable(): MutableTableLoader
 }
@@ -49,6 +70,18 @@ interface TableLoader : Loader<Values>, ValuesSource {
 interface IndexedTableLoader : TableLoader, IndexedLoader<Value, Values> {
     operator fun get(any: Any): Values? = get(Value.of(any))
 
+    /**
+     * Send entries with keys in given range to a channel in key order. The producer suspends until the consumer
+     * receives entries, so many scans could run concurrently without blocking threads.
+     */
+    fun scan(from: Value, to: Value): ReceiveChannel<Values> {
+        return produce {
+            keys.subSet(from, true, to, true).forEach { key ->
+                get(key)?.let { send(it) }
+            }
+        }
+    }
+
     /**
      * Notify loader that it should update index for this loader
      */
@@ -86,33 +119,200 @@ open class FileTableLoader internal constructor(
         }
     }
 
-    protected val defaultIndex by lazy { TreeMap<Value, Int>().apply { fillIndex(this) } }
+    /**
+     * The number of indexed entries. Entry numbers are dense, so the array of offsets is the whole default index.
+     */
+    private var count = 0
 
+    /**
+     * The default index is built from file on first access
+     */
+    private var indexed = false
 
-    protected fun getOffset(index: Int): Int? {
-        if (index == 0) {
-            return 0
-        } else if (index >= defaultIndex.size) {
-            runBlocking {
-                updateIndex()
+    /**
+     * The end of last indexed entry
+     */
+    private var indexedEnd = 0
+
+    /**
+     * Known size of data block. Updated on append via this loader or on explicit [updateIndex]
+     */
+    private var dataSize = -1L
+
+    /**
+     * Persistent read-only mapping of data block. Remapped only when data grows beyond mapped region.
+     */
+    private var mapping: ByteBuffer? = null
+
+    private val appendListeners = ArrayList<(Int, Values) -> Unit>()
+
+    /**
+     * Secondary indexes by field name. Each index subscribes to appended entries, so it is created once per field.
+     */
+    private val indexedLoaders = ConcurrentHashMap<String, IndexedFileTableLoader>()
+
+    /**
+     * Immutable view of indexed entries. Entries are only appended, so the first [size] offsets in the array never
+     * change and the snapshot remains valid when new entries are registered.
+     */
+    private class Snapshot(val offsets: IntArray, val size: Int, val buffer: ByteBuffer)
+
+    private var offsetArray = IntArray(1024)
+
+    /**
+     * The last published snapshot. Readers use it without locking.
+     */
+    @Volatile
+    private var snapshot: Snapshot? = null
+
+    private val ioDispatcher: CoroutineContext by lazy {
+        context.executors.getExecutor(IO_EXECUTOR_META).asCoroutineDispatcher()
+    }
+
+    private class Block(val offset: Int, val zone: ZoneMap)
+
+    private val blockSize: Int by lazy { meta.getInt("zoneMap.blockSize", 1024) }
+
+    /**
+     * Zone maps of consecutive blocks of entries. Built together with the default index.
+     */
+    private val blocks = ArrayList<Block>()
+
+    private fun updateBlocks(offset: Int, values: Values) {
+        val last = blocks.lastOrNull()
+        val block = if (last == null || last.zone.count >= blockSize) {
+            Block(offset, ZoneMap(format.names)).also { blocks.add(it) }
+        } else {
+            last
+        }
+        block.zone.update(values)
+    }
+
+    /**
+     * Get the buffer with whole known data between zero and limit. The buffer is independent of other buffers.
+     */
+    @Synchronized
+    private fun dataBuffer(): ByteBuffer {
+        val binary = data as? MappedBinary ?: return data.buffer
+        if (dataSize < 0) {
+            dataSize = binary.size
+        }
+        val current = mapping
+        val buffer = if (current == null || current.capacity() < dataSize) {
+            FileChannel.open(binary.file, StandardOpenOption.READ).use {
+                it.map(FileChannel.MapMode.READ_ONLY, binary.offset, dataSize)
+            }.also { mapping = it }
+        } else {
+            current
+        }
+        return buffer.duplicate().apply { limit(dataSize.toInt()) }
+    }
+
+    private fun register(number: Int, offset: Int, values: Values) {
+        if (number >= offsetArray.size) {
+            offsetArray = offsetArray.copyOf(offsetArray.size * 2)
+        }
+        offsetArray[number] = offset
+        updateBlocks(offset, values)
+        appendListeners.forEach { it(number, values) }
+    }
+
+    private fun publish() {
+        snapshot = Snapshot(offsetArray, count, dataBuffer())
+    }
+
+    /**
+     * Get current snapshot. If it does not contain entry with given number, the index is updated from file.
+     */
+    private fun snapshot(number: Int = 0): Snapshot {
+        val current = snapshot
+        return if (current != null && number < current.size) {
+            current
+        } else {
+            synchronized(this) {
+                if (indexed) {
+                    updateIndex()
+                } else {
+                    fillIndex()
+                }
+                snapshot!!
             }
         }
-        return defaultIndex[index.asValue()]
+    }
+
+    private fun Snapshot.read(number: Int): Values {
+        return reader(buffer.duplicate().apply { position(offsets[number]) }, format)
+    }
+
+    protected fun getOffset(index: Int): Int? {
+        val snapshot = snapshot(index)
+        return if (index in 0 until snapshot.size) snapshot.offsets[index] else if (index == 0) 0 else null
     }
 
     override val keys: NavigableSet<Value>
-        get() = defaultIndex.navigableKeySet()
+        get() = EntryNumbers(0, snapshot().size)
+
+    /**
+     * Read entry directly without a coroutine
+     */
+    override fun get(key: Value): Values? {
+        val number = key.int
+        val snapshot = snapshot(number)
+        return if (number in 0 until snapshot.size) snapshot.read(number) else null
+    }
 
+    override fun get(any: Any): Values? = get(Value.of(any))
+
+    /**
+     * Read entry in the storage i/o pool. Concurrent reads use the same immutable snapshot and do not lock the loader.
+     */
     override fun getInFuture(key: Value): Deferred<Values>? {
-        return getOffset(key.int)?.let {
-            async {
-                synchronized(data) {
-                    reader(data.buffer.apply { position(it) }, format)
+        val number = key.int
+        val snapshot = snapshot(number)
+        return if (number in 0 until snapshot.size) {
+            async(ioDispatcher) { snapshot.read(number) }
+        } else {
+            null
+        }
+    }
+
+    /**
+     * Read several entries in a single task in the order of their position in file
+     */
+    override fun getAll(keys: Collection<Value>): Deferred<Map<Value, Values>> {
+        val snapshot = snapshot(keys.map { it.int }.max() ?: 0)
+        return async(ioDispatcher) {
+            keys.filter { it.int in 0 until snapshot.size }
+                    .sortedBy { snapshot.offsets[it.int] }
+                    .associate { it to snapshot.read(it.int) }
+        }
+    }
+
+    /**
+     * Sequentially read entries with numbers in given range. NULL bounds mean the first and the last entry.
+     */
+    override fun scan(from: Value, to: Value): ReceiveChannel<Values> {
+        val snapshot = snapshot()
+        val start = if (from.type == ValueType.NULL) 0 else maxOf(from.int, 0)
+        val end = if (to.type == ValueType.NULL) snapshot.size - 1 else minOf(to.int, snapshot.size - 1)
+        return produce(ioDispatcher) {
+            if (start <= end) {
+                val buffer = snapshot.buffer.duplicate().apply { position(snapshot.offsets[start]) }
+                for (i in start..end) {
+                    send(reader(buffer, format))
                 }
             }
         }
     }
 
+    /**
+     * Read entry by its number. Null if it is not present
+     */
+    internal fun read(number: Int): Values? {
+        val snapshot = snapshot(number)
+        return if (number in 0 until snapshot.size) snapshot.read(number) else null
+    }
+
     override fun mutable(): AppendableFileTableLoader {
         return when (meta.getString(Envelope.ENVELOPE_DATA_TYPE_KEY)) {
             BINARY_DATA_TYPE -> AppendableFileTableLoader(this, binaryTableWriter)
@@ -125,69 +325,281 @@ open class FileTableLoader internal constructor(
         return if (meta.isEmpty) {
             this
         } else {
-            IndexedFileTableLoader(this, meta.getString("field"))
+            indexedLoaders.computeIfAbsent(meta.getString("field")) { IndexedFileTableLoader(this, it) }
         }
     }
 
-    private fun fillIndex(index: TreeMap<Value, Int>) {
-        val sequence = if (index.isEmpty()) {
-            readAll()
-        } else {
-            readAll(index.lastKey().int)
-        }
-        sequence.forEach {
-            index.putIfAbsent(it.first.asValue(), it.second)
+    /**
+     * Index entries after the last indexed one
+     */
+    @Synchronized
+    private fun fillIndex() {
+        val buffer = dataBuffer()
+        buffer.position(indexedEnd)
+        while (buffer.hasRemaining()) {
+            val offset = buffer.position()
+            val values = reader(buffer, format)
+            register(count, offset, values)
+            count++
         }
+        indexedEnd = buffer.position()
+        indexed = true
+        publish()
     }
 
+    /**
+     * Read entries appended to the file by other writers
+     */
+    @Synchronized
     override fun updateIndex() {
-        fillIndex(defaultIndex)
+        (data as? MappedBinary)?.let {
+            dataSize = Files.size(it.file) - it.offset
+        }
+        fillIndex()
     }
 
+    /**
+     * Register entries written by [AppendableFileTableLoader] without reading them back
+     *
+     * @param items appended entries
+     * @param offsets offsets of entries in data block returned by write
+     * @param end the end of data block after write
+     */
+    @Synchronized
+    internal fun appended(items: List<Values>, offsets: List<Int>, end: Int) {
+        dataSize = end.toLong()
+        if (!indexed) {
+            // the index will be built from file on first access
+            return
+        }
+        if (offsets.isEmpty() || offsets.first() != indexedEnd) {
+            // something was written by another writer
+            fillIndex()
+            return
+        }
+        items.forEachIndexed { i, values ->
+            register(count, offsets[i], values)
+            count++
+        }
+        indexedEnd = end
+        publish()
+    }
+
+    /**
+     * Call [listener] for all existing entries and then for each new indexed entry
+     */
+    @Synchronized
+    internal fun subscribe(listener: (Int, Values) -> Unit) {
+        if (!indexed) {
+            fillIndex()
+        }
+        val buffer = dataBuffer()
+        for (number in 0 until count) {
+            listener(number, reader(buffer.apply { position(offsetArray[number]) }, format))
+        }
+        appendListeners.add(listener)
+    }
+
+    /**
+     * Read only blocks which could contain entries satisfying the filter
+     */
+    override fun select(filter: Meta): List<Values> {
+        val condition = Filtering.buildConditionSet(filter) ?: return toList()
+        val buffer = snapshot().buffer.duplicate()
+        val candidates = synchronized(this) {
+            blocks.filter { it.zone.mayMatch(filter) }.map { it.offset to it.zone.count }
+        }
+        return candidates.flatMap { (offset, count) ->
+            buffer.position(offset)
+            List(count) { reader(buffer, format) }.filter { condition.test(it) }
+        }
+    }
 
     override fun readAll(startIndex: Int): Sequence<Triple<Int, Int, Values>> {
         val offset = getOffset(startIndex) ?: throw Error("The index value is unavailable")
-        synchronized(data) {
-            var counter = startIndex
-            val buffer = data.buffer
-            buffer.position(offset)
-            return buildSequence {
-                while (buffer.remaining() > 0) {
-                    yield(Triple(counter, buffer.position(), reader(buffer, format)))
-                    counter++
-                }
+        var counter = startIndex
+        val buffer = snapshot().buffer.duplicate()
+        buffer.position(offset)
+        return buildSequence {
+            while (buffer.remaining() > 0) {
+                yield(Triple(counter, buffer.position(), reader(buffer, format)))
+                counter++
             }
         }
     }
 }
 
+/**
+ * Read-only set of entry numbers from [from] (inclusive) until [to] (exclusive). Entry numbers of a table loader are
+ * dense, so the set does not store them. Non-integer bounds are rounded to the nearest numbers inside the range.
+ */
+private class EntryNumbers(private val from: Int, private val to: Int) : java.util.AbstractSet<Value>(), NavigableSet<Value> {
+
+    override val size: Int
+        get() = maxOf(0, to - from)
+
+    override fun iterator(): MutableIterator<Value> = numbers(from until to)
+
+    override fun descendingIterator(): MutableIterator<Value> = numbers(to - 1 downTo from)
+
+    private fun numbers(range: IntProgression): MutableIterator<Value> {
+        val iterator = range.iterator()
+        return object : MutableIterator<Value> {
+            override fun hasNext(): Boolean = iterator.hasNext()
+
+            override fun next(): Value = iterator.nextInt().asValue()
+
+            override fun remove() {
+                throw UnsupportedOperationException("Entry numbers are read only")
+            }
+        }
+    }
+
+    override fun contains(element: Value): Boolean {
+        if (element.type != ValueType.NUMBER) {
+            return false
+        }
+        val number = element.double
+        return number == Math.floor(number) && number >= from && number < to
+    }
+
+    private fun Double.bound(): Int = coerceIn(from.toDouble(), to.toDouble()).toInt()
+
+    /**
+     * The first number of the tail set
+     */
+    private fun start(element: Value, inclusive: Boolean): Int {
+        return if (inclusive) Math.ceil(element.double).bound() else (Math.floor(element.double) + 1).bound()
+    }
+
+    /**
+     * The end (exclusive) of the head set
+     */
+    private fun end(element: Value, inclusive: Boolean): Int {
+        return if (inclusive) (Math.floor(element.double) + 1).bound() else Math.ceil(element.double).bound()
+    }
+
+    override fun comparator(): Comparator<in Value>? = null
+
+    override fun first(): Value = if (size > 0) from.asValue() else throw NoSuchElementException()
+
+    override fun last(): Value = if (size > 0) (to - 1).asValue() else throw NoSuchElementException()
+
+    override fun ceiling(e: Value): Value? = start(e, true).takeIf { it < to }?.asValue()
+
+    override fun higher(e: Value): Value? = start(e, false).takeIf { it < to }?.asValue()
+
+    override fun floor(e: Value): Value? = (end(e, true) - 1).takeIf { it >= from }?.asValue()
+
+    override fun lower(e: Value): Value? = (end(e, false) - 1).takeIf { it >= from }?.asValue()
+
+    override fun pollFirst(): Value? = throw UnsupportedOperationException("Entry numbers are read only")
+
+    override fun pollLast(): Value? = throw UnsupportedOperationException("Entry numbers are read only")
+
+    override fun descendingSet(): NavigableSet<Value> = TreeSet(this).descendingSet()
+
+    override fun subSet(fromElement: Value, fromInclusive: Boolean, toElement: Value, toInclusive: Boolean): NavigableSet<Value> {
+        val start = start(fromElement, fromInclusive)
+        return EntryNumbers(start, maxOf(start, end(toElement, toInclusive)))
+    }
+
+    override fun headSet(toElement: Value, inclusive: Boolean): NavigableSet<Value> = EntryNumbers(from, end(toElement, inclusive))
+
+    override fun tailSet(fromElement: Value, inclusive: Boolean): NavigableSet<Value> = EntryNumbers(start(fromElement, inclusive), to)
+
+    override fun subSet(fromElement: Value, toElement: Value): SortedSet<Value> = subSet(fromElement, true, toElement, false)
+
+    override fun headSet(toElement: Value): SortedSet<Value> = headSet(toElement, false)
+
+    override fun tailSet(fromElement: Value): SortedSet<Value> = tailSet(fromElement, true)
+}
+
 /**
  * File table loader with alternate index
  */
 class IndexedFileTableLoader(val loader: FileTableLoader, val indexField: String) : IndexedTableLoader by loader {
 
     //TODO implement index caching
-    private val secondaryIndex: TreeMap<Value, Value> by lazy {
-        TreeMap<Value, Value>().apply {
-            loader.forEachIndexed { index, values ->
-                this[values.getValue(indexField)] = index.asValue()
+    /**
+     * The index is updated by the loader when new entries are appended or read. Concurrent map allows reading without
+     * locking the loader. Several entries could have the same key, so numbers of all of them are kept in the order
+     * they were appended.
+     */
+    private val secondaryIndex: ConcurrentSkipListMap<Value, ConcurrentLinkedQueue<Int>> by lazy {
+        ConcurrentSkipListMap<Value, ConcurrentLinkedQueue<Int>>().also { index ->
+            loader.subscribe { number, values ->
+                index.computeIfAbsent(values.getValue(indexField)) { ConcurrentLinkedQueue() }.add(number)
             }
         }
     }
 
+    /**
+     * The number of the first entry with given key
+     */
+    private fun first(key: Value): Value? = secondaryIndex[key]?.peek()?.asValue()
+
+    override val keys: NavigableSet<Value>
+        get() = secondaryIndex.navigableKeySet()
+
     override fun updateIndex() {
-        loader.forEachIndexed { index, values ->
-            secondaryIndex[values.getValue(indexField)] = index.asValue()
-        }
+        loader.updateIndex()
     }
 
     override fun getInFuture(key: Value): Deferred<Values>? {
-        return secondaryIndex[key]?.let { loader.getInFuture(it) }
+        return first(key)?.let { loader.getInFuture(it) }
+    }
+
+    // default methods should use secondary index instead of being delegated to the loader
+
+    /**
+     * The first entry with given key
+     */
+    override fun get(key: Value): Values? {
+        return first(key)?.let { loader.read(it.int) }
+    }
+
+    override fun get(any: Any): Values? = get(Value.of(any))
+
+    override fun getAll(keys: Collection<Value>): Deferred<Map<Value, Values>> {
+        val numbers = keys.mapNotNull { key -> first(key)?.let { it to key } }.toMap()
+        val entries = loader.getAll(numbers.keys)
+        return async(Unconfined) {
+            entries.await().mapKeys { numbers[it.key]!! }
+        }
+    }
+
+    /**
+     * The part of the index with keys in given range. NULL bounds mean the first and the last key.
+     */
+    private fun range(from: Value, to: Value): NavigableMap<Value, ConcurrentLinkedQueue<Int>> {
+        return when {
+            from.type == ValueType.NULL && to.type == ValueType.NULL -> secondaryIndex
+            from.type == ValueType.NULL -> secondaryIndex.headMap(to, true)
+            to.type == ValueType.NULL -> secondaryIndex.tailMap(from, true)
+            else -> secondaryIndex.subMap(from, true, to, true)
+        }
+    }
+
+    /**
+     * All entries with keys in given range including entries with equal keys
+     */
+    override fun select(from: Value, to: Value): List<Values> {
+        return range(from, to).values.flatMap { numbers -> numbers.map { loader.read(it)!! } }
+    }
+
+    override fun scan(from: Value, to: Value): ReceiveChannel<Values> {
+        return produce {
+            range(from, to).values.forEach { numbers ->
+                numbers.forEach { send(loader.read(it)!!) }
+            }
+        }
     }
 }
 
 /**
- * Appendable version of FileTableLoader. Build
+ * Appendable version of FileTableLoader. Appended entries are registered in the loader indexes using offsets returned
+ * by the write, so the file is not read back.
  */
 class AppendableFileTableLoader(val loader: FileTableLoader, val writer: (Values, TableFormat) -> ByteBuffer = binaryTableWriter) : IndexedTableLoader by loader, MutableTableLoader {
     private val mutableEnvelope = FileEnvelope.readExisting(loader.path)
@@ -196,8 +608,7 @@ class AppendableFileTableLoader(val loader: FileTableLoader, val writer: (Values
      * Append single point
      */
     override fun append(item: Values) {
-        mutableEnvelope.append(writer(item, format))
-        loader.updateIndex()
+        appendAll(listOf(item))
     }
 
     fun append(vararg values: Any) {
@@ -208,8 +619,14 @@ class AppendableFileTableLoader(val loader: FileTableLoader, val writer: (Values
      * Batch append operation
      */
     fun appendAll(collection: Iterable<Values>) {
-        mutableEnvelope.appendAll(collection.map { writer(it, format) })
-        loader.updateIndex()
+        val items = collection.toList()
+        if (items.isEmpty()) {
+            return
+        }
+        val buffers = items.map { writer(it, format) }
+        val lastSize = buffers.last().remaining()
+        val offsets = mutableEnvelope.appendAll(buffers)
+        loader.appended(items, offsets, offsets.last() + lastSize)
     }
 
     override fun close() {
@@ -224,6 +641,11 @@ object TableLoaderType : FileStorageElementType<EnvelopeLoader<Values>> {
 
     const val TABLE_FORMAT_KEY = "format"
 
+    /**
+     * Configuration of the context executor used for table reads
+     */
+    internal val IO_EXECUTOR_META: Meta = buildMeta { "workerName" to "storage" }
+
 
     val textTableReader: (ByteBuffer, TableFormat) -> Values = { buffer, format ->
         val line = buildString {
@@ -237,7 +659,7 @@ object TableLoaderType : FileStorageElementType<EnvelopeLoader<Values>> {
     }
 
     val binaryTableReader: (ByteBuffer, TableFormat) -> Values = { buffer, format ->
-        ValueMap(format.names.associate { it to buffer.getValue() }.toMap()).also {
+        ValueMap(ValuesSchema.of(format), Array(format.names.size()) { buffer.getValue() }).also {
             do {
                 val char = buffer.get().toChar()
             } while (char != '\n')
@@ -0,0 +1,149 @@
+/*
+ * Copyright  2018 Alexander Nozik.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package hep.dataforge.storage
+
+import hep.dataforge.meta.Meta
+import hep.dataforge.meta.MetaBuilder
+import hep.dataforge.tables.Filtering
+import hep.dataforge.values.Value
+import hep.dataforge.values.ValueType
+import hep.dataforge.values.Values
+
+/**
+ * Statistics of column values in a block of table entries. NULL values are only counted, minimum and maximum are
+ * computed for other values. `maybeTrue` counts values which could be a tag (all but NULL and boolean false).
+ */
+class ColumnZone(var min: Value = Value.NULL, var max: Value = Value.NULL, var nulls: Int = 0, var maybeTrue: Int = 0) {
+
+    fun update(value: Value) {
+        if (value.type == ValueType.NULL) {
+            nulls++
+            return
+        }
+        if (min.type == ValueType.NULL || value < min) {
+            min = value
+        }
+        if (max.type == ValueType.NULL || value > max) {
+            max = value
+        }
+        if (value.type != ValueType.BOOLEAN || value.boolean) {
+            maybeTrue++
+        }
+    }
+
+    fun toMeta(name: String): Meta {
+        return MetaBuilder("column")
+                .setValue("name", name)
+                .setValue("min", min)
+                .setValue("max", max)
+                .setValue("nulls", nulls)
+                .setValue("maybeTrue", maybeTrue)
+    }
+
+    companion object {
+        fun fromMeta(meta: Meta): ColumnZone {
+            return ColumnZone(
+                    meta.getValue("min", Value.NULL),
+                    meta.getValue("max", Value.NULL),
+                    meta.getInt("nulls", 0),
+                    meta.getInt("maybeTrue", 0)
+            )
+        }
+    }
+}
+
+/**
+ * Per column statistics of a block of table entries used to skip blocks which could not satisfy a query. Conditions
+ * are given in the [Filtering.buildConditionSet] format and are checked conservatively: a block is skipped only if
+ * none of its entries could satisfy the condition.
+ */
+class ZoneMap(val columns: Map<String, ColumnZone>, count: Int = 0) {
+
+    constructor(names: Iterable<String>) : this(names.associate { it to ColumnZone() })
+
+    /**
+     * The number of entries in the block
+     */
+    var count: Int = count
+        private set
+
+    fun update(values: Values) {
+        columns.forEach { name, zone -> zone.update(values.optValue(name).orElse(Value.NULL)) }
+        count++
+    }
+
+    private fun mayMatchTags(tags: List<Value>): Boolean {
+        return tags.all { tag -> (columns[tag.string]?.maybeTrue ?: 0) > 0 }
+    }
+
+    private fun mayMatchValue(condition: Meta): Boolean {
+        val zone = columns[condition.getString("value")] ?: return false
+        if (zone.nulls == count) {
+            return false
+        }
+        return if (condition.hasValue("equals")) {
+            val equals = condition.getValue("equals")
+            zone.min <= equals && zone.max >= equals
+        } else {
+            condition.optValue("from").map { zone.max >= it }.orElse(true)
+                    && condition.optValue("to").map { zone.min <= it }.orElse(true)
+        }
+    }
+
+    /**
+     * Check if any entry of the block could satisfy single condition
+     */
+    fun mayMatchCondition(condition: Meta): Boolean {
+        if (count == 0) {
+            return false
+        }
+        val hasTag = condition.hasValue("tag")
+        val hasValue = condition.hasValue("value")
+        return when {
+            hasTag && hasValue -> mayMatchTags(condition.getValue("tag").list) || mayMatchValue(condition)
+            hasTag -> mayMatchTags(condition.getValue("tag").list)
+            hasValue -> mayMatchValue(condition)
+            else -> true
+        }
+    }
+
+    /**
+     * Check if any entry of the block could satisfy the condition set with `is` and `not` conditions
+     */
+    fun mayMatch(filter: Meta): Boolean {
+        if (count == 0) {
+            return false
+        }
+        if (!filter.hasMeta("is") && !filter.hasMeta("not")) {
+            return true
+        }
+        // negated conditions could not be checked by statistics
+        return filter.hasMeta("not") || filter.getMetaList("is").any { mayMatchCondition(it) }
+    }
+
+    fun toMeta(): Meta {
+        val builder = MetaBuilder("zone").setValue("count", count)
+        columns.forEach { name, zone -> builder.putNode(zone.toMeta(name)) }
+        return builder
+    }
+
+    companion object {
+        fun fromMeta(meta: Meta): ZoneMap {
+            return ZoneMap(meta.getMetaList("column").associate { it.getString("name") to ColumnZone.fromMeta(it) }, meta.getInt("count", 0))
+        }
+    }
+}
@@ -17,10 +17,16 @@
 package hep.dataforge.storage
 
 import hep.dataforge.context.Global
+import hep.dataforge.kodex.buildMeta
 import hep.dataforge.tables.MetaTableFormat
+import hep.dataforge.values.Value
 import hep.dataforge.values.ValueMap
+import kotlinx.coroutines.experimental.channels.toList
+import kotlinx.coroutines.experimental.runBlocking
 import org.junit.AfterClass
 import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
 import org.junit.BeforeClass
 import org.junit.Test
 import java.nio.file.Files
@@ -69,6 +75,226 @@ class TableLoaderTest {
         loader.close()
     }
 
+    @Test
+    fun testIncrementalIndex() {
+        val path = dir.resolve("incremental.df")
+        val format = MetaTableFormat.forNames("a", "b")
+        val loader = TableLoaderType.create(Global, path, format)
+        val indexed = loader.indexed(buildMeta { "field" to "b" })
+        val writer = loader.mutable()
+
+        writer.append(0, 100)
+        assertEquals(0, loader[0]?.getInt("a"))
+        assertEquals(0, indexed[100]?.getInt("a"))
+
+        (1 until 100).forEach {
+            writer.append(it, 100 - it)
+        }
+        writer.appendAll((100 until 200).map { ValueMap.of(format.namesAsArray(), it, 100 - it) })
+        assertEquals(200, loader.keys.size)
+        assertEquals(150, loader[150]?.getInt("a"))
+        assertEquals(150, indexed[-50]?.getInt("a"))
+        assertEquals(200, indexed.keys.size)
+        assertTrue(indexed === loader.indexed(buildMeta { "field" to "b" }))
+
+        // entry numbers are not stored, but navigable
+        val keys = loader.keys
+        assertEquals((10..12).toList(), keys.subSet(Value.of(9.5), true, Value.of(12), true).map { it.int })
+        assertEquals(Value.of(199), keys.floor(Value.of(1000)))
+        assertEquals(null, keys.higher(Value.of(199)))
+        assertTrue(keys.contains(Value.of(5)) && !keys.contains(Value.of(5.5)))
+
+        // the file is read from the beginning by a new loader
+        val reader = TableLoaderType.read(Global, path)
+        assertEquals(199, reader.keys.last().int)
+        writer.close()
+        loader.close()
+    }
+
+    @Test
+    fun testAsyncRead() {
+        val path = dir.resolve("async.df")
+        val format = MetaTableFormat.forNames("a", "b")
+        val loader = TableLoaderType.create(Global, path, format)
+        val writer = loader.mutable()
+        writer.appendAll((0 until 1000).map { ValueMap.of(format.namesAsArray(), it, 1000 - it) })
+        val indexed = loader.indexed(buildMeta { "field" to "b" })
+
+        runBlocking {
+            val reads = (0 until 1000 step 7).map { loader.getInFuture(Value.of(it))!! }
+            assertEquals((0 until 1000 step 7).toList(), reads.map { it.await().getInt("a") })
+
+            val batch = loader.getAll(listOf(Value.of(5), Value.of(500), Value.of(5000))).await()
+            assertEquals(2, batch.size)
+            assertEquals(500, batch[Value.of(500)]?.getInt("b"))
+
+            assertEquals((10..19).toList(), loader.scan(Value.of(10), Value.of(19)).toList().map { it.getInt("a") })
+            assertEquals(1000, loader.scan(Value.NULL, Value.NULL).toList().size)
+            assertEquals(listOf(998, 997), indexed.scan(Value.of(2), Value.of(3)).toList().map { it.getInt("a") })
+            assertEquals(10, indexed.getAll(listOf(Value.of(990))).await()[Value.of(990)]?.getInt("a"))
+        }
+
+        // entries appended after a snapshot are visible to new reads
+        writer.append(1000, 0)
+        assertEquals(1000, loader[1000]?.getInt("a"))
+        assertEquals(1000, indexed[0]?.getInt("a"))
+        writer.close()
+        loader.close()
+    }
+
+    @Test
+    fun testFilter() {
+        val path = dir.resolve("filter.df")
+        val format = MetaTableFormat.forNames("a", "b", "flag")
+        val loader = TableLoaderType.create(Global, path, buildMeta {
+            "format" to format.toMeta()
+            "@envelope.dataType" to "binary"
+            "zoneMap.blockSize" to 10
+        })
+        val writer = loader.mutable()
+        (0 until 100).forEach { writer.append(it, 100 - it, it == 57) }
+
+        val range = loader.select(buildMeta { "is" to { "value" to "a"; "from" to 20; "to" to 24 } })
+        assertEquals((20..24).toList(), range.map { it.getInt("a") })
+        val tagged = loader.select(buildMeta { "is" to { "tag" to "flag" } })
+        assertEquals(listOf(57), tagged.map { it.getInt("a") })
+        val excluded = loader.select(buildMeta { "not" to { "value" to "b"; "equals" to 50 } })
+        assertEquals(99, excluded.size)
+        val zone = ZoneMap(format.names).apply { range.forEach { update(it) } }
+        assertFalse(zone.mayMatch(buildMeta { "is" to { "value" to "a"; "from" to 30 } }))
+        assertFalse(zone.mayMatch(buildMeta { "is" to { "tag" to "flag" } }))
+        writer.close()
+        loader.close()
+    }
+
+    @Test
+    fun testSegmented() {
+        val path = dir.resolve("segmented")
+        val format = MetaTableFormat.forNames("timestamp", "value")
+        val loader = SegmentedTableLoaderType.create(Global, path, buildMeta {
+            "format" to format.toMeta()
+            "segment.size" to 100
+            "compaction.enabled" to false
+        })
+        val writer = loader.mutable()
+        (0 until 450).forEach { writer.append(ValueMap.of(format.namesAsArray(), it, it * 2)) }
+
+        assertEquals(5, loader.segmentFiles.size)
+        assertEquals(450, loader.count())
+        assertEquals(300, loader[150]?.getInt("value"))
+        assertEquals((98..101).toList(), runBlocking { loader.scan(Value.of(98), Value.of(101)).toList() }.map { it.getInt("timestamp") })
+        assertEquals((195..205).toList(), loader.select(Value.of(195), Value.of(205)).map { it.getInt("timestamp") })
+        assertEquals(listOf(420), loader.select(buildMeta { "is" to { "value" to "value"; "equals" to 840 } }).map { it.getInt("timestamp") })
+
+        // restore the state of the last segment from file
+        loader.close()
+        val reader = SegmentedTableLoaderType.read(Global, path)
+        assertEquals(5, reader.segmentFiles.size)
+        reader.mutable().append(ValueMap.of(format.namesAsArray(), 450, 900))
+        assertEquals(5, reader.segmentFiles.size)
+        assertEquals(900, reader[450]?.getInt("value"))
+        reader.close()
+    }
+
+    @Test
+    fun testDuplicateKeys() {
+        val path = dir.resolve("segmented-duplicates")
+        val format = MetaTableFormat.forNames("timestamp", "value")
+        val loader = SegmentedTableLoaderType.create(Global, path, buildMeta {
+            "format" to format.toMeta()
+            "segment.size" to 10
+            "compaction.enabled" to false
+        })
+        val writer = loader.mutable()
+        // three entries per timestamp, some of them are split between segments
+        (0 until 60).forEach { writer.append(ValueMap.of(format.namesAsArray(), it / 3, it)) }
+
+        assertEquals((6..11).toList(), loader.select(Value.of(2), Value.of(3)).map { it.getInt("value") })
+        assertEquals((27..32).toList(), runBlocking { loader.scan(Value.of(9), Value.of(10)).toList() }.map { it.getInt("value") })
+        assertEquals(60, runBlocking { loader.scan(Value.NULL, Value.NULL).toList() }.size)
+        assertEquals(0, loader[0]?.getInt("value"))
+        loader.close()
+    }
+
+    @Test
+    fun testSegmentMaintenance() {
+        val path = dir.resolve("segmented-window")
+        val format = MetaTableFormat.forNames("timestamp", "value")
+        val loader = SegmentedTableLoaderType.create(Global, path, buildMeta {
+            "format" to format.toMeta()
+            "segment.size" to 1000
+            "segment.window" to 10
+            "retention.count" to 5
+            "compaction.enabled" to false
+        })
+        (0 until 100).forEach { loader.append(it, it) }
+        runBlocking { loader.awaitMaintenance() }
+        loader.applyRetention()
+
+        // retention keeps 5 closed segments
+        assertEquals(6, loader.segmentFiles.size)
+        assertEquals(60, loader.count())
+        assertEquals(40, loader.keys.first().int)
+
+        // compaction merges closed segments into one
+        loader.compact()
+        assertEquals(2, loader.segmentFiles.size)
+        assertEquals(60, loader.count())
+        assertEquals(40, loader.keys.first().int)
+        assertEquals(2, Files.list(path).filter { it.fileName.toString().startsWith("segment") }.count())
+        loader.close()
+    }
+
+    @Test
+    fun testSegmentRecovery() {
+        val path = dir.resolve("segmented-recovery")
+        val format = MetaTableFormat.forNames("timestamp", "value")
+        val loader = SegmentedTableLoaderType.create(Global, path, buildMeta {
+            "format" to format.toMeta()
+            "segment.size" to 100
+            "compaction.enabled" to false
+        })
+        (0 until 250).forEach { loader.append(it, it) }
+        loader.close()
+
+        // files left by interrupted compaction
+        Files.copy(path.resolve("segment-000000.df"), path.resolve("segment-000003.df"))
+        Files.copy(path.resolve("segment-000001.df"), path.resolve("segment-000004.df.tmp"))
+
+        val reader = SegmentedTableLoaderType.read(Global, path)
+        assertFalse(Files.exists(path.resolve("segment-000003.df")))
+        assertFalse(Files.exists(path.resolve("segment-000004.df.tmp")))
+        (250 until 400).forEach { reader.append(it, it) }
+        assertEquals(400, reader.count())
+        assertEquals(4, reader.segmentFiles.size)
+        reader.close()
+    }
+
+    @Test
+    fun testReadDuringCompaction() {
+        val path = dir.resolve("segmented-compaction")
+        val format = MetaTableFormat.forNames("timestamp", "value")
+        val loader = SegmentedTableLoaderType.create(Global, path, buildMeta {
+            "format" to format.toMeta()
+            "segment.size" to 100
+            "compaction.size" to 1000
+            "compaction.enabled" to false
+        })
+        (0 until 450).forEach { loader.append(it, it) }
+        val oldFiles = loader.segmentFiles.dropLast(1)
+
+        val iterator = loader.iterator()
+        assertEquals(0, iterator.next().getInt("timestamp"))
+        loader.compact()
+        assertEquals(2, loader.segmentFiles.size)
+        // removed segments are still available to the reader
+        assertTrue(oldFiles.all { Files.exists(path.resolve(it)) })
+        assertEquals(449, iterator.asSequence().count())
+        assertFalse(oldFiles.any { Files.exists(path.resolve(it)) })
+        assertEquals(450, loader.count())
+        loader.close()
+    }
+
     @Test
     fun testPerformance() {
         val n = 10000